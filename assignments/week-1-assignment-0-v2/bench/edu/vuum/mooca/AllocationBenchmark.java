@@ -0,0 +1,213 @@
+package edu.vuum.mooca;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import edu.vuum.mooca.MultiThreadedSynchronizedQueue.ExecutionMode;
+import edu.vuum.mooca.SynchronizedQueue.IntQueueAdapter;
+import edu.vuum.mooca.SynchronizedQueue.QueueAdapter;
+import edu.vuum.mooca.SynchronizedQueue.SynchronizedQueueResult;
+import edu.vuum.mooca.SynchronizedQueue.ThreadResult;
+
+/**
+ * @class AllocationBenchmark
+ *
+ * @brief Measures how much memory the SynchronizedQueue test harness
+ *        allocates per msg, and how much GC work that causes, when it
+ *        sends boxed Integers through a BlockingQueue versus primitive
+ *        ints through an IntBlockingQueue.  The queue named INT is the
+ *        IntBlockingQueue and the others are the QueueBenchmark
+ *        QueueTypes.  It first measures the bytes allocated by the
+ *        put/take hot path alone, in a single Thread that never
+ *        blocks, and then runs the harness itself, which also
+ *        allocates when its Threads block.  The hot path bytes come
+ *        from the calling Thread's ThreadMXBean counter.  The harness
+ *        bytes come from the ThreadMXBean
+ *        on JVMs that count the bytes allocated by terminated Threads
+ *        (Java 21 or later).  Otherwise they are estimated (and
+ *        marked with "~") from the growth of the heap during trials
+ *        in which no GC ran, so run with a large young generation
+ *        (e.g., -Xmn1g) to get estimates for every trial.  Options
+ *        are given as "-name value" pairs (see QueueBenchmark), e.g.:
+ *
+ *        java edu.vuum.mooca.AllocationBenchmark -queues ARRAY,INT
+ *             -threads 1 -capacity 1024 -trials 5 -msgs 1000000
+ */
+public class AllocationBenchmark {
+    /**
+     * Name of the queue that holds primitive ints.
+     */
+    static final String INT_QUEUE = "INT";
+
+    /**
+     * Returns the total number of bytes allocated by all Threads
+     * (including terminated ones) so far, or -1 if the JVM can't
+     * report it.
+     */
+    static long totalAllocatedBytes() {
+        try {
+            // Only the com.sun.management subinterface has this
+            // method, so call it reflectively via that interface.
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                .getMethod("getTotalThreadAllocatedBytes");
+            return (Long) method.invoke(ManagementFactory.getThreadMXBean());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the calling Thread so
+     * far, or -1 if the JVM can't report it.
+     */
+    static long threadAllocatedBytes() {
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(ManagementFactory.getThreadMXBean(),
+                                        Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated per msg when the calling
+     * Thread puts and then takes @a msgs msgs via @a adapter, or -1
+     * if the JVM can't report it.
+     */
+    static double hotPathBytesPerMsg(QueueAdapter<Integer> adapter, int msgs)
+        throws Exception {
+        IntQueueAdapter intAdapter = adapter instanceof IntQueueAdapter
+            ? (IntQueueAdapter) adapter
+            : null;
+
+        long startBytes = threadAllocatedBytes();
+        // Start above the range of the Integer cache.
+        for (int i = 1024; i < 1024 + msgs; ++i)
+            if (intAdapter != null) {
+                intAdapter.putInt(i);
+                intAdapter.takeInt();
+            } else {
+                adapter.put(i);
+                adapter.take();
+            }
+        long bytes = threadAllocatedBytes() - startBytes;
+
+        return startBytes < 0 ? -1 : bytes / (double) msgs;
+    }
+
+    /**
+     * Returns the number of bytes used by the heap.
+     */
+    static long heapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Returns the total number of collections (in [0]) and the total
+     * collection time in milliseconds (in [1]) so far.
+     */
+    static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    /**
+     * Factory method that makes the QueueAdapter for the queue named
+     * @a queue with the given @a capacity.
+     */
+    static QueueAdapter<Integer> makeAdapter(String queue, int capacity) {
+        if (queue.equals(INT_QUEUE))
+            return new IntQueueAdapter(new IntBlockingQueue(capacity));
+        else
+            return new QueueAdapter<Integer>(QueueBenchmark.QueueType.valueOf(queue)
+                                             .<Integer>makeQueue(capacity));
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        String[] queues = QueueBenchmark.option(options, "queues", "ARRAY,LINKED,RING_BUFFER,INT");
+        int threads = Integer.parseInt(QueueBenchmark.option(options, "threads", "1")[0]);
+        int capacity = Integer.parseInt(QueueBenchmark.option(options, "capacity", "1024")[0]);
+        int trials = Integer.parseInt(QueueBenchmark.option(options, "trials", "5")[0]);
+        int msgs = Integer.parseInt(QueueBenchmark.option(options, "msgs", "1000000")[0]);
+
+        System.out.println(String.format("%-12s %18s", "queue", "hot path bytes/msg"));
+        for (String queue : queues) {
+            // The first run warms up the JIT compiler.
+            hotPathBytesPerMsg(makeAdapter(queue, capacity), msgs);
+            double bytesPerMsg =
+                hotPathBytesPerMsg(makeAdapter(queue, capacity), msgs);
+            System.out.println(String.format("%-12s %18s",
+                                             queue,
+                                             bytesPerMsg < 0
+                                             ? "n/a"
+                                             : String.format("%.2f", bytesPerMsg)));
+        }
+        System.out.println();
+
+        System.out.println(String.format("%-12s %5s %12s %12s %10s %8s %8s  %s",
+                                         "queue", "trial", "msgs",
+                                         "msgs/s", "bytes/msg", "GCs",
+                                         "GC ms", "result"));
+
+        for (String queue : queues)
+            // The first trial warms up the JIT compiler.
+            for (int trial = 0; trial <= trials; ++trial) {
+                MultiThreadedSynchronizedQueue harness =
+                    new MultiThreadedSynchronizedQueue(threads,
+                                                       threads,
+                                                       ExecutionMode.THREADS,
+                                                       false);
+                QueueAdapter<Integer> adapter = makeAdapter(queue, capacity);
+
+                long startBytes = totalAllocatedBytes();
+                long startHeap = heapUsedBytes();
+                long[] startGc = gcTotals();
+
+                SynchronizedQueueResult result =
+                    harness.testQueue(adapter, queue);
+
+                long bytes = totalAllocatedBytes() - startBytes;
+                long heapGrowth = heapUsedBytes() - startHeap;
+                long[] endGc = gcTotals();
+
+                long taken = 0;
+                double rate = 0;
+                for (ThreadResult r : SynchronizedQueue.getThreadResults())
+                    if (r.getThreadName().startsWith("consumer")) {
+                        taken += r.getIterations();
+                        rate += r.getThroughput();
+                    }
+
+                if (trial == 0)
+                    continue;
+
+                String bytesPerMsg = "n/a";
+                if (taken == 0)
+                    ;
+                else if (startBytes >= 0)
+                    bytesPerMsg = String.format("%.1f", bytes / (double) taken);
+                else if (endGc[0] == startGc[0])
+                    bytesPerMsg = String.format("~%.1f", heapGrowth / (double) taken);
+
+                System.out.println(String.format("%-12s %5d %12d %12.0f %10s %8d %8d  %s",
+                                                 queue, trial, taken, rate,
+                                                 bytesPerMsg,
+                                                 endGc[0] - startGc[0],
+                                                 endGc[1] - startGc[1],
+                                                 result));
+            }
+    }
+}
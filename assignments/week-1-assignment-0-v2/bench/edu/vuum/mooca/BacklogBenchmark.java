@@ -0,0 +1,81 @@
+package edu.vuum.mooca;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * @class BacklogBenchmark
+ *
+ * @brief Measures how the cost of a take depends on the number of
+ *        elements queued behind it.  For each backlog size a single
+ *        Thread fills the queue with that many elements and then
+ *        repeatedly takes one element and puts one back, so the
+ *        backlog stays the same.  The BuggyBlockingQueue's
+ *        ArrayList.remove(0) shifts the whole backlog on each take, so
+ *        its cost grows with the backlog, whereas the circular arrays
+ *        of the other queues keep it flat.  Since the Thread never
+ *        blocks this also works for the BuggyBlockingQueue.  Options
+ *        are given as "-name value" pairs (see QueueBenchmark), e.g.:
+ *
+ *        java edu.vuum.mooca.BacklogBenchmark -queues SIMPLE,BUGGY
+ *             -backlogs 10,1000,100000 -takes 1000000
+ */
+public class BacklogBenchmark {
+    /**
+     * Returns the average nanoseconds per take when @a takes elements
+     * are taken from (and put back on) @a queue with a backlog of @a
+     * backlog elements.
+     */
+    static double nanosPerTake(BlockingQueue<Integer> queue,
+                               int backlog,
+                               int takes) throws InterruptedException {
+        for (int i = 0; i < backlog; ++i)
+            queue.put(i);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < takes; ++i)
+            queue.put(queue.take());
+        long nanos = System.nanoTime() - startNanos;
+
+        return nanos / (double) takes;
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        String[] queues = QueueBenchmark.option(options, "queues", "ARRAY,LINKED,SIMPLE,BUGGY");
+        String[] backlogs = QueueBenchmark.option(options, "backlogs", "10,1000,10000,100000");
+        int takes = Integer.parseInt(QueueBenchmark.option(options, "takes", "200000")[0]);
+        int trials = Integer.parseInt(QueueBenchmark.option(options, "trials", "3")[0]);
+
+        System.out.print(String.format("%-12s", "queue"));
+        for (String backlog : backlogs)
+            System.out.print(String.format(" %14s", "ns/take@" + backlog));
+        System.out.println();
+
+        for (String name : queues) {
+            QueueBenchmark.QueueType type = QueueBenchmark.QueueType.valueOf(name);
+            System.out.print(String.format("%-12s", name));
+
+            for (String backlog : backlogs) {
+                int size = Integer.parseInt(backlog);
+                double best = Double.MAX_VALUE;
+
+                // The first trial warms up the JIT compiler, and the
+                // fastest of the rest is reported.
+                for (int trial = 0; trial <= trials; ++trial) {
+                    double nanos = nanosPerTake(type.<Integer>makeQueue(size + 1),
+                                                size,
+                                                takes);
+                    if (trial > 0)
+                        best = Math.min(best, nanos);
+                }
+                System.out.print(String.format(" %14.1f", best));
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package edu.vuum.mooca;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class MappedQueueProcess
+ *
+ * @brief Runs the producer or the consumer side of a MappedFileQueue
+ *        so the two can run in separate processes, e.g.:
+ *
+ *        java edu.vuum.mooca.MappedQueueProcess -role consumer
+ *             -file /tmp/q -msgs 10000000 &
+ *        java edu.vuum.mooca.MappedQueueProcess -role producer
+ *             -file /tmp/q -msgs 10000000
+ *
+ *        The producer sends the ints from -start up to -msgs and the
+ *        consumer checks that they arrive in sequence, reading each
+ *        one in place in the mapped file.  Killing and restarting the
+ *        consumer shows that it resumes where it left off, since the
+ *        queued msgs stay in the file.  Each side prints its msgs/s
+ *        when it's done or when it hasn't been able to make progress
+ *        for -timeout seconds.
+ */
+public class MappedQueueProcess {
+    /**
+     * Main entry point that runs the producer or consumer.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        String role = QueueBenchmark.option(options, "role", "consumer")[0];
+        File file = new File(QueueBenchmark.option(options, "file", "MappedQueueProcess.queue")[0]);
+        int capacity = Integer.parseInt(QueueBenchmark.option(options, "capacity", "1048576")[0]);
+        int start = Integer.parseInt(QueueBenchmark.option(options, "start", "0")[0]);
+        int msgs = Integer.parseInt(QueueBenchmark.option(options, "msgs", "10000000")[0]);
+        int timeout = Integer.parseInt(QueueBenchmark.option(options, "timeout", "10")[0]);
+
+        MappedFileQueue queue = new MappedFileQueue(file, capacity);
+        long startNanos = System.nanoTime();
+        int count = 0;
+
+        if (role.equals("producer")) {
+            for (int i = start; i < msgs; ++i, ++count)
+                if (!queue.offerInt(i, timeout, TimeUnit.SECONDS)) {
+                    System.out.println("timed out waiting for the consumer");
+                    break;
+                }
+        } else if (role.equals("consumer")) {
+            int expected = -1;
+            int gaps = 0;
+            for (; count < msgs; ++count) {
+                ByteBuffer record = queue.poll(timeout, TimeUnit.SECONDS);
+                if (record == null) {
+                    System.out.println("timed out waiting for the producer");
+                    break;
+                }
+
+                int msg = record.getInt(0);
+                if (expected < 0)
+                    System.out.println("resuming with msg " + msg);
+                else if (msg != expected)
+                    gaps++;
+                expected = msg + 1;
+
+                if (msg == msgs - 1) {
+                    ++count;
+                    break;
+                }
+            }
+            queue.release();
+            System.out.println(gaps + " msgs out of sequence");
+        } else
+            throw new IllegalArgumentException("-role must be producer or consumer");
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println(String.format("%s: %d msgs, %.0f msgs/s, %d still queued",
+                                         role, count, count / seconds,
+                                         queue.size()));
+        queue.close();
+    }
+}
@@ -0,0 +1,160 @@
+package edu.vuum.mooca;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class PinningMonitor
+ *
+ * @brief Detects virtual Threads that block while "pinned" to their
+ *        carrier Thread, which happens when a queue implementation
+ *        blocks inside a synchronized method or block (e.g., via
+ *        Object.wait()).  It listens for the JDK Flight Recorder
+ *        "jdk.VirtualThreadPinned" event via a RecordingStream.  The
+ *        JFR classes are accessed reflectively since this project
+ *        targets an older Java platform, so start() returns an
+ *        inactive monitor on JVMs that lack them.
+ */
+public class PinningMonitor {
+    /**
+     * Name of the JFR event emitted when a virtual Thread parks
+     * while pinned.
+     */
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    /**
+     * Maximum number of events whose details are kept.
+     */
+    private static final int MAX_EXAMPLES = 3;
+
+    /**
+     * The jdk.jfr.consumer.RecordingStream, or null if JFR isn't
+     * available.
+     */
+    private final Object mStream;
+
+    /**
+     * Number of pinned events seen.
+     */
+    private final AtomicLong mPinnedCount = new AtomicLong();
+
+    /**
+     * Details (including the stack trace) of the first few pinned
+     * events.
+     */
+    private final List<String> mExamples = new CopyOnWriteArrayList<String>();
+
+    /**
+     * Constructor starts streaming pinned events, leaving mStream
+     * null if that isn't possible.
+     */
+    private PinningMonitor() {
+        Object stream = null;
+        try {
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+            Class<?> durationClass = Class.forName("java.time.Duration");
+            Class<?> consumerClass = Class.forName("java.util.function.Consumer");
+
+            stream = streamClass.getConstructor().newInstance();
+
+            // Report every pinned park, not just those longer than
+            // the default 20ms threshold.
+            Object settings = streamClass.getMethod("enable", String.class)
+                .invoke(stream, PINNED_EVENT);
+            settingsClass.getMethod("withThreshold", durationClass)
+                .invoke(settings, durationClass.getField("ZERO").get(null));
+            settingsClass.getMethod("withStackTrace").invoke(settings);
+
+            Object handler =
+                Proxy.newProxyInstance(consumerClass.getClassLoader(),
+                                       new Class<?>[] { consumerClass },
+                                       new InvocationHandler() {
+                                           public Object invoke(Object proxy,
+                                                                Method method,
+                                                                Object[] args) {
+                                               if (method.getName().equals("accept"))
+                                                   onPinned(args[0]);
+                                               else if (method.getName().equals("equals"))
+                                                   return proxy == args[0];
+                                               else if (method.getName().equals("hashCode"))
+                                                   return System.identityHashCode(proxy);
+                                               else if (method.getName().equals("toString"))
+                                                   return "PinningMonitor handler";
+                                               return null;
+                                           }
+                                       });
+            streamClass.getMethod("onEvent", String.class, consumerClass)
+                .invoke(stream, PINNED_EVENT, handler);
+            streamClass.getMethod("startAsync").invoke(stream);
+        } catch (Exception e) {
+            // JFR streaming isn't available on this JVM.
+            stream = null;
+        }
+        mStream = stream;
+    }
+
+    /**
+     * Start monitoring pinned virtual Threads.
+     */
+    public static PinningMonitor start() {
+        return new PinningMonitor();
+    }
+
+    /**
+     * Returns true if pinned events are actually being monitored.
+     */
+    public boolean isActive() {
+        return mStream != null;
+    }
+
+    /**
+     * Called by the RecordingStream for each pinned event.
+     */
+    private void onPinned(Object event) {
+        if (mPinnedCount.incrementAndGet() <= MAX_EXAMPLES)
+            mExamples.add(event.toString());
+    }
+
+    /**
+     * Stop monitoring, after delivering any events that are still
+     * buffered.
+     */
+    public void stop() {
+        if (mStream == null)
+            return;
+
+        try {
+            try {
+                // RecordingStream.stop() (Java 20+) flushes pending
+                // events before it returns.
+                mStream.getClass().getMethod("stop").invoke(mStream);
+            } catch (NoSuchMethodException e) {
+                // Give the stream a chance to flush before closing.
+                Thread.sleep(1500);
+            }
+            mStream.getClass().getMethod("close").invoke(mStream);
+        } catch (Exception e) {
+            // Nothing else we can do.
+        }
+    }
+
+    /**
+     * Returns the number of times a virtual Thread parked while
+     * pinned.
+     */
+    public long getPinnedCount() {
+        return mPinnedCount.get();
+    }
+
+    /**
+     * Returns the details of the first few pinned events.
+     */
+    public List<String> getExamples() {
+        return mExamples;
+    }
+}
@@ -0,0 +1,380 @@
+package edu.vuum.mooca;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.vuum.mooca.SynchronizedQueue.QueueAdapter;
+
+/**
+ * @class QueueBenchmark
+ *
+ * @brief Measures the throughput and put-to-take latency of several
+ *        BlockingQueue implementations when they are driven through
+ *        the same QueueAdapter used by the SynchronizedQueue test
+ *        harness.  Every combination of the queue, payload, producer
+ *        count, consumer count, capacity, and batch size options is
+ *        run, first for a number of warmup trials and then for a
+ *        number of measured trials, and the results are printed as a
+ *        table.  A batch size greater than 1 moves Messages with
+ *        QueueAdapter.putAll() and QueueAdapter.takeBatch().
+ *
+ *        Options are given as "-name value" pairs, where the value
+ *        can be a comma-separated list, e.g.:
+ *
+ *        java edu.vuum.mooca.QueueBenchmark -queues ARRAY,LINKED
+ *             -producers 1,4 -consumers 1,4 -capacities 1024
+ *             -payloads INTEGER,BYTES -batches 1,64
+ *             -iterations 1000000
+ */
+public class QueueBenchmark {
+    /**
+     * @class QueueType
+     *
+     * @brief The BlockingQueue implementations that can be
+     *        benchmarked, each of which knows how to make a queue of
+     *        the given capacity.
+     */
+    enum QueueType {
+        ARRAY {
+            <E> BlockingQueue<E> makeQueue(int capacity) {
+                return new ArrayBlockingQueue<E>(capacity);
+            }
+        },
+        LINKED {
+            <E> BlockingQueue<E> makeQueue(int capacity) {
+                return new LinkedBlockingQueue<E>(capacity);
+            }
+        },
+        BUGGY {
+            <E> BlockingQueue<E> makeQueue(int capacity) {
+                return new BuggyBlockingQueue<E>(capacity);
+            }
+        },
+        SIMPLE {
+            <E> BlockingQueue<E> makeQueue(int capacity) {
+                return new SimpleBlockingQueue<E>(capacity);
+            }
+        },
+        RING_BUFFER {
+            <E> BlockingQueue<E> makeQueue(int capacity) {
+                return new RingBufferBlockingQueue<E>(capacity);
+            }
+        };
+
+        /**
+         * Factory method that makes a queue of the given capacity.
+         */
+        abstract <E> BlockingQueue<E> makeQueue(int capacity);
+    }
+
+    /**
+     * @class PayloadType
+     *
+     * @brief The kinds of payload that producers can send, each of
+     *        which knows how to make the payload for a given
+     *        iteration.
+     */
+    enum PayloadType {
+        INTEGER {
+            Object makePayload(int i) {
+                return Integer.valueOf(i);
+            }
+        },
+        STRING {
+            Object makePayload(int i) {
+                return Integer.toString(i);
+            }
+        },
+        BYTES {
+            Object makePayload(int i) {
+                return new byte[64];
+            }
+        };
+
+        /**
+         * Factory method that makes the payload for iteration @a i.
+         */
+        abstract Object makePayload(int i);
+    }
+
+    /**
+     * @class Message
+     *
+     * @brief Envelope that carries a payload along with the time it
+     *        was put into the queue.
+     */
+    static class Message {
+        /**
+         * The value returned by System.nanoTime() just before the
+         * Message was put.
+         */
+        final long mPutNanos;
+
+        /**
+         * The payload.
+         */
+        final Object mPayload;
+
+        Message(long putNanos, Object payload) {
+            mPutNanos = putNanos;
+            mPayload = payload;
+        }
+    }
+
+    /**
+     * @class Result
+     *
+     * @brief The outcome of one trial.
+     */
+    static class Result {
+        /**
+         * Number of Messages taken by the consumers.
+         */
+        long mTaken;
+
+        /**
+         * Number of exceptions thrown by the producers and consumers.
+         */
+        long mErrors;
+
+        /**
+         * Wall-clock duration of the trial.
+         */
+        long mElapsedNanos;
+
+        /**
+         * Put-to-take latency of every Message taken.
+         */
+        LatencyHistogram mLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Longest time to wait for the consumers to drain the queue after
+     * the producers finish.
+     */
+    static final long DRAIN_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Run one trial that sends @a iterations Messages through a queue
+     * of type @a queueType.
+     */
+    static Result runTrial(QueueType queueType,
+                           final PayloadType payloadType,
+                           int producers,
+                           int consumers,
+                           int capacity,
+                           final int batchSize,
+                           int iterations) throws InterruptedException {
+        final QueueAdapter<Message> queue =
+            new QueueAdapter<Message>(queueType.<Message>makeQueue(capacity));
+        final Result result = new Result();
+        final AtomicLong taken = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+
+        // Spread the iterations over the producers.
+        final int perProducer = Math.max(1, iterations / producers);
+        long expected = (long) perProducer * producers;
+
+        List<Thread> producerThreads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; ++p)
+            producerThreads.add(new Thread(new Runnable() {
+                    public void run() {
+                        List<Message> batch = new ArrayList<Message>(batchSize);
+                        for (int i = 0; i < perProducer; i += batchSize)
+                            try {
+                                if (batchSize == 1)
+                                    queue.put(new Message(System.nanoTime(),
+                                                          payloadType.makePayload(i)));
+                                else {
+                                    batch.clear();
+                                    long now = System.nanoTime();
+                                    for (int j = i; j < i + batchSize && j < perProducer; ++j)
+                                        batch.add(new Message(now,
+                                                              payloadType.makePayload(j)));
+                                    queue.putAll(batch);
+                                }
+                            } catch (InterruptedException e) {
+                                return;
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                            }
+                    }
+                }, "producer-" + p));
+
+        List<Thread> consumerThreads = new ArrayList<Thread>();
+        for (int c = 0; c < consumers; ++c)
+            consumerThreads.add(new Thread(new Runnable() {
+                    public void run() {
+                        // Each consumer records into its own
+                        // histogram to avoid contention.
+                        LatencyHistogram latency = new LatencyHistogram();
+                        try {
+                            for (;;)
+                                try {
+                                    if (batchSize == 1) {
+                                        Message m = queue.take();
+                                        latency.record(System.nanoTime()
+                                                       - m.mPutNanos);
+                                        taken.incrementAndGet();
+                                    } else {
+                                        List<Message> batch =
+                                            queue.takeBatch(batchSize);
+                                        long now = System.nanoTime();
+                                        for (Message m : batch)
+                                            latency.record(now - m.mPutNanos);
+                                        taken.addAndGet(batch.size());
+                                    }
+                                } catch (InterruptedException e) {
+                                    return;
+                                } catch (Exception e) {
+                                    errors.incrementAndGet();
+                                    if (Thread.currentThread().isInterrupted())
+                                        return;
+                                }
+                        } finally {
+                            synchronized (result) {
+                                result.mLatency.add(latency);
+                            }
+                        }
+                    }
+                }, "consumer-" + c));
+
+        long start = System.nanoTime();
+        for (Thread t : consumerThreads)
+            t.start();
+        for (Thread t : producerThreads)
+            t.start();
+        for (Thread t : producerThreads)
+            t.join();
+
+        // Wait for the consumers to drain the queue, giving up if
+        // it stops shrinking (e.g., because a buggy queue lost
+        // some Messages).
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (taken.get() < expected
+               && queue.size() > 0
+               && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        long elapsed = System.nanoTime() - start;
+
+        for (Thread t : consumerThreads)
+            t.interrupt();
+        for (Thread t : consumerThreads)
+            t.join();
+
+        result.mTaken = taken.get();
+        result.mErrors = errors.get();
+        result.mElapsedNanos = elapsed;
+        return result;
+    }
+
+    /**
+     * Parse "-name value" pairs from @a args.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-"))
+                throw new IllegalArgumentException("unexpected argument "
+                                                   + args[i]);
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Return the comma-separated values of option @a name, or @a
+     * defaultValue if it wasn't given.
+     */
+    static String[] option(Map<String, String> options,
+                           String name,
+                           String defaultValue) {
+        String value = options.get(name);
+        return (value == null ? defaultValue : value).split(",");
+    }
+
+    /**
+     * Convert nanoseconds to microseconds for display.
+     */
+    static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * Main entry point that runs the benchmark matrix.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+
+        String[] queues = option(options, "queues", "ARRAY,LINKED,RING_BUFFER,SIMPLE,BUGGY");
+        String[] payloads = option(options, "payloads", "INTEGER");
+        String[] producers = option(options, "producers", "1,4");
+        String[] consumers = option(options, "consumers", "1,4");
+        String[] capacities = option(options, "capacities", "1024");
+        String[] batches = option(options, "batches", "1");
+        int iterations = Integer.parseInt
+            (option(options, "iterations",
+                    Integer.toString(SynchronizedQueue.mMaxIterations))[0]);
+        int warmups = Integer.parseInt(option(options, "warmups", "3")[0]);
+        int trials = Integer.parseInt(option(options, "trials", "5")[0]);
+
+        System.out.println(String.format("%-12s %-8s %3s %3s %8s %5s %14s %10s %10s %10s %10s %8s",
+                                         "queue", "payload", "P", "C", "capacity", "batch",
+                                         "ops/s", "p50(us)", "p99(us)",
+                                         "p999(us)", "max(us)", "errors"));
+
+        for (String queue : queues)
+            for (String payload : payloads)
+                for (String p : producers)
+                    for (String c : consumers)
+                        for (String capacity : capacities)
+                            for (String batch : batches) {
+                                QueueType queueType = QueueType.valueOf(queue);
+                                PayloadType payloadType = PayloadType.valueOf(payload);
+                                int numProducers = Integer.parseInt(p);
+                                int numConsumers = Integer.parseInt(c);
+                                int queueCapacity = Integer.parseInt(capacity);
+                                int batchSize = Integer.parseInt(batch);
+
+                                for (int i = 0; i < warmups; ++i)
+                                    runTrial(queueType, payloadType,
+                                             numProducers, numConsumers,
+                                             queueCapacity, batchSize, iterations);
+
+                                // Combine the measured trials.
+                                Result total = new Result();
+                                for (int i = 0; i < trials; ++i) {
+                                    Result r = runTrial(queueType, payloadType,
+                                                        numProducers, numConsumers,
+                                                        queueCapacity, batchSize, iterations);
+                                    total.mTaken += r.mTaken;
+                                    total.mErrors += r.mErrors;
+                                    total.mElapsedNanos += r.mElapsedNanos;
+                                    total.mLatency.add(r.mLatency);
+                                }
+
+                                double opsPerSecond = total.mElapsedNanos == 0
+                                    ? 0.0
+                                    : total.mTaken * (double) TimeUnit.SECONDS.toNanos(1)
+                                      / total.mElapsedNanos;
+
+                                System.out.println
+                                    (String.format("%-12s %-8s %3d %3d %8d %5d %14.0f %10.1f %10.1f %10.1f %10.1f %8d",
+                                                   queue, payload,
+                                                   numProducers, numConsumers,
+                                                   queueCapacity, batchSize, opsPerSecond,
+                                                   micros(total.mLatency.getValueAtPercentile(50.0)),
+                                                   micros(total.mLatency.getValueAtPercentile(99.0)),
+                                                   micros(total.mLatency.getValueAtPercentile(99.9)),
+                                                   micros(total.mLatency.getMaxValue()),
+                                                   total.mErrors));
+                            }
+    }
+}
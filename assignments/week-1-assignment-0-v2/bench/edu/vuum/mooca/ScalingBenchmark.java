@@ -0,0 +1,118 @@
+package edu.vuum.mooca;
+
+import java.util.Map;
+
+import edu.vuum.mooca.MultiThreadedSynchronizedQueue.ExecutionMode;
+import edu.vuum.mooca.SynchronizedQueue.QueueAdapter;
+import edu.vuum.mooca.SynchronizedQueue.SynchronizedQueueResult;
+import edu.vuum.mooca.SynchronizedQueue.ThreadResult;
+
+/**
+ * @class ScalingBenchmark
+ *
+ * @brief Runs the SynchronizedQueue test harness with an increasing
+ *        number of producer and consumer Threads for each queue
+ *        implementation and prints the total and per-Thread
+ *        throughput, which shows where each queue collapses under
+ *        contention.  If "-metrics" is given a number of
+ *        milliseconds, each queue's QueueMetrics are printed that
+ *        often while the test runs, and again when it's done.
+ *        Options are given as "-name value" pairs (see
+ *        QueueBenchmark), e.g.:
+ *
+ *        java edu.vuum.mooca.ScalingBenchmark -queues ARRAY,RING_BUFFER
+ *             -threads 1,2,4,8,16 -mode EXECUTOR -capacity 1024
+ *             -metrics 20
+ */
+public class ScalingBenchmark {
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        String[] queues = QueueBenchmark.option(options, "queues", "ARRAY,LINKED,RING_BUFFER");
+        String[] threads = QueueBenchmark.option(options, "threads", "1,2,4,8,16");
+        ExecutionMode mode =
+            ExecutionMode.valueOf(QueueBenchmark.option(options, "mode", "THREADS")[0]);
+        int capacity = Integer.parseInt(QueueBenchmark.option(options, "capacity", "1024")[0]);
+        boolean verbose =
+            Boolean.parseBoolean(QueueBenchmark.option(options, "verbose", "false")[0]);
+        final long metricsMillis =
+            Long.parseLong(QueueBenchmark.option(options, "metrics", "0")[0]);
+
+        System.out.println(String.format("%-12s %7s %14s %14s %14s %14s  %s",
+                                         "queue", "threads", "put ops/s",
+                                         "take ops/s", "min/thread",
+                                         "max/thread", "result"));
+
+        for (String queue : queues)
+            for (String n : threads) {
+                QueueBenchmark.QueueType queueType =
+                    QueueBenchmark.QueueType.valueOf(queue);
+                int numThreads = Integer.parseInt(n);
+
+                final QueueMetrics metrics =
+                    metricsMillis > 0 ? new QueueMetrics() : null;
+                Thread sampler = null;
+                if (metrics != null) {
+                    // Print the metrics periodically while the test
+                    // runs.
+                    sampler = new Thread(new Runnable() {
+                            public void run() {
+                                try {
+                                    for (;;) {
+                                        Thread.sleep(metricsMillis);
+                                        System.out.println("    " + metrics.snapshot());
+                                    }
+                                } catch (InterruptedException e) {
+                                    // The test is done.
+                                }
+                            }
+                        }, "metrics-sampler");
+                    sampler.setDaemon(true);
+                    sampler.start();
+                }
+
+                SynchronizedQueueResult result =
+                    new MultiThreadedSynchronizedQueue(numThreads,
+                                                       numThreads,
+                                                       mode,
+                                                       true)
+                    .testQueue(new QueueAdapter<Integer>(queueType.<Integer>makeQueue(capacity),
+                                                         metrics),
+                               queue);
+
+                if (sampler != null) {
+                    sampler.interrupt();
+                    try {
+                        sampler.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    System.out.println("    final: " + metrics.snapshot());
+                }
+
+                // Sum the throughput of the producers and consumers
+                // separately and find the spread across Threads.
+                double putRate = 0, takeRate = 0;
+                double minRate = Double.MAX_VALUE, maxRate = 0;
+                for (ThreadResult r : SynchronizedQueue.getThreadResults()) {
+                    double rate = r.getThroughput();
+                    if (r.getThreadName().startsWith("producer"))
+                        putRate += rate;
+                    else
+                        takeRate += rate;
+                    minRate = Math.min(minRate, rate);
+                    maxRate = Math.max(maxRate, rate);
+                    if (verbose)
+                        System.out.println("    " + r);
+                }
+
+                System.out.println(String.format("%-12s %7d %14.0f %14.0f %14.0f %14.0f  %s",
+                                                 queue, numThreads, putRate,
+                                                 takeRate, minRate, maxRate,
+                                                 result));
+            }
+    }
+}
@@ -0,0 +1,159 @@
+package edu.vuum.mooca;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import edu.vuum.mooca.MultiThreadedSynchronizedQueue.ExecutionMode;
+import edu.vuum.mooca.SynchronizedQueue.QueueAdapter;
+import edu.vuum.mooca.SynchronizedQueue.SynchronizedQueueResult;
+import edu.vuum.mooca.SynchronizedQueue.ThreadResult;
+
+/**
+ * @class VirtualThreadBenchmark
+ *
+ * @brief Compares running the SynchronizedQueue test harness with
+ *        platform Threads and with virtual Threads, using many more
+ *        producers than consumers so that most producers are blocked
+ *        in QueueAdapter.put() at any given time.  For each run it
+ *        prints the put/take throughput, the process CPU
+ *        utilization, the number and CPU utilization of the carrier
+ *        Threads that run the virtual Threads, and the number of
+ *        times a virtual Thread parked while pinned to its carrier.
+ *        Options are given as "-name value" pairs (see
+ *        QueueBenchmark), e.g.:
+ *
+ *        java edu.vuum.mooca.VirtualThreadBenchmark -producers 1000
+ *             -consumers 4 -queues ARRAY,LINKED,RING_BUFFER
+ */
+public class VirtualThreadBenchmark {
+    /**
+     * Prefix of the names of the carrier Threads in the default
+     * virtual Thread scheduler.
+     */
+    static final String CARRIER_PREFIX = "ForkJoinPool-";
+
+    /**
+     * Returns the CPU time used by the process so far, or -1 if it's
+     * not available.
+     */
+    static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            // Only the com.sun.management subinterface has this
+            // method, so call it reflectively via that interface.
+            Method method = Class.forName("com.sun.management.OperatingSystemMXBean")
+                .getMethod("getProcessCpuTime");
+            return (Long) method.invoke(os);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the total CPU time used so far by the live carrier
+     * Threads and stores their number in @a count[0].
+     */
+    static long carrierCpuNanos(int[] count) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        count[0] = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null
+                || !info.getThreadName().startsWith(CARRIER_PREFIX))
+                continue;
+            long cpu = threads.getThreadCpuTime(info.getThreadId());
+            if (cpu > 0) {
+                total += cpu;
+                count[0]++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        String[] queues = QueueBenchmark.option(options, "queues", "ARRAY,LINKED,RING_BUFFER");
+        String[] modes = QueueBenchmark.option(options, "modes", "THREADS,VIRTUAL_THREADS");
+        int producers = Integer.parseInt(QueueBenchmark.option(options, "producers", "1000")[0]);
+        int consumers = Integer.parseInt(QueueBenchmark.option(options, "consumers", "4")[0]);
+        int capacity = Integer.parseInt(QueueBenchmark.option(options, "capacity", "1024")[0]);
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        System.out.println(String.format("%-12s %-16s %12s %12s %8s %9s %10s %8s  %s",
+                                         "queue", "mode", "put ops/s",
+                                         "take ops/s", "cpu%", "carriers",
+                                         "carrier%", "pinned", "result"));
+
+        for (String queue : queues)
+            for (String modeName : modes) {
+                ExecutionMode mode = ExecutionMode.valueOf(modeName);
+                if (mode == ExecutionMode.VIRTUAL_THREADS
+                    && !VirtualThreads.isSupported()) {
+                    System.out.println(String.format("%-12s %-16s virtual Threads aren't supported by Java %s",
+                                                     queue, modeName,
+                                                     System.getProperty("java.version")));
+                    continue;
+                }
+
+                QueueBenchmark.QueueType queueType =
+                    QueueBenchmark.QueueType.valueOf(queue);
+                PinningMonitor pinning = mode == ExecutionMode.VIRTUAL_THREADS
+                    ? PinningMonitor.start()
+                    : null;
+                int[] carriers = new int[1];
+
+                long startCarrierCpu = carrierCpuNanos(carriers);
+                long startCpu = processCpuNanos();
+                long startNanos = System.nanoTime();
+
+                SynchronizedQueueResult result =
+                    new MultiThreadedSynchronizedQueue(producers,
+                                                       consumers,
+                                                       mode,
+                                                       false)
+                    .testQueue(new QueueAdapter<Integer>(queueType.<Integer>makeQueue(capacity)),
+                               queue);
+
+                long elapsed = System.nanoTime() - startNanos;
+                double cpuPercent =
+                    100.0 * (processCpuNanos() - startCpu) / ((double) elapsed * cpus);
+                long carrierCpu = carrierCpuNanos(carriers) - startCarrierCpu;
+                double carrierPercent = carriers[0] == 0
+                    ? 0.0
+                    : 100.0 * carrierCpu / ((double) elapsed * carriers[0]);
+
+                double putRate = 0, takeRate = 0;
+                for (ThreadResult r : SynchronizedQueue.getThreadResults())
+                    if (r.getThreadName().startsWith("producer"))
+                        putRate += r.getThroughput();
+                    else
+                        takeRate += r.getThroughput();
+
+                if (pinning != null)
+                    pinning.stop();
+
+                System.out.println(String.format("%-12s %-16s %12.0f %12.0f %8.1f %9d %10.1f %8s  %s",
+                                                 queue, modeName, putRate,
+                                                 takeRate, cpuPercent,
+                                                 carriers[0], carrierPercent,
+                                                 pinning == null
+                                                 ? "-"
+                                                 : pinning.isActive()
+                                                 ? Long.toString(pinning.getPinnedCount())
+                                                 : "n/a",
+                                                 result));
+
+                if (pinning != null)
+                    for (String example : pinning.getExamples())
+                        System.out.println("    pinned: " + example);
+            }
+    }
+}
@@ -3,7 +3,7 @@ package edu.vuum.mooca;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -13,12 +13,12 @@ import java.util.concurrent.TimeUnit;
  *        doesn't implement any synchronization mechanisms, so of
  *        course it will fail horribly, which is the intent!
  */
-public class BuggyBlockingQueue<E> implements BlockingQueue<E> {
+public class BuggyBlockingQueue<E> implements BulkBlockingQueue<E> {
     /**
      * ArrayList doesn't provide any synchronization, so it will not
      * work correctly when called from multiple Java Threads.
      */
-    private ArrayList<E> mList = null;
+    private List<E> mList = null;
 
     /**
      * Constructor just creates an ArrayList of the appropriate size.
@@ -27,6 +27,14 @@ public class BuggyBlockingQueue<E> implements BlockingQueue<E> {
         mList = new ArrayList<E>(initialSize);
     }
 
+    /**
+     * Constructor uses @a list, e.g., an InstrumentedArrayList, which
+     * has the same races as an ArrayList.
+     */
+    BuggyBlockingQueue(List<E> list) {
+        mList = list;
+    }
+
     /**
      * Returns the number of elements in this queue.
      */
@@ -51,16 +59,42 @@ public class BuggyBlockingQueue<E> implements BlockingQueue<E> {
     }
 
     /**
-     * All these methods are inherited from the BlockingQueue
-     * interface. They are defined as no-ops to ensure the "Buggyness"
-     * of this class ;-)
+     * Insert all the elements of @a c at the tail of the queue, but
+     * doesn't block if the queue is full.
+     */
+    public int offerAll(Collection<? extends E> c,
+                        long timeout,
+                        TimeUnit unit) {
+        mList.addAll(c);
+        return c.size();
+    }
+
+    /**
+     * Remove all the elements from the head of the queue and add them
+     * to @a c.
      */
     public int drainTo(Collection<? super E> c) {
-        return 0;
+        return drainTo(c, Integer.MAX_VALUE);
     }
+
+    /**
+     * Remove up to @a maxElements elements from the head of the queue
+     * and add them to @a c.  The elements are removed in one shift of
+     * the ArrayList, which is still not synchronized.
+     */
     public int drainTo(Collection<? super E> c, int maxElements) {
-        return 0;
+        List<E> head = mList.subList(0, Math.min(maxElements, mList.size()));
+        int n = head.size();
+        c.addAll(head);
+        head.clear();
+        return n;
     }
+
+    /**
+     * All these methods are inherited from the BlockingQueue
+     * interface. They are defined as no-ops to ensure the "Buggyness"
+     * of this class ;-)
+     */
     public boolean contains(Object o) {
         return false;
     }
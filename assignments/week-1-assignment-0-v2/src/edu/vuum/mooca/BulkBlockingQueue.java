@@ -0,0 +1,31 @@
+package edu.vuum.mooca;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class BulkBlockingQueue
+ *
+ * @brief Extends the BlockingQueue interface with a bulk insert
+ *        operation that can amortize the cost of synchronization
+ *        across a batch of elements.  QueueAdapter.putAll() uses
+ *        this operation when the queue it adapts implements it, and
+ *        otherwise falls back to inserting one element at a time.
+ */
+public interface BulkBlockingQueue<E> extends BlockingQueue<E> {
+    /**
+     * Insert the elements of @a c at the tail of the queue in
+     * iteration order, waiting up to @a timeout for space to become
+     * available.  If the calling Thread is interrupted after some
+     * elements were inserted, its interrupt status is set and the
+     * partial count is returned rather than throwing
+     * InterruptedException, so the caller can account for them.
+     *
+     * @return The number of elements inserted, which is less than
+     *         c.size() if the timeout elapsed first.
+     */
+    public int offerAll(Collection<? extends E> c,
+                        long timeout,
+                        TimeUnit unit) throws InterruptedException;
+}
@@ -0,0 +1,348 @@
+package edu.vuum.mooca;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @class DiagnosticLog
+ *
+ * @brief Records diagnostic events from the Threads under test in a
+ *        preallocated ring buffer and formats and prints them in a
+ *        background "drain" Thread, so diagnostics can stay enabled
+ *        without the Threads under test building Strings or
+ *        contending for the lock in System.out.println().  An event
+ *        is a message whose "{}" placeholders are filled in (by the
+ *        drain Thread) with up to two Object arguments or a long
+ *        argument, together with the Thread that logged it and a
+ *        timestamp.  Logging doesn't allocate (long arguments aren't
+ *        boxed) and never blocks: if the ring buffer is full the
+ *        event is dropped and the number of dropped events is
+ *        printed instead.  close() prints the remaining events and
+ *        stops the drain Thread of a DiagnosticLog that's no longer
+ *        needed.
+ */
+public class DiagnosticLog {
+    /**
+     * Default number of events the ring buffer can hold.
+     */
+    static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * How long the drain Thread sleeps when there's nothing to print.
+     */
+    private static final long IDLE_PARK_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Number of characters the drain Thread formats before printing
+     * them.
+     */
+    private static final int PRINT_CHUNK = 8192;
+
+    /**
+     * Kinds of argument an event can have.
+     */
+    static final byte NO_ARGS = 0;
+    static final byte OBJECT_ARGS = 1;
+    static final byte LONG_ARG = 2;
+
+    /**
+     * The fields of each event, indexed by slot.
+     */
+    private final long[] mNanos;
+    private final Thread[] mThreads;
+    private final String[] mFormats;
+    private final byte[] mKinds;
+    private final Object[] mArgs1;
+    private final Object[] mArgs2;
+    private final long[] mLongArgs;
+
+    /**
+     * One more than the sequence number of the event in each slot
+     * once it has been fully written, which publishes the event to
+     * the drain Thread.
+     */
+    private final AtomicLongArray mPublished;
+
+    /**
+     * Used to map a sequence number to a slot.
+     */
+    private final int mMask;
+
+    /**
+     * Sequence number of the next event to log.
+     */
+    private final AtomicLong mNextSequence = new AtomicLong();
+
+    /**
+     * Sequence number of the next event the drain Thread will
+     * format, which frees the slots before it for reuse.
+     */
+    private final AtomicLong mDrainSequence = new AtomicLong();
+
+    /**
+     * Sequence number of the next event that hasn't been printed.
+     */
+    private final AtomicLong mPrintedSequence = new AtomicLong();
+
+    /**
+     * Number of events dropped because the ring buffer was full.
+     */
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * Where the events are printed.
+     */
+    private final PrintStream mOut;
+
+    /**
+     * Time the log was created, which event timestamps are relative
+     * to.
+     */
+    private final long mStartNanos = System.nanoTime();
+
+    /**
+     * The Thread that formats and prints the events.
+     */
+    private final Thread mDrainer;
+
+    /**
+     * True once close() has been called, after which events are
+     * dropped and the drain Thread exits when it has printed the
+     * rest.
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * Holds the default DiagnosticLog, which prints to System.out,
+     * so its drain Thread is only started if it's used.
+     */
+    private static class DefaultLogHolder {
+        static final DiagnosticLog sLog =
+            new DiagnosticLog(DEFAULT_CAPACITY, System.out);
+    }
+
+    /**
+     * Constructor preallocates a ring buffer for at least @a capacity
+     * events and starts the drain Thread, which prints to @a out.
+     * Only the default DiagnosticLog (and tests) need one.
+     */
+    DiagnosticLog(int capacity, PrintStream out) {
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+
+        mNanos = new long[size];
+        mThreads = new Thread[size];
+        mFormats = new String[size];
+        mKinds = new byte[size];
+        mArgs1 = new Object[size];
+        mArgs2 = new Object[size];
+        mLongArgs = new long[size];
+        mPublished = new AtomicLongArray(size);
+        mMask = size - 1;
+        mOut = out;
+
+        mDrainer = new Thread(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            }, "diagnostic-log");
+        mDrainer.setDaemon(true);
+        mDrainer.start();
+    }
+
+    /**
+     * Returns the default DiagnosticLog, which prints to System.out.
+     */
+    public static DiagnosticLog getDefault() {
+        return DefaultLogHolder.sLog;
+    }
+
+    /**
+     * Log @a message to the default DiagnosticLog.
+     */
+    public static void log(String message) {
+        getDefault().record(message, NO_ARGS, null, null, 0);
+    }
+
+    /**
+     * Log @a format, with its "{}" filled in by @a arg, to the
+     * default DiagnosticLog.
+     */
+    public static void log(String format, Object arg) {
+        getDefault().record(format, OBJECT_ARGS, arg, null, 0);
+    }
+
+    /**
+     * Log @a format, with its two "{}" filled in by @a arg1 and @a
+     * arg2, to the default DiagnosticLog.
+     */
+    public static void log(String format, Object arg1, Object arg2) {
+        getDefault().record(format, OBJECT_ARGS, arg1, arg2, 0);
+    }
+
+    /**
+     * Log @a format, with its "{}" filled in by @a arg, to the
+     * default DiagnosticLog without boxing @a arg.
+     */
+    public static void log(String format, long arg) {
+        getDefault().record(format, LONG_ARG, null, null, arg);
+    }
+
+    /**
+     * Wait until all the events logged to the default DiagnosticLog
+     * so far have been printed.
+     */
+    public static void flushDefault() {
+        getDefault().flush();
+    }
+
+    /**
+     * Record an event in the next free slot, or drop it if there
+     * isn't one.  The arguments are formatted later by the drain
+     * Thread, so they shouldn't be modified after they're logged.
+     */
+    void record(String format, byte kind, Object arg1, Object arg2, long longArg) {
+        long sequence;
+        do {
+            if (mClosed) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            sequence = mNextSequence.get();
+            if (sequence - mDrainSequence.get() > mMask) {
+                mDropped.incrementAndGet();
+                return;
+            }
+        } while (!mNextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mMask;
+        mNanos[slot] = System.nanoTime();
+        mThreads[slot] = Thread.currentThread();
+        mFormats[slot] = format;
+        mKinds[slot] = kind;
+        mArgs1[slot] = arg1;
+        mArgs2[slot] = arg2;
+        mLongArgs[slot] = longArg;
+        mPublished.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Wait until all the events logged so far have been printed.
+     */
+    public void flush() {
+        long target = mNextSequence.get();
+        while (mPrintedSequence.get() < target && mDrainer.isAlive())
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+
+    /**
+     * Print the events logged so far and stop the drain Thread.
+     * Events logged afterwards are dropped.  The default
+     * DiagnosticLog is shared, so it shouldn't be closed.
+     */
+    public void close() {
+        flush();
+        mClosed = true;
+        LockSupport.unpark(mDrainer);
+
+        boolean interrupted = false;
+        while (mDrainer.isAlive()) {
+            try {
+                mDrainer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Returns the number of events dropped so far because the ring
+     * buffer was full.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Append @a format to @a line with each "{}" replaced by the next
+     * of the event's arguments.
+     */
+    private void format(StringBuilder line, int slot) {
+        String format = mFormats[slot];
+        int argIndex = 0;
+        int start = 0;
+
+        for (int i; (i = format.indexOf("{}", start)) >= 0; start = i + 2) {
+            line.append(format, start, i);
+            if (mKinds[slot] == LONG_ARG && argIndex == 0)
+                line.append(mLongArgs[slot]);
+            else if (mKinds[slot] == OBJECT_ARGS && argIndex < 2)
+                line.append(argIndex == 0 ? mArgs1[slot] : mArgs2[slot]);
+            else
+                line.append("{}");
+            argIndex++;
+        }
+        line.append(format, start, format.length());
+    }
+
+    /**
+     * Runs in the drain Thread, formatting and printing the events in
+     * the order they were logged.
+     */
+    private void drain() {
+        StringBuilder text = new StringBuilder(2 * PRINT_CHUNK);
+        long sequence = 0;
+        long reportedDrops = 0;
+
+        for (;;) {
+            int slot = (int) sequence & mMask;
+
+            if (mPublished.get(slot) == sequence + 1) {
+                text.append('[')
+                    .append((mNanos[slot] - mStartNanos) / 1000)
+                    .append(" us] ")
+                    .append(mThreads[slot].getName())
+                    .append(": ");
+                format(text, slot);
+                text.append('\n');
+
+                // Don't keep the arguments reachable.
+                mThreads[slot] = null;
+                mArgs1[slot] = mArgs2[slot] = null;
+                mDrainSequence.lazySet(++sequence);
+
+                if (text.length() < PRINT_CHUNK)
+                    continue;
+            }
+
+            long dropped = mDropped.get();
+            if (dropped != reportedDrops) {
+                text.append("[")
+                    .append(dropped - reportedDrops)
+                    .append(" diagnostic events dropped]\n");
+                reportedDrops = dropped;
+            }
+
+            if (text.length() > 0) {
+                mOut.print(text);
+                mOut.flush();
+                text.setLength(0);
+                mPrintedSequence.set(sequence);
+            } else {
+                mPrintedSequence.set(sequence);
+                // Once closed, exit when every event that was
+                // recorded has been printed.
+                if (mClosed && sequence == mNextSequence.get())
+                    return;
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
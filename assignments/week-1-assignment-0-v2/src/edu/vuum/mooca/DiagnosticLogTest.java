@@ -0,0 +1,102 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ * @class DiagnosticLogTest
+ *
+ * @brief This class tests that DiagnosticLog fills in the arguments
+ *        of each event and prints the events logged by each Thread in
+ *        order.
+ */
+public class DiagnosticLogTest {
+    /**
+     * Number of Threads that log events.
+     */
+    final static int mNumThreads = 4;
+
+    /**
+     * Number of events each Thread logs.
+     */
+    final static int mMaxIterations = 1000;
+
+    /**
+     * Tests that "{}" placeholders are filled in.
+     */
+    @Test
+    public void formatTest() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiagnosticLog log = new DiagnosticLog(16, new PrintStream(bytes));
+
+        log.record("a {} b {} c", DiagnosticLog.OBJECT_ARGS, "x", 42, 0);
+        log.record("n = {}", DiagnosticLog.LONG_ARG, null, null, 7L);
+        log.record("no {} args", DiagnosticLog.NO_ARGS, null, null, 0);
+        log.close();
+
+        String[] lines = bytes.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(": a x b 42 c"));
+        assertTrue(lines[1], lines[1].endsWith(": n = 7"));
+        assertTrue(lines[2], lines[2].endsWith(": no {} args"));
+    }
+
+    /**
+     * Tests that the events logged concurrently by several Threads
+     * are all printed in the order each Thread logged them.
+     */
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DiagnosticLog log =
+            new DiagnosticLog(mNumThreads * mMaxIterations, new PrintStream(bytes));
+
+        Thread[] threads = new Thread[mNumThreads];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int j = 0; j < mMaxIterations; ++j)
+                            log.record("event {}", DiagnosticLog.LONG_ARG, null, null, j);
+                    }
+                }, "logger-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        log.close();
+
+        int[] next = new int[mNumThreads];
+        for (String line : bytes.toString().split("\n")) {
+            int thread = line.charAt(line.indexOf("logger-") + 7) - '0';
+            int event = Integer.parseInt(line.substring(line.indexOf("event ") + 6));
+            assertEquals(next[thread]++, event);
+        }
+        for (int count : next)
+            assertEquals(mMaxIterations, count);
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    /**
+     * Tests that close() prints the pending events, stops the drain
+     * Thread and drops the events logged afterwards.
+     */
+    @Test(timeout = 5000)
+    public void closeTest() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiagnosticLog log = new DiagnosticLog(16, new PrintStream(bytes));
+
+        log.record("before", DiagnosticLog.NO_ARGS, null, null, 0);
+        log.close();
+        log.record("after", DiagnosticLog.NO_ARGS, null, null, 0);
+        log.flush();
+        log.close();
+
+        String[] lines = bytes.toString().split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(": before"));
+        assertEquals(1, log.getDroppedCount());
+    }
+}
@@ -0,0 +1,103 @@
+package edu.vuum.mooca;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * @class InstrumentedArrayList
+ *
+ * @brief A resizable-array List whose add() and remove() take the
+ *        same steps as those of java.util.ArrayList, with an
+ *        InterleavingExplorer schedule point between the steps where
+ *        a context switch exposes the races in an unsynchronized
+ *        ArrayList (e.g., an add() that read the size before a
+ *        concurrent remove() shifted the elements).  ArrayList itself
+ *        can't be instrumented, so the InterleavingExplorer tests
+ *        give one of these to a BuggyBlockingQueue instead.  Outside
+ *        an InterleavingExplorer it's just an (unsynchronized) List.
+ */
+public class InstrumentedArrayList<E> extends AbstractList<E> {
+    /**
+     * The elements, of which the first mSize are in the List.
+     */
+    private Object[] mElements;
+
+    /**
+     * Number of elements in the List.
+     */
+    private int mSize;
+
+    /**
+     * Constructor makes room for @a initialCapacity elements.
+     */
+    public InstrumentedArrayList(int initialCapacity) {
+        mElements = new Object[Math.max(initialCapacity, 1)];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        return (E) mElements[index];
+    }
+
+    /**
+     * Append @a e, like ArrayList's elementData[size++] = e, which
+     * reads the size, stores the element and then writes the size.
+     */
+    public boolean add(E e) {
+        int size = mSize;
+        InterleavingExplorer.schedulePoint("add: read size " + size);
+
+        if (size == mElements.length)
+            mElements = Arrays.copyOf(mElements, size + (size >> 1) + 1);
+        mElements[size] = e;
+        InterleavingExplorer.schedulePoint("add: stored element " + size);
+
+        mSize = size + 1;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Insert @a e at @a index.  Only add(E) and remove(int) have
+     * schedule points.
+     */
+    public void add(int index, E e) {
+        if (index < 0 || index > mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        if (mSize == mElements.length)
+            mElements = Arrays.copyOf(mElements, mSize + (mSize >> 1) + 1);
+        System.arraycopy(mElements, index, mElements, index + 1, mSize - index);
+        mElements[index] = e;
+        mSize++;
+        modCount++;
+    }
+
+    /**
+     * Remove the element at @a index, like ArrayList, which reads the
+     * size and the element, shifts the elements after it down, clears
+     * the last element and then writes the size.
+     */
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        int size = mSize;
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        E element = (E) mElements[index];
+        InterleavingExplorer.schedulePoint("remove: read element " + index);
+
+        System.arraycopy(mElements, index + 1, mElements, index, size - index - 1);
+        mElements[size - 1] = null;
+        InterleavingExplorer.schedulePoint("remove: shifted elements");
+
+        mSize = size - 1;
+        modCount++;
+        return element;
+    }
+}
@@ -0,0 +1,232 @@
+package edu.vuum.mooca;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @class IntBlockingQueue
+ *
+ * @brief Defines a bounded blocking queue of primitive ints.  It
+ *        works like ArrayBlockingQueue (a circular buffer guarded by
+ *        a ReentrantLock and "not empty"/"not full" Conditions), but
+ *        stores the elements in an int[] and its putInt()/takeInt()
+ *        methods pass ints, so unlike a BlockingQueue<Integer> it
+ *        doesn't allocate (or box) anything per element.
+ */
+public class IntBlockingQueue {
+    /**
+     * The circular buffer that stores the elements.
+     */
+    private final int[] mItems;
+
+    /**
+     * Index of the next element to take.
+     */
+    private int mTakeIndex;
+
+    /**
+     * Index of the next slot to put into.
+     */
+    private int mPutIndex;
+
+    /**
+     * Number of elements in the queue.
+     */
+    private int mCount;
+
+    /**
+     * Guards all access to the fields above.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    /**
+     * Signaled when an element is put into the queue.
+     */
+    private final Condition mNotEmpty = mLock.newCondition();
+
+    /**
+     * Signaled when an element is taken from the queue.
+     */
+    private final Condition mNotFull = mLock.newCondition();
+
+    /**
+     * Constructor makes a queue that holds at most @a capacity ints.
+     */
+    public IntBlockingQueue(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        mItems = new int[capacity];
+    }
+
+    /**
+     * Insert @a e at the tail of the queue.  Must be called with
+     * mLock held and the queue not full.
+     */
+    private void enqueue(int e) {
+        mItems[mPutIndex] = e;
+        if (++mPutIndex == mItems.length)
+            mPutIndex = 0;
+        mCount++;
+        mNotEmpty.signal();
+    }
+
+    /**
+     * Remove and return the int at the head of the queue.  Must be
+     * called with mLock held and the queue not empty.
+     */
+    private int dequeue() {
+        int e = mItems[mTakeIndex];
+        if (++mTakeIndex == mItems.length)
+            mTakeIndex = 0;
+        mCount--;
+        mNotFull.signal();
+        return e;
+    }
+
+    /**
+     * Insert @a e at the tail of the queue if there's room.
+     *
+     * @return true if @a e was inserted, else false.
+     */
+    public boolean offerInt(int e) {
+        mLock.lock();
+        try {
+            if (mCount == mItems.length)
+                return false;
+            enqueue(e);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Insert @a e at the tail of the queue, waiting up to @a timeout
+     * for room to become available.
+     *
+     * @return true if @a e was inserted, else false if the timeout
+     *         elapsed first.
+     */
+    public boolean offerInt(int e, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            while (mCount == mItems.length) {
+                if (nanos <= 0)
+                    return false;
+                nanos = mNotFull.awaitNanos(nanos);
+            }
+            enqueue(e);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Insert @a e at the tail of the queue, waiting as long as
+     * necessary for room to become available.
+     */
+    public void putInt(int e) throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            while (mCount == mItems.length)
+                mNotFull.await();
+            enqueue(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Remove and return the int at the head of the queue, waiting as
+     * long as necessary for one to become available.
+     */
+    public int takeInt() throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            while (mCount == 0)
+                mNotEmpty.await();
+            return dequeue();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Remove and return the int at the head of the queue, waiting up
+     * to @a timeout for one to become available.  There's no int
+     * value that can signal "empty", so a timeout is reported by
+     * throwing an exception.
+     *
+     * @throws TimeoutException if the timeout elapsed first.
+     */
+    public int takeInt(long timeout, TimeUnit unit)
+        throws InterruptedException, TimeoutException {
+        long nanos = unit.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            while (mCount == 0) {
+                if (nanos <= 0)
+                    throw new TimeoutException();
+                nanos = mNotEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Remove up to @a maxElements ints from the head of the queue
+     * without waiting and store them at the start of @a dst.
+     *
+     * @return The number of ints removed.
+     */
+    public int drainTo(int[] dst, int maxElements) {
+        mLock.lock();
+        try {
+            int n = Math.min(Math.min(maxElements, dst.length), mCount);
+            for (int i = 0; i < n; i++)
+                dst[i] = dequeue();
+            return n;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of ints in the queue.
+     */
+    public int size() {
+        mLock.lock();
+        try {
+            return mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of ints that can be inserted without
+     * blocking.
+     */
+    public int remainingCapacity() {
+        mLock.lock();
+        try {
+            return mItems.length - mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of ints the queue can hold.
+     */
+    public int capacity() {
+        return mItems.length;
+    }
+}
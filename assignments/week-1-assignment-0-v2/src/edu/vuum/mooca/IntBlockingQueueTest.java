@@ -0,0 +1,60 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * @class IntBlockingQueueTest
+ *
+ * @brief This class tests that IntBlockingQueue keeps its ints in
+ *        FIFO order as its circular buffer wraps around, and that it
+ *        reports full and empty queues properly.
+ */
+public class IntBlockingQueueTest {
+    /**
+     * Tests FIFO order across several wrap-arounds of the buffer.
+     */
+    @Test
+    public void fifoTest() throws Exception {
+        IntBlockingQueue queue = new IntBlockingQueue(3);
+
+        for (int i = 0; i < 10; ++i) {
+            queue.putInt(i);
+            queue.putInt(-i);
+            assertEquals(2, queue.size());
+            assertEquals(i, queue.takeInt());
+            assertEquals(-i, queue.takeInt(1, TimeUnit.SECONDS));
+        }
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Tests that offers fail when the queue is full and timed takes
+     * throw TimeoutException when it's empty.
+     */
+    @Test
+    public void fullAndEmptyTest() throws Exception {
+        IntBlockingQueue queue = new IntBlockingQueue(2);
+
+        assertTrue(queue.offerInt(1));
+        assertTrue(queue.offerInt(2, 0, TimeUnit.SECONDS));
+        assertFalse(queue.offerInt(3));
+        assertFalse(queue.offerInt(3, 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+
+        int[] dst = new int[4];
+        assertEquals(2, queue.drainTo(dst, 4));
+        assertEquals(1, dst[0]);
+        assertEquals(2, dst[1]);
+
+        try {
+            queue.takeInt(10, TimeUnit.MILLISECONDS);
+            fail("takeInt() on an empty queue didn't time out");
+        } catch (TimeoutException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package edu.vuum.mooca;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class InterleavingExplorer
+ *
+ * @brief Deterministically explores the ways the Threads of a
+ *        Scenario can interleave, rather than hoping that sleeps and
+ *        timeouts provoke a race.  Each Thread of the Scenario runs in
+ *        a real Java Thread, but only one of them runs at a time: a
+ *        Thread runs until it reaches a schedule point (see
+ *        schedulePoint() and waitPoint()), where it hands control back
+ *        to the explorer, which picks the Thread to run next.  The
+ *        code under test is instrumented with schedule points wherever
+ *        a context switch could expose a race (e.g., see
+ *        InstrumentedArrayList), and must not otherwise block.
+ *
+ *        A schedule is the sequence of Threads picked at the schedule
+ *        points.  By default the explorer keeps running the current
+ *        Thread, so switching away from a Thread that could continue
+ *        is a "preemption".  Schedules are explored depth first with
+ *        an increasing bound on the number of preemptions (iterative
+ *        context bounding), so the first failing schedule found is a
+ *        minimal one, i.e., it has as few preemptions as possible.
+ *        Since most races need only one or two preemptions this finds
+ *        them after a small number of executions, and the failing
+ *        schedule can be replayed exactly with run().
+ */
+public class InterleavingExplorer {
+    /**
+     * @class Scenario
+     *
+     * @brief The Threads whose interleavings are explored and the
+     *        check of their outcome.
+     */
+    public interface Scenario {
+        /**
+         * Set up fresh state for an execution and return the bodies
+         * of its Threads.
+         */
+        Runnable[] setUp();
+
+        /**
+         * Returns the names of the Threads, in the same order.
+         */
+        String[] threadNames();
+
+        /**
+         * Called after all the Threads have finished to check the
+         * outcome of an execution.
+         *
+         * @return A description of what went wrong, or null if the
+         *         outcome is correct.
+         */
+        String check();
+    }
+
+    /**
+     * @class Result
+     *
+     * @brief The outcome of an exploration, or of a single execution.
+     */
+    public static class Result {
+        private final String mFailure;
+        private final int[] mSchedule;
+        private final List<String> mTrace;
+        private final int mPreemptions;
+        private final int mExecutions;
+
+        Result(String failure,
+               int[] schedule,
+               List<String> trace,
+               int preemptions,
+               int executions) {
+            mFailure = failure;
+            mSchedule = schedule;
+            mTrace = trace;
+            mPreemptions = preemptions;
+            mExecutions = executions;
+        }
+
+        /**
+         * Returns true if a failing schedule was found.
+         */
+        public boolean failed() {
+            return mFailure != null;
+        }
+
+        /**
+         * Returns the description of the failure, or null.
+         */
+        public String getFailure() {
+            return mFailure;
+        }
+
+        /**
+         * Returns the index of the Thread picked at each schedule
+         * point of the failing (or last) execution, which can be
+         * passed to run() to replay it.
+         */
+        public int[] getSchedule() {
+            return mSchedule.clone();
+        }
+
+        /**
+         * Returns one line per step of the failing (or last)
+         * execution, naming the Thread that ran and the schedule
+         * point it ran to.
+         */
+        public List<String> getTrace() {
+            return mTrace;
+        }
+
+        /**
+         * Returns the number of preemptions in the schedule.
+         */
+        public int getPreemptions() {
+            return mPreemptions;
+        }
+
+        /**
+         * Returns the number of executions explored.
+         */
+        public int getExecutions() {
+            return mExecutions;
+        }
+
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            if (mFailure == null)
+                text.append("no failure found in ")
+                    .append(mExecutions)
+                    .append(" executions\n");
+            else
+                text.append(mFailure)
+                    .append("\nafter ")
+                    .append(mExecutions)
+                    .append(" executions, with ")
+                    .append(mPreemptions)
+                    .append(" preemption(s):\n");
+            if (mFailure != null)
+                for (String step : mTrace)
+                    text.append("  ").append(step).append('\n');
+            return text.toString();
+        }
+    }
+
+    /**
+     * Thrown in the Threads that are still running when an execution
+     * is abandoned, to unwind them.  It's an Error so the code under
+     * test doesn't catch it along with its Exceptions.
+     */
+    private static class Abandoned extends Error {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Value of mTurn when the explorer, rather than a Thread, is
+     * running.
+     */
+    private static final int EXPLORER = -1;
+
+    /**
+     * Largest number of steps an execution may take.
+     */
+    private static final int MAX_STEPS = 100000;
+
+    /**
+     * How long to wait for a Thread to reach its next schedule point
+     * before deciding it has blocked outside of one.
+     */
+    private static final long STEP_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The Worker run by the calling Thread, if it's being explored.
+     */
+    private static final ThreadLocal<Worker> sCurrentWorker =
+        new ThreadLocal<Worker>();
+
+    /**
+     * Maximum number of preemptions in the schedules explored.
+     */
+    private final int mMaxPreemptions;
+
+    /**
+     * Maximum number of executions to explore.
+     */
+    private final int mMaxExecutions;
+
+    /**
+     * Guards the fields below, which hand control back and forth
+     * between the explorer and the Workers of the current execution.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Index of the Worker that may run, or EXPLORER.
+     */
+    private int mTurn = EXPLORER;
+
+    /**
+     * True if the current execution is being abandoned.
+     */
+    private boolean mAbandoning = false;
+
+    /**
+     * @class Worker
+     *
+     * @brief Runs one Thread of a Scenario and keeps track of where
+     *        it stopped.
+     */
+    private class Worker implements Runnable {
+        final int mIndex;
+        final String mName;
+        final Runnable mBody;
+
+        /**
+         * The following fields are guarded by mLock.  mWaiting is set
+         * when the Worker stops at a wait point and cleared when
+         * another Worker makes progress.
+         */
+        String mPoint = "start";
+        boolean mWaiting = false;
+        boolean mDone = false;
+        Throwable mFailure = null;
+
+        Worker(int index, String name, Runnable body) {
+            mIndex = index;
+            mName = name;
+            mBody = body;
+        }
+
+        public void run() {
+            sCurrentWorker.set(this);
+            try {
+                awaitTurn();
+                mBody.run();
+            } catch (Abandoned e) {
+                // The execution is over.
+            } catch (Throwable t) {
+                synchronized (mLock) {
+                    mFailure = t;
+                }
+            } finally {
+                synchronized (mLock) {
+                    mDone = true;
+                    mTurn = EXPLORER;
+                    mLock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Hand control back to the explorer at @a point and wait to
+         * be picked again.
+         */
+        void pause(String point, boolean waiting) {
+            synchronized (mLock) {
+                mPoint = point;
+                mWaiting = waiting;
+                mTurn = EXPLORER;
+                mLock.notifyAll();
+                awaitTurn();
+            }
+        }
+
+        /**
+         * Returns true if this Worker can be picked, i.e., it hasn't
+         * finished and isn't waiting for another Worker to make
+         * progress.  Must be called with mLock held.
+         */
+        boolean enabled() {
+            return !mDone && !mWaiting;
+        }
+
+        /**
+         * Wait until this Worker is picked to run.
+         */
+        void awaitTurn() {
+            synchronized (mLock) {
+                boolean interrupted = false;
+                while (mTurn != mIndex)
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+                if (mAbandoning)
+                    throw new Abandoned();
+            }
+        }
+    }
+
+    /**
+     * @class Decision
+     *
+     * @brief What the explorer could pick at a schedule point and
+     *        what it picked.
+     */
+    private static class Decision {
+        /**
+         * Index of the Worker that ran last, or -1.
+         */
+        final int mCurrent;
+
+        /**
+         * True if the Worker that ran last could have continued, so
+         * picking another one is a preemption.
+         */
+        final boolean mCurrentRunnable;
+
+        /**
+         * Indices of the Workers that could be picked.
+         */
+        final int[] mEnabled;
+
+        /**
+         * Index of the Worker that was picked.
+         */
+        final int mChoice;
+
+        Decision(int current, boolean currentRunnable, int[] enabled, int choice) {
+            mCurrent = current;
+            mCurrentRunnable = currentRunnable;
+            mEnabled = enabled;
+            mChoice = choice;
+        }
+
+        /**
+         * Returns the number of preemptions (0 or 1) made by picking
+         * @a choice.
+         */
+        int cost(int choice) {
+            return mCurrentRunnable && choice != mCurrent ? 1 : 0;
+        }
+    }
+
+    /**
+     * @class Execution
+     *
+     * @brief The Decisions and outcome of one execution.
+     */
+    private static class Execution {
+        final List<Decision> mDecisions = new ArrayList<Decision>();
+        final List<String> mTrace = new ArrayList<String>();
+        String mFailure;
+
+        int[] schedule() {
+            int[] schedule = new int[mDecisions.size()];
+            for (int i = 0; i < schedule.length; ++i)
+                schedule[i] = mDecisions.get(i).mChoice;
+            return schedule;
+        }
+
+        int preemptions() {
+            int preemptions = 0;
+            for (Decision d : mDecisions)
+                preemptions += d.cost(d.mChoice);
+            return preemptions;
+        }
+    }
+
+    /**
+     * Constructor explores schedules with up to @a maxPreemptions
+     * preemptions, giving up after @a maxExecutions executions.
+     */
+    public InterleavingExplorer(int maxPreemptions, int maxExecutions) {
+        mMaxPreemptions = maxPreemptions;
+        mMaxExecutions = maxExecutions;
+    }
+
+    /**
+     * Schedule point at which the calling Thread may be preempted,
+     * described by @a point in the trace.  Does nothing unless the
+     * calling Thread is being explored.
+     */
+    public static void schedulePoint(String point) {
+        Worker worker = sCurrentWorker.get();
+        if (worker != null)
+            worker.pause(point, false);
+    }
+
+    /**
+     * Schedule point at which the calling Thread can't make progress
+     * until another Thread does (e.g., it's spinning until a queue
+     * isn't empty), so the explorer switches to another Thread
+     * without counting a preemption.  Does nothing unless the calling
+     * Thread is being explored.
+     */
+    public static void waitPoint(String point) {
+        Worker worker = sCurrentWorker.get();
+        if (worker != null)
+            worker.pause(point, true);
+    }
+
+    /**
+     * Explore the interleavings of @a scenario's Threads until one
+     * fails.
+     *
+     * @return The minimal failing schedule, or a Result that didn't
+     *         fail if none was found within the bounds.
+     */
+    public Result explore(Scenario scenario) {
+        int executions = 0;
+        Execution last = null;
+
+        for (int bound = 0; bound <= mMaxPreemptions; ++bound) {
+            LinkedList<int[]> prefixes = new LinkedList<int[]>();
+            prefixes.push(new int[0]);
+
+            while (!prefixes.isEmpty()) {
+                if (executions == mMaxExecutions)
+                    return result(last, executions);
+
+                int[] prefix = prefixes.pop();
+                last = execute(scenario, prefix);
+                ++executions;
+                if (last.mFailure != null)
+                    return result(last, executions);
+
+                // Branch at each Decision after the prefix to every
+                // other Worker that keeps within the bound.  Later
+                // Decisions are pushed last so they're explored first.
+                int[] schedule = last.schedule();
+                int preemptions = 0;
+                for (int i = 0; i < schedule.length; ++i) {
+                    Decision d = last.mDecisions.get(i);
+                    if (i >= prefix.length)
+                        for (int choice : d.mEnabled)
+                            if (choice != d.mChoice
+                                && preemptions + d.cost(choice) <= bound) {
+                                int[] branch = new int[i + 1];
+                                System.arraycopy(schedule, 0, branch, 0, i);
+                                branch[i] = choice;
+                                prefixes.push(branch);
+                            }
+                    preemptions += d.cost(d.mChoice);
+                }
+            }
+        }
+        return result(last, executions);
+    }
+
+    /**
+     * Run @a scenario once, following @a schedule (e.g., the
+     * schedule of a failing Result) and then the default policy.
+     */
+    public Result run(Scenario scenario, int[] schedule) {
+        return result(execute(scenario, schedule), 1);
+    }
+
+    /**
+     * Returns the Result of @a execution after @a executions
+     * executions.
+     */
+    private static Result result(Execution execution, int executions) {
+        return new Result(execution.mFailure,
+                          execution.schedule(),
+                          execution.mTrace,
+                          execution.preemptions(),
+                          executions);
+    }
+
+    /**
+     * Returns the Worker the default policy picks: the current one if
+     * it can continue, otherwise the next enabled one after it.
+     */
+    private static int defaultChoice(Worker[] workers, int current) {
+        if (current >= 0 && workers[current].enabled())
+            return current;
+        for (int i = 0; i < workers.length; ++i) {
+            int next = (current + 1 + i) % workers.length;
+            if (workers[next].enabled())
+                return next;
+        }
+        return -1;
+    }
+
+    /**
+     * Run one execution of @a scenario that follows @a prefix and
+     * then the default policy.
+     */
+    private Execution execute(Scenario scenario, int[] prefix) {
+        Runnable[] bodies = scenario.setUp();
+        String[] names = scenario.threadNames();
+        Worker[] workers = new Worker[bodies.length];
+        Thread[] threads = new Thread[bodies.length];
+        Execution execution = new Execution();
+
+        synchronized (mLock) {
+            mTurn = EXPLORER;
+            mAbandoning = false;
+        }
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = new Worker(i, names[i], bodies[i]);
+            threads[i] = new Thread(workers[i], names[i]);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        synchronized (mLock) {
+            int current = -1;
+
+            for (int step = 0; execution.mFailure == null; ++step) {
+                int[] enabled = enabled(workers);
+                if (enabled.length == 0) {
+                    // Either every Worker finished or the rest are
+                    // all waiting for each other.
+                    StringBuilder waiting = new StringBuilder();
+                    for (Worker worker : workers)
+                        if (!worker.mDone)
+                            waiting.append(", ")
+                                .append(worker.mName)
+                                .append(" at ")
+                                .append(worker.mPoint);
+                    if (waiting.length() > 0)
+                        execution.mFailure = "deadlock: every Thread is waiting" + waiting;
+                    break;
+                } else if (step == MAX_STEPS) {
+                    execution.mFailure = "no progress after " + MAX_STEPS + " steps";
+                    break;
+                }
+
+                int choice = step < prefix.length && workers[prefix[step]].enabled()
+                    ? prefix[step]
+                    : defaultChoice(workers, current);
+                boolean currentRunnable = current >= 0 && workers[current].enabled();
+                execution.mDecisions.add(new Decision(current,
+                                                      currentRunnable,
+                                                      enabled,
+                                                      choice));
+
+                Worker worker = workers[choice];
+                if (!runStep(worker)) {
+                    execution.mFailure = worker.mName
+                        + " blocked outside a schedule point at "
+                        + worker.mPoint;
+                    break;
+                }
+                execution.mTrace.add(worker.mName + " -> "
+                                     + (worker.mDone ? "finished" : worker.mPoint));
+
+                if (worker.mFailure != null)
+                    execution.mFailure = worker.mName + " threw " + worker.mFailure;
+                // Progress by this Worker may be what the waiting
+                // Workers are waiting for.
+                if (!worker.mWaiting || worker.mDone)
+                    for (Worker other : workers)
+                        if (other != worker)
+                            other.mWaiting = false;
+                current = choice;
+            }
+
+            abandon(workers);
+        }
+
+        for (Thread thread : threads)
+            try {
+                thread.join(STEP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+        if (execution.mFailure == null)
+            execution.mFailure = scenario.check();
+        return execution;
+    }
+
+    /**
+     * Returns the indices of the Workers that can be picked.
+     */
+    private static int[] enabled(Worker[] workers) {
+        int count = 0;
+        for (Worker worker : workers)
+            if (worker.enabled())
+                count++;
+
+        int[] enabled = new int[count];
+        count = 0;
+        for (Worker worker : workers)
+            if (worker.enabled())
+                enabled[count++] = worker.mIndex;
+        return enabled;
+    }
+
+    /**
+     * Let @a worker run until its next schedule point or until it
+     * finishes.  Must be called with mLock held.
+     *
+     * @return False if it didn't get there in time.
+     */
+    private boolean runStep(Worker worker) {
+        mTurn = worker.mIndex;
+        mLock.notifyAll();
+
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(STEP_TIMEOUT_MILLIS);
+        while (mTurn != EXPLORER) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            try {
+                TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unwind the Workers that haven't finished.  Must be called with
+     * mLock held.
+     */
+    private void abandon(Worker[] workers) {
+        mAbandoning = true;
+        for (Worker worker : workers)
+            if (!worker.mDone && mTurn == EXPLORER)
+                runStep(worker);
+    }
+}
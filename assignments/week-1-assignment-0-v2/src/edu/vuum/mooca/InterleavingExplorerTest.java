@@ -0,0 +1,175 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.junit.Test;
+
+import edu.vuum.mooca.InterleavingExplorer.Result;
+import edu.vuum.mooca.InterleavingExplorer.Scenario;
+import edu.vuum.mooca.SynchronizedQueue.QueueAdapter;
+
+/**
+ * @class InterleavingExplorerTest
+ *
+ * @brief This class tests that the InterleavingExplorer finds the
+ *        races in a BuggyBlockingQueue deterministically, that the
+ *        failing schedules it reports are minimal and replay exactly,
+ *        and that it doesn't report races in a properly synchronized
+ *        queue.
+ */
+public class InterleavingExplorerTest {
+    /**
+     * Number of msgs sent in each execution.
+     */
+    static final int MSGS = 3;
+
+    /**
+     * Makes a BuggyBlockingQueue whose ArrayList has schedule points.
+     */
+    static BlockingQueue<Integer> makeBuggyQueue() {
+        return new BuggyBlockingQueue<Integer>(new InstrumentedArrayList<Integer>(MSGS));
+    }
+
+    /**
+     * @class SendScenario
+     *
+     * @brief A producer that puts MSGS msgs in a queue and a consumer
+     *        that waits until the queue isn't empty before each take,
+     *        so only a race in the queue itself can make the consumer
+     *        receive the wrong msgs.
+     */
+    static abstract class SendScenario implements Scenario {
+        BlockingQueue<Integer> mQueue;
+        final List<Integer> mReceived = new ArrayList<Integer>();
+
+        /**
+         * Factory method that makes the queue for each execution.
+         */
+        abstract BlockingQueue<Integer> makeQueue();
+
+        public Runnable[] setUp() {
+            mQueue = makeQueue();
+            mReceived.clear();
+
+            return new Runnable[] {
+                new Runnable() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < MSGS; ++i) {
+                                mQueue.put(i);
+                                InterleavingExplorer.schedulePoint("producer: put " + i);
+                            }
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < MSGS; ++i) {
+                                while (mQueue.size() == 0)
+                                    InterleavingExplorer.waitPoint("consumer: queue empty");
+                                mReceived.add(mQueue.take());
+                                InterleavingExplorer.schedulePoint("consumer: took " + i);
+                            }
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            };
+        }
+
+        public String[] threadNames() {
+            return new String[] { "producer", "consumer" };
+        }
+
+        public String check() {
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < MSGS; ++i)
+                expected.add(i);
+
+            if (!mReceived.equals(expected))
+                return "consumer received " + mReceived;
+            else if (mQueue.size() != 0)
+                return "queue size is " + mQueue.size() + " after all msgs were taken";
+            else
+                return null;
+        }
+    }
+
+    /**
+     * Tests that running the SynchronizedQueue producer and consumer
+     * runnables on a BuggyBlockingQueue fails without any
+     * preemptions, since the consumer can take from the empty queue,
+     * and that replaying the schedule fails the same way.
+     */
+    @Test
+    public void buggyQueueRunnablesTest() {
+        Scenario scenario = new SynchronizedQueueScenario(new SynchronizedQueueScenario.QueueFactory() {
+                public QueueAdapter<Integer> makeQueue() {
+                    return new QueueAdapter<Integer>(makeBuggyQueue());
+                }
+            }, MSGS);
+        InterleavingExplorer explorer = new InterleavingExplorer(2, 1000);
+
+        Result result = explorer.explore(scenario);
+        assertTrue(result.toString(), result.failed());
+        assertEquals(0, result.getPreemptions());
+        assertEquals(SynchronizedQueue.SynchronizedQueueResult.THREADS_THREW_EXCEPTION.getString(),
+                     result.getFailure().substring(0, result.getFailure().indexOf(" (")));
+
+        Result replay = explorer.run(scenario, result.getSchedule());
+        assertEquals(result.getFailure(), replay.getFailure());
+        assertEquals(result.getTrace(), replay.getTrace());
+    }
+
+    /**
+     * Tests that the race between the producer's add() and the
+     * consumer's remove(0) in a BuggyBlockingQueue is found with one
+     * preemption, and that the schedule replays exactly every time.
+     */
+    @Test
+    public void buggyQueueRaceTest() {
+        Scenario scenario = new SendScenario() {
+                BlockingQueue<Integer> makeQueue() {
+                    return makeBuggyQueue();
+                }
+            };
+        InterleavingExplorer explorer = new InterleavingExplorer(2, 1000);
+
+        Result result = explorer.explore(scenario);
+        assertTrue(result.toString(), result.failed());
+        assertEquals(result.toString(), 1, result.getPreemptions());
+
+        for (int i = 0; i < 10; ++i) {
+            Result replay = explorer.run(scenario, result.getSchedule());
+            assertEquals(result.getFailure(), replay.getFailure());
+            assertEquals(result.getTrace(), replay.getTrace());
+        }
+
+        assertEquals(result.toString(), explorer.explore(scenario).toString());
+    }
+
+    /**
+     * Tests that no failing schedule is found for an
+     * ArrayBlockingQueue, whose operations are atomic.
+     */
+    @Test
+    public void arrayBlockingQueueTest() {
+        Scenario scenario = new SendScenario() {
+                BlockingQueue<Integer> makeQueue() {
+                    return new ArrayBlockingQueue<Integer>(MSGS);
+                }
+            };
+
+        Result result = new InterleavingExplorer(2, 1000).explore(scenario);
+        assertFalse(result.toString(), result.failed());
+        assertTrue(result.getExecutions() > 1);
+    }
+}
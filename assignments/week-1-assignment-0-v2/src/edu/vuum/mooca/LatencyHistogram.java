@@ -0,0 +1,172 @@
+package edu.vuum.mooca;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @class LatencyHistogram
+ *
+ * @brief A fixed-size, log-linear histogram of non-negative long
+ *        values (typically latencies in nanoseconds) in the style of
+ *        HdrHistogram.  Values below 128 are recorded exactly and
+ *        larger values are recorded with a relative error below
+ *        1/64.  Recording is lock-free, so multiple Threads can call
+ *        record() concurrently while other Threads read percentiles.
+ */
+public class LatencyHistogram {
+    /**
+     * Number of bits of precision kept for each power-of-two range.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /**
+     * Number of sub-buckets in each power-of-two range.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets needed to cover every positive long.
+     */
+    private static final int BUCKET_COUNT =
+        (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + 2 * SUB_BUCKET_COUNT;
+
+    /**
+     * The count for each bucket.
+     */
+    private final AtomicLongArray mCounts =
+        new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Total number of values recorded.
+     */
+    private final AtomicLong mTotalCount = new AtomicLong();
+
+    /**
+     * Sum of the values recorded, which is used to compute the mean.
+     */
+    private final AtomicLong mTotalValue = new AtomicLong();
+
+    /**
+     * Largest value recorded.
+     */
+    private final AtomicLong mMaxValue = new AtomicLong();
+
+    /**
+     * Record @a value (negative values are recorded as 0).
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        mCounts.incrementAndGet(bucketIndex(value));
+        mTotalCount.incrementAndGet();
+        mTotalValue.addAndGet(value);
+
+        long max;
+        while (value > (max = mMaxValue.get())
+               && !mMaxValue.compareAndSet(max, value))
+            continue;
+    }
+
+    /**
+     * Add all the values recorded by @a other to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            long count = other.mCounts.get(i);
+            if (count != 0)
+                mCounts.addAndGet(i, count);
+        }
+        mTotalCount.addAndGet(other.mTotalCount.get());
+        mTotalValue.addAndGet(other.mTotalValue.get());
+
+        long value = other.mMaxValue.get();
+        long max;
+        while (value > (max = mMaxValue.get())
+               && !mMaxValue.compareAndSet(max, value))
+            continue;
+    }
+
+    /**
+     * Clear all recorded values.  Values recorded concurrently with
+     * a reset may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+            mCounts.set(i, 0);
+        mTotalCount.set(0);
+        mTotalValue.set(0);
+        mMaxValue.set(0);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getTotalCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * Returns the largest value recorded.
+     */
+    public long getMaxValue() {
+        return mMaxValue.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     */
+    public double getMean() {
+        long count = mTotalCount.get();
+        return count == 0 ? 0.0 : (double) mTotalValue.get() / count;
+    }
+
+    /**
+     * Returns the smallest value such that @a percentile percent of
+     * the recorded values are less than or equal to it (to within
+     * the precision of the histogram).
+     */
+    public long getValueAtPercentile(double percentile) {
+        // Sum the buckets rather than using mTotalCount so the
+        // result is consistent with the buckets we actually scan.
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+            total += mCounts.get(i);
+        if (total == 0)
+            return 0;
+
+        long target =
+            Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0)
+                                         / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += mCounts.get(i);
+            if (seen >= target)
+                return Math.min(highestValueInBucket(i), mMaxValue.get());
+        }
+        return mMaxValue.get();
+    }
+
+    /**
+     * Map @a value to the index of its bucket.
+     */
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value that maps to bucket @a index.
+     */
+    static long highestValueInBucket(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index - shift * SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
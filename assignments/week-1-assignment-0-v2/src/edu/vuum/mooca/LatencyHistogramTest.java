@@ -0,0 +1,60 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @class LatencyHistogramTest
+ *
+ * @brief This class tests that LatencyHistogram records values and
+ *        computes percentiles within its advertised precision.
+ */
+public class LatencyHistogramTest {
+    /**
+     * Small values should be recorded exactly.
+     */
+    @Test
+    public void smallValuesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100; ++i)
+            histogram.record(i);
+
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(50, histogram.getValueAtPercentile(50.0));
+        assertEquals(99, histogram.getValueAtPercentile(99.0));
+        assertEquals(100, histogram.getValueAtPercentile(100.0));
+        assertEquals(100, histogram.getMaxValue());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    /**
+     * Large values should be recorded with a relative error below
+     * 1/64.
+     */
+    @Test
+    public void largeValuesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 128; value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            histogram.reset();
+            histogram.record(value);
+            long recorded = histogram.getValueAtPercentile(50.0);
+            assertTrue(Math.abs(recorded - value) <= value / 64);
+        }
+    }
+
+    /**
+     * Adding one histogram to another should combine their counts.
+     */
+    @Test
+    public void addTest() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(1000000);
+
+        first.add(second);
+        assertEquals(2, first.getTotalCount());
+        assertEquals(10, first.getValueAtPercentile(50.0));
+        assertEquals(1000000, first.getMaxValue());
+    }
+}
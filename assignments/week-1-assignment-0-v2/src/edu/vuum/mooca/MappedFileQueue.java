@@ -0,0 +1,394 @@
+package edu.vuum.mooca;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class MappedFileQueue
+ *
+ * @brief Defines a bounded single-producer/single-consumer queue of
+ *        variable-length records that lives in a memory-mapped file,
+ *        so the producer and consumer can be in different processes
+ *        and queued records survive either of them restarting.  Each
+ *        record is an int length prefix followed by its bytes, padded
+ *        to an 8-byte boundary, in a circular data region.  The head
+ *        (next read) and tail (next write) cursors are stored in the
+ *        file's header on separate cache lines.  The producer writes
+ *        a record before it publishes the new tail, and the consumer
+ *        is handed a read-only view of the record in the mapped file
+ *        (i.e., the record isn't copied) and only publishes the new
+ *        head once it's done with the record.  A consumer that
+ *        restarts therefore resumes with the first record it hadn't
+ *        finished with.  At most one producer and one consumer may
+ *        use a file at a time.
+ */
+public class MappedFileQueue {
+    /**
+     * Identifies a file that holds a MappedFileQueue.
+     */
+    private static final long MAGIC = 0x4d6f6f436151756cL;
+
+    /**
+     * Offsets of the header fields.  The tail and head each get a
+     * cache line of their own so the producer and consumer don't
+     * false-share.
+     */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int TAIL_OFFSET = 64;
+    private static final int PUT_COUNT_OFFSET = TAIL_OFFSET + 8;
+    private static final int HEAD_OFFSET = 128;
+    private static final int TAKE_COUNT_OFFSET = HEAD_OFFSET + 8;
+    private static final int DATA_OFFSET = 192;
+
+    /**
+     * Size of a record's length prefix.
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * Records start on multiples of this many bytes.
+     */
+    private static final int ALIGNMENT = 8;
+
+    /**
+     * Length prefix of the filler that takes up the rest of the data
+     * region when a record doesn't fit before its end.
+     */
+    private static final int PADDING = -1;
+
+    /**
+     * The mapped file.
+     */
+    private final RandomAccessFile mFile;
+
+    /**
+     * The whole mapped file, including the header.
+     */
+    private final MappedByteBuffer mBuffer;
+
+    /**
+     * Size of the circular data region in bytes.
+     */
+    private final int mCapacity;
+
+    /**
+     * Position (relative to the data region) of the record most
+     * recently returned by poll() but not yet released, or -1.
+     */
+    private long mPendingHead = -1;
+
+    /**
+     * Written and then read to make a full memory fence (see
+     * fence()).
+     */
+    private volatile int mFence;
+
+    /**
+     * Constructor maps @a file, creating it with a data region of @a
+     * capacity bytes if it doesn't exist yet, or else reopening the
+     * queue it already holds (in which case @a capacity must match).
+     */
+    public MappedFileQueue(File file, int capacity) throws IOException {
+        if (capacity < 4 * ALIGNMENT || capacity % ALIGNMENT != 0)
+            throw new IllegalArgumentException("capacity must be a multiple of "
+                                               + ALIGNMENT + " and at least "
+                                               + 4 * ALIGNMENT);
+
+        boolean existed = file.exists() && file.length() > 0;
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                             0,
+                                             DATA_OFFSET + capacity);
+            // Both processes run on the same machine.
+            mBuffer.order(ByteOrder.nativeOrder());
+
+            if (!existed) {
+                mBuffer.putInt(CAPACITY_OFFSET, capacity);
+                fence();
+                mBuffer.putLong(MAGIC_OFFSET, MAGIC);
+            } else if (mBuffer.getLong(MAGIC_OFFSET) != MAGIC)
+                throw new IOException(file + " doesn't hold a MappedFileQueue");
+            else if (mBuffer.getInt(CAPACITY_OFFSET) != capacity)
+                throw new IOException(file + " has a capacity of "
+                                      + mBuffer.getInt(CAPACITY_OFFSET)
+                                      + " bytes, not " + capacity);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Java 6 has no way to order plain writes to (or reads from) a
+     * MappedByteBuffer, so the record writes are ordered before the
+     * cursor writes (and the cursor reads before the record reads)
+     * by writing and then reading a volatile field.  Doing both
+     * keeps accesses on either side from moving across it, and on
+     * HotSpot it makes a hardware fence, which also orders them for
+     * the other process.
+     */
+    private void fence() {
+        mFence = 0;
+        int ignored = mFence;
+    }
+
+    /**
+     * Returns the number of bytes a record of @a length bytes takes
+     * up, including its length prefix and padding.
+     */
+    private static int recordSize(int length) {
+        return (LENGTH_SIZE + length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Returns the offset in mBuffer of @a position in the data
+     * region.
+     */
+    private int offset(long position) {
+        return DATA_OFFSET + (int) (position % mCapacity);
+    }
+
+    /**
+     * Returns the maximum length of a record, which is limited to
+     * about half the data region so that a record always fits once
+     * the queue is empty, even if it has to start over at the
+     * beginning of the data region.
+     */
+    public int maxRecordLength() {
+        return (mCapacity / 2 & -ALIGNMENT) - LENGTH_SIZE;
+    }
+
+    /**
+     * Claims room for a record of @a length bytes.
+     *
+     * @return The offset in mBuffer at which to write the record's
+     *         bytes, or -1 if the queue is full.
+     */
+    private int claim(int length) {
+        if (length < 0 || length > maxRecordLength())
+            throw new IllegalArgumentException("record length = " + length);
+
+        long tail = mBuffer.getLong(TAIL_OFFSET);
+        long head = mBuffer.getLong(HEAD_OFFSET);
+        int size = recordSize(length);
+        int toEnd = mCapacity - (int) (tail % mCapacity);
+
+        // If the record doesn't fit before the end of the data region
+        // it starts over at the beginning, after some padding.
+        int needed = size <= toEnd ? size : toEnd + size;
+        if (tail + needed - head > mCapacity)
+            return -1;
+
+        if (size > toEnd) {
+            mBuffer.putInt(offset(tail), PADDING);
+            tail += toEnd;
+        }
+        mBuffer.putInt(offset(tail), length);
+        return offset(tail) + LENGTH_SIZE;
+    }
+
+    /**
+     * Publishes the record of @a length bytes that was just written
+     * by the producer after claim().
+     */
+    private void publish(int length) {
+        long tail = mBuffer.getLong(TAIL_OFFSET);
+        int size = recordSize(length);
+        int toEnd = mCapacity - (int) (tail % mCapacity);
+        if (size > toEnd)
+            tail += toEnd;
+
+        fence();
+        mBuffer.putLong(PUT_COUNT_OFFSET, mBuffer.getLong(PUT_COUNT_OFFSET) + 1);
+        mBuffer.putLong(TAIL_OFFSET, tail + size);
+    }
+
+    /**
+     * Insert the remaining bytes of @a record at the tail of the
+     * queue if there's room, returning false (rather than blocking)
+     * if the queue is full.  Must only be called by the producer.
+     */
+    public boolean offer(ByteBuffer record) {
+        int length = record.remaining();
+        int offset = claim(length);
+        if (offset < 0)
+            return false;
+
+        for (int i = 0; i < length; ++i)
+            mBuffer.put(offset + i, record.get(record.position() + i));
+        publish(length);
+        return true;
+    }
+
+    /**
+     * Insert @a value at the tail of the queue as a 4-byte record if
+     * there's room, returning false (rather than blocking) if the
+     * queue is full.  Must only be called by the producer.
+     */
+    public boolean offerInt(int value) {
+        int offset = claim(4);
+        if (offset < 0)
+            return false;
+
+        mBuffer.putInt(offset, value);
+        publish(4);
+        return true;
+    }
+
+    /**
+     * Insert the remaining bytes of @a record at the tail of the
+     * queue, waiting up to @a timeout for room to become available.
+     * Since the consumer may be in another process, waiting is done
+     * by polling.
+     */
+    public boolean offer(ByteBuffer record, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (int attempt = 0; !offer(record); ++attempt) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            RingBufferBlockingQueue.backoff(attempt, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Insert @a value at the tail of the queue as a 4-byte record,
+     * waiting up to @a timeout for room to become available.
+     */
+    public boolean offerInt(int value, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (int attempt = 0; !offerInt(value); ++attempt) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            RingBufferBlockingQueue.backoff(attempt, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a read-only view of the record at the head of the
+     * queue, or null (rather than blocking) if the queue is empty.
+     * The view refers directly to the mapped file and is only valid
+     * until the next call to poll() or release(), which releases the
+     * record's space to the producer.  Must only be called by the
+     * consumer.
+     */
+    public ByteBuffer poll() {
+        release();
+
+        long head = mBuffer.getLong(HEAD_OFFSET);
+        long tail = mBuffer.getLong(TAIL_OFFSET);
+        if (head == tail)
+            return null;
+        fence();
+
+        int length = mBuffer.getInt(offset(head));
+        if (length == PADDING) {
+            head += mCapacity - (int) (head % mCapacity);
+            length = mBuffer.getInt(offset(head));
+        }
+
+        ByteBuffer record = mBuffer.duplicate();
+        record.position(offset(head) + LENGTH_SIZE);
+        record.limit(offset(head) + LENGTH_SIZE + length);
+        mPendingHead = head + recordSize(length);
+
+        return record.slice().asReadOnlyBuffer().order(mBuffer.order());
+    }
+
+    /**
+     * Returns a read-only view of the record at the head of the
+     * queue (see poll()), waiting up to @a timeout for one to become
+     * available.
+     *
+     * @return The record, or null if the timeout elapsed first.
+     */
+    public ByteBuffer poll(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (int attempt = 0;; ++attempt) {
+            ByteBuffer record = poll();
+            if (record != null)
+                return record;
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            RingBufferBlockingQueue.backoff(attempt, remaining);
+        }
+    }
+
+    /**
+     * Releases the space of the record most recently returned by
+     * poll(), if any, to the producer.  Until then a consumer that
+     * restarts gets the record again.
+     */
+    public void release() {
+        if (mPendingHead < 0)
+            return;
+
+        fence();
+        mBuffer.putLong(TAKE_COUNT_OFFSET, mBuffer.getLong(TAKE_COUNT_OFFSET) + 1);
+        mBuffer.putLong(HEAD_OFFSET, mPendingHead);
+        mPendingHead = -1;
+    }
+
+    /**
+     * Returns the number of records in the queue, including one that
+     * has been polled but not yet released.
+     */
+    public int size() {
+        long takeCount = mBuffer.getLong(TAKE_COUNT_OFFSET);
+        long putCount = mBuffer.getLong(PUT_COUNT_OFFSET);
+        return (int) Math.max(0, putCount - takeCount);
+    }
+
+    /**
+     * Returns the size of the data region in bytes.
+     */
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Writes the queue's contents to the storage device, so it
+     * survives a crash of the machine rather than just a process.
+     */
+    public void force() {
+        mBuffer.force();
+    }
+
+    /**
+     * Closes the file.  The mapping itself remains valid until the
+     * MappedFileQueue is garbage collected.
+     */
+    public void close() throws IOException {
+        release();
+        mFile.close();
+    }
+}
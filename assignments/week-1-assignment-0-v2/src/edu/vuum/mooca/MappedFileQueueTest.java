@@ -0,0 +1,126 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @class MappedFileQueueTest
+ *
+ * @brief This class tests that MappedFileQueue keeps variable-length
+ *        records in FIFO order as its data region wraps around, and
+ *        that queued records survive reopening the file.
+ */
+public class MappedFileQueueTest {
+    /**
+     * The file that holds the queue.
+     */
+    File mFile;
+
+    /**
+     * Runs before each test.  Makes an empty file for the queue.
+     */
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("MappedFileQueueTest", ".queue");
+    }
+
+    /**
+     * Runs after each test.  Deletes the file.
+     */
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    /**
+     * Returns a record of @a length bytes whose bytes all equal @a
+     * value.
+     */
+    static ByteBuffer makeRecord(int length, int value) {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        while (record.hasRemaining())
+            record.put((byte) value);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Tests FIFO order of records of different lengths across many
+     * wrap-arounds of the data region.
+     */
+    @Test
+    public void wrapAroundTest() throws Exception {
+        MappedFileQueue queue = new MappedFileQueue(mFile, 256);
+
+        for (int i = 0; i < 1000; ++i) {
+            int length = i % (queue.maxRecordLength() + 1);
+            assertTrue(queue.offer(makeRecord(length, i)));
+
+            ByteBuffer record = queue.poll();
+            assertNotNull(record);
+            assertEquals(length, record.remaining());
+            while (record.hasRemaining())
+                assertEquals((byte) i, record.get());
+            queue.release();
+        }
+        assertEquals(0, queue.size());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        queue.close();
+    }
+
+    /**
+     * Tests that offers fail when the queue is full.
+     */
+    @Test
+    public void fullTest() throws Exception {
+        MappedFileQueue queue = new MappedFileQueue(mFile, 64);
+
+        // Each 4-byte record takes up 8 bytes.
+        for (int i = 0; i < 8; ++i)
+            assertTrue(queue.offerInt(i));
+        assertFalse(queue.offerInt(8));
+        assertFalse(queue.offerInt(8, 10, TimeUnit.MILLISECONDS));
+        assertEquals(8, queue.size());
+
+        assertEquals(0, queue.poll().getInt(0));
+        queue.release();
+        assertTrue(queue.offerInt(8));
+        queue.close();
+    }
+
+    /**
+     * Tests that released records stay taken and unreleased records
+     * are delivered again after the file is reopened.
+     */
+    @Test
+    public void reopenTest() throws Exception {
+        MappedFileQueue queue = new MappedFileQueue(mFile, 128);
+        for (int i = 0; i < 3; ++i)
+            assertTrue(queue.offerInt(i));
+
+        assertEquals(0, queue.poll().getInt(0));
+        queue.release();
+        // Simulate a consumer that dies before releasing this one.
+        assertEquals(1, queue.poll().getInt(0));
+        queue.force();
+
+        MappedFileQueue reopened = new MappedFileQueue(mFile, 128);
+        assertEquals(2, reopened.size());
+        assertEquals(1, reopened.poll().getInt(0));
+        assertEquals(2, reopened.poll().getInt(0));
+        reopened.close();
+
+        try {
+            new MappedFileQueue(mFile, 256);
+            fail("reopening with a different capacity didn't fail");
+        } catch (java.io.IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package edu.vuum.mooca;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class MultiThreadedSynchronizedQueue
+ *
+ * @brief This class plays the role of a "Concrete Class" in the
+ *        Template Method pattern that runs any number of producer
+ *        and consumer Threads against the queue under test, which
+ *        makes it possible to find the point at which each queue
+ *        implementation collapses under contention.  The Threads can
+ *        be created directly as platform or virtual Threads, or run
+ *        by a fixed-size ExecutorService, and can optionally be given
+ *        names that assign each of them to a CPU round-robin, which
+ *        makes it easy to pin them with OS tools (e.g., taskset) when
+ *        measuring.  The throughput of each Thread is available via
+ *        SynchronizedQueue.getThreadResults() after the test.
+ */
+public class MultiThreadedSynchronizedQueue extends SynchronizedQueue {
+    /**
+     * @class ExecutionMode
+     *
+     * @brief How the producers and consumers are run.
+     */
+    public enum ExecutionMode {
+        /**
+         * Each producer and consumer runs in a Thread of its own.
+         */
+        THREADS,
+
+        /**
+         * The producers and consumers are submitted to a fixed-size
+         * ExecutorService.
+         */
+        EXECUTOR,
+
+        /**
+         * Each producer and consumer runs in a virtual Thread of its
+         * own, which requires Java 21 or later.  This makes it
+         * practical to run thousands of producers that block in
+         * QueueAdapter.put().
+         */
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * Number of producer Threads.
+     */
+    private final int mNumProducers;
+
+    /**
+     * Number of consumer Threads.
+     */
+    private final int mNumConsumers;
+
+    /**
+     * How the producers and consumers are run.
+     */
+    private final ExecutionMode mExecutionMode;
+
+    /**
+     * If true each Thread name ends with the CPU it is assigned to.
+     */
+    private final boolean mAffinityNaming;
+
+    /**
+     * Makes the virtual Threads in VIRTUAL_THREADS mode.
+     */
+    private final ThreadFactory mVirtualThreadFactory;
+
+    /**
+     * The producer and consumer Threads in THREADS and
+     * VIRTUAL_THREADS modes.
+     */
+    private List<Thread> mProducers = null;
+    private List<Thread> mConsumers = null;
+
+    /**
+     * The ExecutorService and the Futures of the submitted producers
+     * and consumers in EXECUTOR mode.
+     */
+    private ExecutorService mExecutor = null;
+    private List<Future<?>> mFutures = null;
+
+    /**
+     * Constructor stores the number of producers and consumers and
+     * how to run them.
+     *
+     * @throws UnsupportedOperationException if @a executionMode is
+     *         VIRTUAL_THREADS and the JVM doesn't support them.
+     */
+    public MultiThreadedSynchronizedQueue(int numProducers,
+                                          int numConsumers,
+                                          ExecutionMode executionMode,
+                                          boolean affinityNaming) {
+        if (numProducers <= 0 || numConsumers <= 0)
+            throw new IllegalArgumentException("need at least one producer and consumer");
+
+        mNumProducers = numProducers;
+        mNumConsumers = numConsumers;
+        mExecutionMode = executionMode;
+        mAffinityNaming = affinityNaming;
+        mVirtualThreadFactory = executionMode == ExecutionMode.VIRTUAL_THREADS
+            ? VirtualThreads.newThreadFactory()
+            : null;
+    }
+
+    /**
+     * Returns the name of the @a index'th Thread with the given @a
+     * role, where @a slot numbers all the Threads (consumers first).
+     */
+    private String threadName(String role, int index, int slot) {
+        String name = role + "-" + index;
+        if (mAffinityNaming)
+            name += "-cpu" + (slot % Runtime.getRuntime().availableProcessors());
+        return name;
+    }
+
+    /**
+     * Returns a new (unstarted) Thread named @a name that will run @a
+     * runnable, which is a virtual Thread in VIRTUAL_THREADS mode and
+     * a platform Thread otherwise.
+     */
+    private Thread newThread(Runnable runnable, String name) {
+        Thread thread = mVirtualThreadFactory != null
+            ? mVirtualThreadFactory.newThread(runnable)
+            : new Thread(runnable);
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * @class RoleThreadFactory
+     *
+     * @brief Names the pool Threads in the order the consumers and
+     *        producers are submitted to the ExecutorService.
+     */
+    private class RoleThreadFactory implements ThreadFactory {
+        /**
+         * Number of Threads made so far.
+         */
+        private int mSlot = 0;
+
+        public synchronized Thread newThread(Runnable runnable) {
+            int slot = mSlot++;
+            if (slot < mNumConsumers)
+                return MultiThreadedSynchronizedQueue.this
+                    .newThread(runnable, threadName("consumer", slot, slot));
+            else
+                return MultiThreadedSynchronizedQueue.this
+                    .newThread(runnable,
+                               threadName("producer", slot - mNumConsumers, slot));
+        }
+    }
+
+    protected void createThreads() {
+        if (mExecutionMode == ExecutionMode.EXECUTOR) {
+            mExecutor =
+                Executors.newFixedThreadPool(mNumProducers + mNumConsumers,
+                                             new RoleThreadFactory());
+            mFutures = new ArrayList<Future<?>>();
+        } else {
+            mConsumers = new ArrayList<Thread>();
+            for (int i = 0; i < mNumConsumers; ++i)
+                mConsumers.add(newThread(mConsumerRunnable,
+                                         threadName("consumer", i, i)));
+
+            mProducers = new ArrayList<Thread>();
+            for (int i = 0; i < mNumProducers; ++i)
+                mProducers.add(newThread(mProducerRunnable,
+                                         threadName("producer", i, mNumConsumers + i)));
+        }
+    }
+
+    protected void startThreads() {
+        // Start the consumers first, which yields more interesting
+        // results.
+        if (mExecutionMode == ExecutionMode.EXECUTOR) {
+            for (int i = 0; i < mNumConsumers; ++i)
+                mFutures.add(mExecutor.submit(mConsumerRunnable));
+            for (int i = 0; i < mNumProducers; ++i)
+                mFutures.add(mExecutor.submit(mProducerRunnable));
+        } else {
+            for (Thread consumer : mConsumers)
+                consumer.start();
+            for (Thread producer : mProducers)
+                producer.start();
+        }
+    }
+
+    protected void interruptThreads() {
+        if (mExecutionMode == ExecutionMode.EXECUTOR)
+            for (Future<?> future : mFutures)
+                future.cancel(true);
+        else {
+            for (Thread producer : mProducers)
+                producer.interrupt();
+            for (Thread consumer : mConsumers)
+                consumer.interrupt();
+        }
+    }
+
+    protected void joinThreads() throws InterruptedException {
+        if (mExecutionMode == ExecutionMode.EXECUTOR) {
+            mExecutor.shutdown();
+            // Blocked Threads time out after TIMEOUT_SECONDS, so
+            // allow for that before giving up.
+            mExecutor.awaitTermination(2 * TIMEOUT_SECONDS,
+                                       TimeUnit.SECONDS);
+        } else {
+            for (Thread producer : mProducers)
+                producer.join();
+            for (Thread consumer : mConsumers)
+                consumer.join();
+        }
+    }
+
+    protected boolean threadsCreated() {
+        if (mExecutionMode == ExecutionMode.EXECUTOR)
+            return mExecutor != null;
+        else
+            return mProducers != null && mConsumers != null;
+    }
+
+    protected boolean threadsAlive() {
+        if (mExecutionMode == ExecutionMode.EXECUTOR)
+            return !mExecutor.isTerminated();
+
+        for (Thread producer : mProducers)
+            if (producer.isAlive())
+                return true;
+        for (Thread consumer : mConsumers)
+            if (consumer.isAlive())
+                return true;
+        return false;
+    }
+}
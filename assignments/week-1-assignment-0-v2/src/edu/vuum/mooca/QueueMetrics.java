@@ -0,0 +1,240 @@
+package edu.vuum.mooca;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class QueueMetrics
+ *
+ * @brief Keeps track of how full a queue gets and how long producers
+ *        and consumers wait on it, as recorded by a QueueAdapter.
+ *        The counts and times are kept in StripedCounters and the
+ *        wait times are also recorded in LatencyHistograms, so
+ *        recording is lock-free.  Only the depth (and its high-water
+ *        mark) is kept in a single AtomicLong, since it must be
+ *        exact at every put.  A consistent-enough Snapshot can be
+ *        taken at any time, including while the test is running.
+ */
+public class QueueMetrics {
+    /**
+     * Number of msgs in the queue, according to the puts and takes
+     * recorded so far.  Since a msg may be taken before its put is
+     * recorded (or vice versa), this can briefly be off by the number
+     * of producers (or consumers).
+     */
+    private final AtomicLong mDepth = new AtomicLong();
+
+    /**
+     * Largest value mDepth has had.
+     */
+    private final AtomicLong mHighWaterMark = new AtomicLong();
+
+    /**
+     * Number of msgs put and taken.
+     */
+    private final StripedCounter mPuts = new StripedCounter();
+    private final StripedCounter mTakes = new StripedCounter();
+
+    /**
+     * Total time producers spent blocked because the queue was full
+     * and consumers spent blocked because it was empty.
+     */
+    private final StripedCounter mPutBlockedNanos = new StripedCounter();
+    private final StripedCounter mTakeBlockedNanos = new StripedCounter();
+
+    /**
+     * Number of puts and takes that timed out.
+     */
+    private final StripedCounter mPutTimeouts = new StripedCounter();
+    private final StripedCounter mTakeTimeouts = new StripedCounter();
+
+    /**
+     * How long each put and take was blocked, in nanoseconds (0 if
+     * it didn't block).
+     */
+    private final LatencyHistogram mPutWaits = new LatencyHistogram();
+    private final LatencyHistogram mTakeWaits = new LatencyHistogram();
+
+    /**
+     * Record that @a msgs msgs were put after being blocked for @a
+     * blockedNanos.
+     */
+    void recordPut(int msgs, long blockedNanos) {
+        mPuts.add(msgs);
+        mPutBlockedNanos.add(blockedNanos);
+        mPutWaits.record(blockedNanos);
+
+        long depth = mDepth.addAndGet(msgs);
+        long max;
+        while (depth > (max = mHighWaterMark.get())
+               && !mHighWaterMark.compareAndSet(max, depth))
+            continue;
+    }
+
+    /**
+     * Record that @a msgs msgs were taken after being blocked for @a
+     * blockedNanos.
+     */
+    void recordTake(int msgs, long blockedNanos) {
+        mTakes.add(msgs);
+        mTakeBlockedNanos.add(blockedNanos);
+        mTakeWaits.record(blockedNanos);
+        mDepth.addAndGet(-msgs);
+    }
+
+    /**
+     * Record that a put timed out after being blocked for @a
+     * blockedNanos.
+     */
+    void recordPutTimeout(long blockedNanos) {
+        mPutTimeouts.increment();
+        mPutBlockedNanos.add(blockedNanos);
+    }
+
+    /**
+     * Record that a take timed out after being blocked for @a
+     * blockedNanos.
+     */
+    void recordTakeTimeout(long blockedNanos) {
+        mTakeTimeouts.increment();
+        mTakeBlockedNanos.add(blockedNanos);
+    }
+
+    /**
+     * Clear all the metrics.  Only call this when no Threads are
+     * using the queue.
+     */
+    public void reset() {
+        mDepth.set(0);
+        mHighWaterMark.set(0);
+        mPuts.reset();
+        mTakes.reset();
+        mPutBlockedNanos.reset();
+        mTakeBlockedNanos.reset();
+        mPutTimeouts.reset();
+        mTakeTimeouts.reset();
+        mPutWaits.reset();
+        mTakeWaits.reset();
+    }
+
+    /**
+     * Returns a Snapshot of the current metrics.  Taking a snapshot
+     * doesn't block the producers or consumers, so if they're running
+     * the individual values may be from slightly different moments.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * @class Snapshot
+     *
+     * @brief A copy of the QueueMetrics at some moment, which isn't
+     *        affected by later puts and takes.
+     */
+    public static class Snapshot {
+        private final long mDepth;
+        private final long mHighWaterMark;
+        private final long mPuts;
+        private final long mTakes;
+        private final long mPutBlockedNanos;
+        private final long mTakeBlockedNanos;
+        private final long mPutTimeouts;
+        private final long mTakeTimeouts;
+        private final LatencyHistogram mPutWaits = new LatencyHistogram();
+        private final LatencyHistogram mTakeWaits = new LatencyHistogram();
+
+        /**
+         * Constructor copies the current values of @a metrics.
+         */
+        Snapshot(QueueMetrics metrics) {
+            mDepth = metrics.mDepth.get();
+            mHighWaterMark = metrics.mHighWaterMark.get();
+            mPuts = metrics.mPuts.sum();
+            mTakes = metrics.mTakes.sum();
+            mPutBlockedNanos = metrics.mPutBlockedNanos.sum();
+            mTakeBlockedNanos = metrics.mTakeBlockedNanos.sum();
+            mPutTimeouts = metrics.mPutTimeouts.sum();
+            mTakeTimeouts = metrics.mTakeTimeouts.sum();
+            mPutWaits.add(metrics.mPutWaits);
+            mTakeWaits.add(metrics.mTakeWaits);
+        }
+
+        /**
+         * Returns the number of msgs in the queue.
+         */
+        public long getDepth() {
+            return mDepth;
+        }
+
+        /**
+         * Returns the largest number of msgs that have been in the
+         * queue.
+         */
+        public long getHighWaterMark() {
+            return mHighWaterMark;
+        }
+
+        public long getPuts() {
+            return mPuts;
+        }
+
+        public long getTakes() {
+            return mTakes;
+        }
+
+        /**
+         * Returns the total time producers were blocked because the
+         * queue was full.
+         */
+        public long getPutBlockedNanos() {
+            return mPutBlockedNanos;
+        }
+
+        /**
+         * Returns the total time consumers were blocked because the
+         * queue was empty.
+         */
+        public long getTakeBlockedNanos() {
+            return mTakeBlockedNanos;
+        }
+
+        public long getPutTimeouts() {
+            return mPutTimeouts;
+        }
+
+        public long getTakeTimeouts() {
+            return mTakeTimeouts;
+        }
+
+        /**
+         * Returns the distribution of how long each successful put
+         * was blocked, in nanoseconds.
+         */
+        public LatencyHistogram getPutWaits() {
+            return mPutWaits;
+        }
+
+        /**
+         * Returns the distribution of how long each successful take
+         * was blocked, in nanoseconds.
+         */
+        public LatencyHistogram getTakeWaits() {
+            return mTakeWaits;
+        }
+
+        public String toString() {
+            return String.format("depth %d (high %d), puts %d, takes %d, "
+                                 + "put blocked %.1f ms (p99 %.1f us, max %.1f us), "
+                                 + "take blocked %.1f ms (p99 %.1f us, max %.1f us), "
+                                 + "timeouts %d/%d",
+                                 mDepth, mHighWaterMark, mPuts, mTakes,
+                                 mPutBlockedNanos / 1e6,
+                                 mPutWaits.getValueAtPercentile(99) / 1e3,
+                                 mPutWaits.getMaxValue() / 1e3,
+                                 mTakeBlockedNanos / 1e6,
+                                 mTakeWaits.getValueAtPercentile(99) / 1e3,
+                                 mTakeWaits.getMaxValue() / 1e3,
+                                 mPutTimeouts, mTakeTimeouts);
+        }
+    }
+}
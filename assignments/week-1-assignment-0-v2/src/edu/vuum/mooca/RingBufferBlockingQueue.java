@@ -0,0 +1,477 @@
+package edu.vuum.mooca;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @class RingBufferBlockingQueue
+ *
+ * @brief Defines a bounded multi-producer/multi-consumer
+ *        implementation of the BlockingQueue interface that doesn't
+ *        use any locks.  Elements are stored in a power-of-two ring
+ *        buffer whose slots each carry a sequence number.  Producers
+ *        and consumers claim slots by CAS'ing the tail and head
+ *        cursors, respectively, and then use the slot's sequence
+ *        number to hand the element off to the other side.  Threads
+ *        that find the queue full (or empty) first spin, then yield,
+ *        and finally park for short periods until they can make
+ *        progress, so put() and take() never serialize on a lock.
+ *        Bulk inserts and drains claim a whole run of slots with a
+ *        single CAS.
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E>
+    implements BulkBlockingQueue<E> {
+    /**
+     * Number of longs between the two cursors in mCursors, which
+     * keeps the head and tail on different cache lines.
+     */
+    private static final int CURSOR_PAD = 16;
+
+    /**
+     * Indices of the head and tail cursors in mCursors.
+     */
+    private static final int HEAD = CURSOR_PAD;
+    private static final int TAIL = 2 * CURSOR_PAD;
+
+    /**
+     * Number of times a blocked Thread busy-spins before yielding.
+     */
+    private static final int SPIN_TRIES = 64;
+
+    /**
+     * Number of times a blocked Thread yields before parking.
+     */
+    private static final int YIELD_TRIES = SPIN_TRIES + 16;
+
+    /**
+     * Longest time a blocked Thread parks before it retries.
+     */
+    private static final long MAX_PARK_NANOS =
+        TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * The ring buffer that stores the elements.
+     */
+    private final Object[] mBuffer;
+
+    /**
+     * Per-slot sequence numbers.  A slot whose sequence equals the
+     * tail position is free for a producer, and a slot whose
+     * sequence is one past the head position holds an element for a
+     * consumer.
+     */
+    private final AtomicLongArray mSequences;
+
+    /**
+     * Holds the head (next take) and tail (next put) cursors, padded
+     * so producers and consumers don't false-share a cache line.
+     */
+    private final AtomicLongArray mCursors =
+        new AtomicLongArray(3 * CURSOR_PAD);
+
+    /**
+     * Used to map a cursor position to an index in mBuffer.
+     */
+    private final int mMask;
+
+    /**
+     * Constructor rounds @a capacity up to the next power of two and
+     * initializes the slot sequence numbers.
+     */
+    public RingBufferBlockingQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30))
+            throw new IllegalArgumentException("capacity = " + capacity);
+
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+
+        mBuffer = new Object[size];
+        mSequences = new AtomicLongArray(size);
+        mMask = size - 1;
+
+        for (int i = 0; i < size; ++i)
+            mSequences.set(i, i);
+    }
+
+    /**
+     * Returns the total number of slots in the ring buffer.
+     */
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * Insert @a e at the tail of the queue if there's room, returning
+     * false (rather than blocking) if the queue is full.
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+
+        for (;;) {
+            long tail = mCursors.get(TAIL);
+            int index = (int) tail & mMask;
+            long delta = mSequences.get(index) - tail;
+
+            if (delta == 0) {
+                if (mCursors.compareAndSet(TAIL, tail, tail + 1)) {
+                    mBuffer[index] = e;
+                    // Publish the element to the consumers.
+                    mSequences.lazySet(index, tail + 1);
+                    return true;
+                }
+            } else if (delta < 0)
+                // The slot still holds an element from the previous
+                // lap, so the queue is full.
+                return false;
+            // Otherwise another producer claimed this slot, so retry.
+        }
+    }
+
+    /**
+     * Remove an element from the head of the queue, returning null
+     * (rather than blocking) if the queue is empty.
+     */
+    public E poll() {
+        for (;;) {
+            long head = mCursors.get(HEAD);
+            int index = (int) head & mMask;
+            long delta = mSequences.get(index) - (head + 1);
+
+            if (delta == 0) {
+                if (mCursors.compareAndSet(HEAD, head, head + 1)) {
+                    @SuppressWarnings("unchecked")
+                    E e = (E) mBuffer[index];
+                    mBuffer[index] = null;
+                    // Hand the slot back to the producers for the
+                    // next lap around the ring.
+                    mSequences.lazySet(index, head + mMask + 1);
+                    return e;
+                }
+            } else if (delta < 0)
+                // The slot hasn't been published yet, so the queue
+                // is empty.
+                return null;
+            // Otherwise another consumer took this slot, so retry.
+        }
+    }
+
+    /**
+     * Insert @a e at the tail of the queue, waiting as long as
+     * necessary for space to become available.
+     */
+    public void put(E e) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        for (int attempt = 0; !offer(e); ++attempt)
+            backoff(attempt, MAX_PARK_NANOS);
+    }
+
+    /**
+     * Insert @a e at the tail of the queue, waiting up to @a timeout
+     * for space to become available.
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (int attempt = 0; !offer(e); ++attempt) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            backoff(attempt, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Insert the elements of @a c at the tail of the queue, waiting
+     * up to @a timeout for space to become available.  If the calling
+     * Thread is interrupted after some elements were inserted, its
+     * interrupt status is set and the partial count is returned.
+     *
+     * @return The number of elements inserted.
+     */
+    public int offerAll(Collection<? extends E> c,
+                        long timeout,
+                        TimeUnit unit) throws InterruptedException {
+        // Check for nulls up front, since we can't back out of a
+        // run of slots once it's been claimed.
+        for (E e : c)
+            if (e == null)
+                throw new NullPointerException();
+
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Iterator<? extends E> iterator = c.iterator();
+        int remaining = c.size();
+        int inserted = 0;
+
+        for (int attempt = 0; remaining > 0; ) {
+            int n = offerRun(iterator, remaining);
+            if (n > 0) {
+                inserted += n;
+                remaining -= n;
+                attempt = 0;
+            } else {
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                    break;
+                try {
+                    backoff(attempt++, left);
+                } catch (InterruptedException e) {
+                    if (inserted == 0)
+                        throw e;
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Claim a run of up to @a max free slots at the tail with a single
+     * CAS and fill them from @a iterator.
+     *
+     * @return The number of elements inserted, which is 0 if the
+     *         queue is full.
+     */
+    private int offerRun(Iterator<? extends E> iterator, int max) {
+        for (;;) {
+            long tail = mCursors.get(TAIL);
+            int n = 0;
+            while (n < max
+                   && n < mBuffer.length
+                   && mSequences.get((int) (tail + n) & mMask) == tail + n)
+                ++n;
+
+            if (n == 0) {
+                if (mSequences.get((int) tail & mMask) < tail)
+                    return 0;
+                // Another producer claimed the slot, so retry.
+                continue;
+            }
+
+            if (mCursors.compareAndSet(TAIL, tail, tail + n)) {
+                for (int i = 0; i < n; ++i) {
+                    int index = (int) (tail + i) & mMask;
+                    mBuffer[index] = iterator.next();
+                    mSequences.lazySet(index, tail + i + 1);
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Remove an element from the head of the queue, waiting as long
+     * as necessary for one to become available.
+     */
+    public E take() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        E e;
+        for (int attempt = 0; (e = poll()) == null; ++attempt)
+            backoff(attempt, MAX_PARK_NANOS);
+        return e;
+    }
+
+    /**
+     * Remove an element from the head of the queue, waiting up to @a
+     * timeout for one to become available.
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        E e;
+        for (int attempt = 0; (e = poll()) == null; ++attempt) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            backoff(attempt, remaining);
+        }
+        return e;
+    }
+
+    /**
+     * Implements the spin/yield/park wait strategy used by Threads
+     * that can't make progress, throwing InterruptedException if the
+     * calling Thread is interrupted while it waits.  It's also used
+     * by MappedFileQueue.
+     */
+    static void backoff(int attempt, long maxParkNanos)
+        throws InterruptedException {
+        if (attempt < SPIN_TRIES)
+            ; // Busy-spin, since the other side is probably running.
+        else if (attempt < YIELD_TRIES)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(Math.min(maxParkNanos, MAX_PARK_NANOS));
+
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    /**
+     * Returns the element at the head of the queue without removing
+     * it, or null if the queue is empty.
+     */
+    public E peek() {
+        for (;;) {
+            long head = mCursors.get(HEAD);
+            int index = (int) head & mMask;
+
+            if (mSequences.get(index) != head + 1)
+                return null;
+
+            @SuppressWarnings("unchecked")
+            E e = (E) mBuffer[index];
+
+            // Make sure no consumer took the element while we were
+            // reading it.
+            if (e != null && mCursors.get(HEAD) == head)
+                return e;
+        }
+    }
+
+    /**
+     * Returns the number of elements in this queue.
+     */
+    public int size() {
+        for (;;) {
+            long head = mCursors.get(HEAD);
+            long tail = mCursors.get(TAIL);
+
+            // Retry until we get a consistent view of both cursors.
+            if (mCursors.get(HEAD) == head) {
+                long size = tail - head;
+                if (size <= 0)
+                    return 0;
+                return (int) Math.min(size, mBuffer.length);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of additional elements this queue can accept
+     * without blocking.
+     */
+    public int remainingCapacity() {
+        return mBuffer.length - size();
+    }
+
+    /**
+     * Removes all available elements from this queue and adds them to
+     * @a c.
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most @a maxElements available elements from this
+     * queue and adds them to @a c.
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+
+        int drained = 0;
+        for (int n; drained < maxElements
+                 && (n = drainRun(c, maxElements - drained)) > 0; )
+            drained += n;
+        return drained;
+    }
+
+    /**
+     * Claim a run of up to @a max published slots at the head with a
+     * single CAS and move their elements to @a c.
+     *
+     * @return The number of elements removed, which is 0 if the
+     *         queue is empty.
+     */
+    private int drainRun(Collection<? super E> c, int max) {
+        for (;;) {
+            long head = mCursors.get(HEAD);
+            int n = 0;
+            while (n < max
+                   && n < mBuffer.length
+                   && mSequences.get((int) (head + n) & mMask) == head + n + 1)
+                ++n;
+
+            if (n == 0) {
+                if (mSequences.get((int) head & mMask) < head + 1)
+                    return 0;
+                // Another consumer took the slot, so retry.
+                continue;
+            }
+
+            if (mCursors.compareAndSet(HEAD, head, head + n)) {
+                for (int i = 0; i < n; ++i) {
+                    int index = (int) (head + i) & mMask;
+                    @SuppressWarnings("unchecked")
+                    E e = (E) mBuffer[index];
+                    mBuffer[index] = null;
+                    mSequences.lazySet(index, head + i + mMask + 1);
+                    c.add(e);
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Returns a weakly consistent iterator over a snapshot of the
+     * elements in the queue.  The iterator doesn't support remove().
+     */
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<E>(size());
+        long head = mCursors.get(HEAD);
+        long tail = mCursors.get(TAIL);
+
+        for (long pos = head; pos < tail; ++pos) {
+            int index = (int) pos & mMask;
+            if (mSequences.get(index) != pos + 1)
+                break;
+
+            @SuppressWarnings("unchecked")
+            E e = (E) mBuffer[index];
+            if (e == null || mSequences.get(index) != pos + 1)
+                break;
+            snapshot.add(e);
+        }
+
+        final Iterator<E> iterator = snapshot.iterator();
+        return new Iterator<E>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+            public E next() {
+                return iterator.next();
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,445 @@
+package edu.vuum.mooca;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class SimpleBlockingQueue
+ *
+ * @brief Defines a correctly synchronized version of the
+ *        BuggyBlockingQueue, which serves as the reference "fixed"
+ *        queue.  Rather than an ArrayList, whose remove(0) shifts
+ *        every remaining element, the elements are kept in a
+ *        circular array whose head moves forward on each take, so
+ *        put() and take() cost O(1) no matter how many elements are
+ *        queued.  The array starts small and doubles (up to the
+ *        capacity) when it fills up.  Every method is synchronized on
+ *        the queue, and Threads that find it full (or empty) wait()
+ *        on it until a take (or put) calls notifyAll().
+ */
+public class SimpleBlockingQueue<E> extends AbstractQueue<E>
+    implements BulkBlockingQueue<E> {
+    /**
+     * Length of the circular array when the queue is created.
+     */
+    private static final int INITIAL_LENGTH = 16;
+
+    /**
+     * The circular array, which holds mCount elements starting at
+     * mHead and wrapping around at its end.
+     */
+    private Object[] mElements;
+
+    /**
+     * Index of the element at the head of the queue.
+     */
+    private int mHead = 0;
+
+    /**
+     * Number of elements in the queue.
+     */
+    private int mCount = 0;
+
+    /**
+     * Maximum number of elements in the queue.
+     */
+    private final int mCapacity;
+
+    /**
+     * Number of times the queue has been modified, which lets its
+     * iterators detect concurrent modification.
+     */
+    private int mModCount = 0;
+
+    /**
+     * Constructor makes a queue with no practical bound on its size.
+     */
+    public SimpleBlockingQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor makes a queue that holds at most @a capacity
+     * elements.
+     */
+    public SimpleBlockingQueue(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity = " + capacity);
+        mCapacity = capacity;
+        mElements = new Object[Math.min(capacity, INITIAL_LENGTH)];
+    }
+
+    /**
+     * Returns the maximum number of elements in the queue.
+     */
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Returns the index in mElements of the element @a i places from
+     * the head.
+     */
+    private int index(int i) {
+        int index = mHead + i;
+        return index < mElements.length ? index : index - mElements.length;
+    }
+
+    /**
+     * Insert @a e at the tail, doubling the circular array if it's
+     * full.  Must be called with the queue's monitor held and with
+     * mCount < mCapacity.
+     */
+    private void enqueue(E e) {
+        if (mCount == mElements.length) {
+            Object[] elements =
+                new Object[(int) Math.min(mCapacity, 2L * mElements.length)];
+            for (int i = 0; i < mCount; ++i)
+                elements[i] = mElements[index(i)];
+            mElements = elements;
+            mHead = 0;
+        }
+
+        mElements[index(mCount)] = e;
+        ++mModCount;
+        // Only consumers wait for a queue that was empty.
+        if (mCount++ == 0)
+            notifyAll();
+    }
+
+    /**
+     * Remove the element at the head.  Must be called with the
+     * queue's monitor held and with mCount > 0.
+     */
+    private E dequeue() {
+        @SuppressWarnings("unchecked")
+        E e = (E) mElements[mHead];
+        mElements[mHead] = null;
+        mHead = index(1);
+        ++mModCount;
+        // Only producers wait for a queue that was full.
+        if (mCount-- == mCapacity)
+            notifyAll();
+        return e;
+    }
+
+    /**
+     * Wait up to @a nanos for the queue's monitor to be notified.
+     * Must be called with the monitor held.
+     *
+     * @return The time left to wait.
+     */
+    private long awaitNanos(long nanos) throws InterruptedException {
+        long start = System.nanoTime();
+        TimeUnit.NANOSECONDS.timedWait(this, nanos);
+        return nanos - (System.nanoTime() - start);
+    }
+
+    /**
+     * Insert @a e at the tail of the queue if there's room, returning
+     * false (rather than blocking) if the queue is full.
+     */
+    public synchronized boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (mCount == mCapacity)
+            return false;
+        enqueue(e);
+        return true;
+    }
+
+    /**
+     * Insert @a e at the tail of the queue, waiting as long as
+     * necessary for space to become available.
+     */
+    public synchronized void put(E e) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        while (mCount == mCapacity)
+            wait();
+        enqueue(e);
+    }
+
+    /**
+     * Insert @a e at the tail of the queue, waiting up to @a timeout
+     * for space to become available.
+     */
+    public synchronized boolean offer(E e, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+
+        long nanos = unit.toNanos(timeout);
+        while (mCount == mCapacity) {
+            if (nanos <= 0)
+                return false;
+            nanos = awaitNanos(nanos);
+        }
+        enqueue(e);
+        return true;
+    }
+
+    /**
+     * Insert the elements of @a c at the tail of the queue, waiting
+     * up to @a timeout for space to become available.  If the calling
+     * Thread is interrupted after some elements were inserted, its
+     * interrupt status is set and the partial count is returned.
+     *
+     * @return The number of elements inserted.
+     */
+    public synchronized int offerAll(Collection<? extends E> c,
+                                     long timeout,
+                                     TimeUnit unit) throws InterruptedException {
+        for (E e : c)
+            if (e == null)
+                throw new NullPointerException();
+
+        long nanos = unit.toNanos(timeout);
+        int inserted = 0;
+
+        for (E e : c) {
+            while (mCount == mCapacity) {
+                if (nanos <= 0)
+                    return inserted;
+                try {
+                    nanos = awaitNanos(nanos);
+                } catch (InterruptedException ex) {
+                    if (inserted == 0)
+                        throw ex;
+                    Thread.currentThread().interrupt();
+                    return inserted;
+                }
+            }
+            enqueue(e);
+            ++inserted;
+        }
+        return inserted;
+    }
+
+    /**
+     * Remove the element at the head of the queue, or return null
+     * (rather than blocking) if the queue is empty.
+     */
+    public synchronized E poll() {
+        return mCount == 0 ? null : dequeue();
+    }
+
+    /**
+     * Remove the element at the head of the queue, waiting as long
+     * as necessary for one to become available.
+     */
+    public synchronized E take() throws InterruptedException {
+        while (mCount == 0)
+            wait();
+        return dequeue();
+    }
+
+    /**
+     * Remove the element at the head of the queue, waiting up to @a
+     * timeout for one to become available.
+     *
+     * @return The element, or null if the timeout elapsed first.
+     */
+    public synchronized E poll(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        while (mCount == 0) {
+            if (nanos <= 0)
+                return null;
+            nanos = awaitNanos(nanos);
+        }
+        return dequeue();
+    }
+
+    /**
+     * Returns the element at the head of the queue without removing
+     * it, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized E peek() {
+        return mCount == 0 ? null : (E) mElements[mHead];
+    }
+
+    /**
+     * Returns the number of elements in this queue.
+     */
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of elements that can be put without
+     * blocking.
+     */
+    public synchronized int remainingCapacity() {
+        return mCapacity - mCount;
+    }
+
+    /**
+     * Removes all available elements from this queue and adds them to
+     * @a c.
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most @a maxElements available elements from this
+     * queue and adds them to @a c.
+     */
+    public synchronized int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+
+        int drained = 0;
+        while (drained < maxElements && mCount > 0) {
+            c.add(dequeue());
+            ++drained;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns true if the queue contains @a o.
+     */
+    public synchronized boolean contains(Object o) {
+        if (o != null)
+            for (int i = 0; i < mCount; ++i)
+                if (o.equals(mElements[index(i)]))
+                    return true;
+        return false;
+    }
+
+    /**
+     * Removes the first occurrence of @a o from the queue.
+     */
+    public synchronized boolean remove(Object o) {
+        if (o != null)
+            for (int i = 0; i < mCount; ++i)
+                if (o.equals(mElements[index(i)])) {
+                    removeAt(i);
+                    return true;
+                }
+        return false;
+    }
+
+    /**
+     * Remove the element @a i places from the head by shifting the
+     * elements before it towards the tail.  Must be called with the
+     * queue's monitor held.
+     */
+    private void removeAt(int i) {
+        for (; i > 0; --i)
+            mElements[index(i)] = mElements[index(i - 1)];
+        dequeue();
+    }
+
+    /**
+     * Removes all the elements from the queue.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mCount; ++i)
+            mElements[index(i)] = null;
+        mHead = 0;
+        mCount = 0;
+        ++mModCount;
+        notifyAll();
+    }
+
+    /**
+     * Returns an array of the elements in the queue, from head to
+     * tail.
+     */
+    public synchronized Object[] toArray() {
+        Object[] array = new Object[mCount];
+        for (int i = 0; i < mCount; ++i)
+            array[i] = mElements[index(i)];
+        return array;
+    }
+
+    /**
+     * Returns an array of the elements in the queue, from head to
+     * tail, whose runtime type is that of @a array.
+     */
+    public synchronized <T> T[] toArray(T[] array) {
+        return super.toArray(array);
+    }
+
+    /**
+     * Returns a fail-fast iterator over the elements in the queue,
+     * from head to tail.  Each call locks the queue, and a call made
+     * after the queue was modified other than through the iterator
+     * throws ConcurrentModificationException.
+     */
+    public Iterator<E> iterator() {
+        synchronized (this) {
+            return new Itr(mModCount);
+        }
+    }
+
+    /**
+     * @class Itr
+     *
+     * @brief Iterates over the queue by position from the head, which
+     *        is valid as long as the queue isn't modified behind its
+     *        back.
+     */
+    private class Itr implements Iterator<E> {
+        /**
+         * Position from the head of the next element to return.
+         */
+        private int mNext = 0;
+
+        /**
+         * Position from the head of the element last returned, or -1.
+         */
+        private int mLast = -1;
+
+        /**
+         * The queue's mModCount when it was last seen by this
+         * iterator.
+         */
+        private int mExpectedModCount;
+
+        Itr(int modCount) {
+            mExpectedModCount = modCount;
+        }
+
+        public boolean hasNext() {
+            synchronized (SimpleBlockingQueue.this) {
+                return mNext < mCount;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            synchronized (SimpleBlockingQueue.this) {
+                if (mModCount != mExpectedModCount)
+                    throw new ConcurrentModificationException();
+                if (mNext >= mCount)
+                    throw new NoSuchElementException();
+                mLast = mNext++;
+                return (E) mElements[index(mLast)];
+            }
+        }
+
+        public void remove() {
+            synchronized (SimpleBlockingQueue.this) {
+                if (mLast < 0)
+                    throw new IllegalStateException();
+                if (mModCount != mExpectedModCount)
+                    throw new ConcurrentModificationException();
+                removeAt(mLast);
+                mNext = mLast;
+                mLast = -1;
+                mExpectedModCount = mModCount;
+            }
+        }
+    }
+}
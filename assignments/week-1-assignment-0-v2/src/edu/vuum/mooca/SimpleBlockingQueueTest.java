@@ -0,0 +1,110 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @class SimpleBlockingQueueTest
+ *
+ * @brief This class tests that SimpleBlockingQueue keeps its
+ *        elements in FIFO order as its circular array wraps around
+ *        and grows, that it reports full and empty queues properly,
+ *        and that its iterator and drainTo() see the elements from
+ *        head to tail.
+ */
+public class SimpleBlockingQueueTest {
+    /**
+     * Tests FIFO order while the circular array wraps around and
+     * grows from its initial length.
+     */
+    @Test
+    public void fifoTest() throws Exception {
+        SimpleBlockingQueue<Integer> queue = new SimpleBlockingQueue<Integer>();
+        int next = 0;
+
+        for (int i = 0; i < 1000; ++i) {
+            queue.put(i);
+            // Take every other element so the backlog grows and the
+            // head keeps moving.
+            if (i % 2 == 1)
+                assertEquals(Integer.valueOf(next++), queue.take());
+        }
+        assertEquals(500, queue.size());
+
+        while (!queue.isEmpty())
+            assertEquals(Integer.valueOf(next++), queue.poll());
+        assertEquals(1000, next);
+    }
+
+    /**
+     * Tests that offers fail when the queue is full and polls return
+     * null when it's empty, with and without timeouts.
+     */
+    @Test
+    public void fullAndEmptyTest() throws Exception {
+        SimpleBlockingQueue<Integer> queue = new SimpleBlockingQueue<Integer>(2);
+
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2, 0, TimeUnit.SECONDS));
+        assertFalse(queue.offer(3));
+        assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(0, queue.offerAll(Arrays.asList(3, 4), 10, TimeUnit.MILLISECONDS));
+
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertEquals(Integer.valueOf(2), queue.poll(10, TimeUnit.MILLISECONDS));
+        assertNull(queue.poll());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        assertEquals(2, queue.offerAll(Arrays.asList(3, 4, 5), 10, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(3), queue.take());
+    }
+
+    /**
+     * Tests that the iterator visits the elements from head to tail
+     * after the array has wrapped around, that its remove() removes
+     * the right element, and that it fails fast after the queue is
+     * modified behind its back.
+     */
+    @Test
+    public void iteratorTest() throws Exception {
+        SimpleBlockingQueue<Integer> queue = new SimpleBlockingQueue<Integer>(4);
+        for (int i = 0; i < 6; ++i) {
+            queue.put(i);
+            if (queue.size() == 4)
+                queue.take();
+        }
+
+        List<Integer> seen = new ArrayList<Integer>();
+        for (Iterator<Integer> iterator = queue.iterator(); iterator.hasNext(); ) {
+            Integer e = iterator.next();
+            seen.add(e);
+            if (e == 4)
+                iterator.remove();
+        }
+        assertEquals(Arrays.asList(3, 4, 5), seen);
+        assertEquals(Arrays.asList(3, 5), Arrays.asList(queue.toArray()));
+
+        Iterator<Integer> iterator = queue.iterator();
+        iterator.next();
+        queue.put(6);
+        try {
+            iterator.next();
+            fail("iterator didn't detect the put()");
+        } catch (ConcurrentModificationException e) {
+            // Expected.
+        }
+
+        List<Integer> drained = new ArrayList<Integer>();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals(Arrays.asList(3, 5), drained);
+        assertEquals(Integer.valueOf(6), queue.peek());
+    }
+}
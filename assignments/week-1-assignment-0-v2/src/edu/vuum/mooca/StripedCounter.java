@@ -0,0 +1,110 @@
+package edu.vuum.mooca;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @class StripedCounter
+ *
+ * @brief A counter that can be updated by many Threads without
+ *        losing updates and without making them all contend for one
+ *        cache line.  Each Thread adds to one of several "cells"
+ *        (chosen by a per-Thread index) and the cells are summed when
+ *        the counter is read.  Cells are padded so that no two of
+ *        them share a cache line.
+ */
+public class StripedCounter {
+    /**
+     * Number of longs between adjacent cells, which is enough to
+     * keep them on different (pairs of) cache lines.
+     */
+    private static final int CELL_PAD = 16;
+
+    /**
+     * Source of the per-Thread indices.
+     */
+    private static final AtomicInteger sNextIndex = new AtomicInteger();
+
+    /**
+     * Index of the calling Thread, which is assigned round-robin the
+     * first time a Thread uses any StripedCounter.
+     */
+    private static final ThreadLocal<Integer> sThreadIndex =
+        new ThreadLocal<Integer>() {
+            protected Integer initialValue() {
+                return sNextIndex.getAndIncrement();
+            }
+        };
+
+    /**
+     * The cells, where cell i lives at index (i + 1) * CELL_PAD.
+     */
+    private final AtomicLongArray mCells;
+
+    /**
+     * Used to map a Thread index to a cell.
+     */
+    private final int mMask;
+
+    /**
+     * Constructor that makes a cell for each of twice the number of
+     * available processors.
+     */
+    public StripedCounter() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor that rounds @a cells up to the next power of two.
+     */
+    public StripedCounter(int cells) {
+        int size = 1;
+        while (size < cells)
+            size <<= 1;
+
+        mMask = size - 1;
+        mCells = new AtomicLongArray((size + 2) * CELL_PAD);
+    }
+
+    /**
+     * Add @a delta to the calling Thread's cell.
+     */
+    public void add(long delta) {
+        mCells.getAndAdd(cellOffset(), delta);
+    }
+
+    /**
+     * Add one to the calling Thread's cell.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Returns the sum of all the cells.  The result is exact if no
+     * Threads are updating the counter concurrently, otherwise it
+     * may or may not include their concurrent updates.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mMask; ++i)
+            sum += mCells.get((i + 1) * CELL_PAD);
+        return sum;
+    }
+
+    /**
+     * Reset all the cells to 0.  Only call this when no Threads are
+     * updating the counter.
+     */
+    public void reset() {
+        for (int i = 0; i <= mMask; ++i)
+            mCells.set((i + 1) * CELL_PAD, 0);
+    }
+
+    /**
+     * Returns the index in mCells of the calling Thread's cell.
+     */
+    private int cellOffset() {
+        return ((sThreadIndex.get() & mMask) + 1) * CELL_PAD;
+    }
+}
@@ -0,0 +1,60 @@
+package edu.vuum.mooca;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @class StripedCounterTest
+ *
+ * @brief This class tests that StripedCounter doesn't lose updates
+ *        when it's incremented concurrently by multiple Threads.
+ */
+public class StripedCounterTest {
+    /**
+     * Number of Threads that update the counter.
+     */
+    final static int mNumThreads = 8;
+
+    /**
+     * Number of times each Thread increments the counter.
+     */
+    final static int mMaxIterations = 100000;
+
+    /**
+     * Tests that concurrent increments are all counted.
+     */
+    @Test
+    public void concurrentIncrementTest() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+
+        Thread[] threads = new Thread[mNumThreads];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int j = 0; j < mMaxIterations; ++j)
+                            counter.increment();
+                    }
+                });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals((long) mNumThreads * mMaxIterations,
+                     counter.sum());
+
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    /**
+     * Tests that add() handles deltas other than one.
+     */
+    @Test
+    public void addTest() {
+        StripedCounter counter = new StripedCounter(1);
+        counter.add(10);
+        counter.add(-3);
+        assertEquals(7, counter.sum());
+    }
+}
@@ -1,4 +1,8 @@
 package edu.vuum.mooca;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.*;
 
 /**
@@ -12,13 +16,29 @@ import java.util.concurrent.*;
 public abstract class SynchronizedQueue {
     /**
      * Keep track of the number of times the producer test iterates.
+     * A StripedCounter is used so that multiple producers neither
+     * lose updates nor contend for the same cache line.
      */
-    static volatile int mProducerCounter = 0;
+    static final StripedCounter mProducerCounter = new StripedCounter();
 
     /**
      * Keep track of the number of times the consumer test iterates.
      */
-    static volatile int mConsumerCounter = 0;
+    static final StripedCounter mConsumerCounter = new StripedCounter();
+
+    /**
+     * Set to TIMEOUT_OCCURRED or FAILURE_OCCURRED if a producer
+     * fails, in which case checkResults() reports it in place of
+     * mProducerCounter.
+     */
+    static volatile int mProducerStatus = 0;
+
+    /**
+     * Set to TIMEOUT_OCCURRED or FAILURE_OCCURRED if a consumer
+     * fails, in which case checkResults() reports it in place of
+     * mConsumerCounter.
+     */
+    static volatile int mConsumerStatus = 0;
 
     /**
      * Maximum timeout.
@@ -85,11 +105,46 @@ public abstract class SynchronizedQueue {
          */
         private BlockingQueue<E> mQueue;
 
+        /**
+         * Records the occupancy and wait times of the queue, or null
+         * if they aren't being recorded.
+         */
+        private final QueueMetrics mMetrics;
+
         /**
          * Store the queue that we're adapting.
          */
         public QueueAdapter(BlockingQueue<E> queue) {
+            this(queue, null);
+        }
+
+        /**
+         * Store the queue that we're adapting and the QueueMetrics
+         * that put(), take(), putAll(), and takeBatch() record into.
+         * A put or take is only timed if it can't complete without
+         * blocking (a putAll() is always timed), so recording costs
+         * little when it doesn't block.
+         */
+        public QueueAdapter(BlockingQueue<E> queue, QueueMetrics metrics) {
             mQueue = queue;
+            mMetrics = metrics;
+        }
+
+        /**
+         * Constructor for subclasses that adapt a queue that isn't a
+         * BlockingQueue, which must override all the other methods.
+         */
+        protected QueueAdapter() {
+            mQueue = null;
+            mMetrics = null;
+        }
+
+        /**
+         * Returns the QueueMetrics, or null if they aren't being
+         * recorded.
+         */
+        public QueueMetrics getMetrics() {
+            return mMetrics;
         }
 
         /**
@@ -105,6 +160,11 @@ public abstract class SynchronizedQueue {
          * @throws TimeoutException and InterruptedException
          */
         public void put(E msg) throws InterruptedException, TimeoutException {
+            if (mMetrics != null) {
+                putAndRecord(msg);
+                return;
+            }
+
             // Keep track of how many times we're called.
             boolean timeoutValue = mQueue.offer(msg,
                                                 TIMEOUT_SECONDS,
@@ -112,7 +172,33 @@ public abstract class SynchronizedQueue {
             if (timeoutValue == false)
                 throw new TimeoutException();
             
-            mProducerCounter++;
+            mProducerCounter.increment();
+        }
+
+        /**
+         * Insert msg at the tail of the queue and record it in
+         * mMetrics, timing the insert only if it has to block.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        private void putAndRecord(E msg) throws InterruptedException, TimeoutException {
+            long blockedNanos = 0;
+
+            if (!mQueue.offer(msg)) {
+                long startNanos = System.nanoTime();
+                boolean timeoutValue = mQueue.offer(msg,
+                                                    TIMEOUT_SECONDS,
+                                                    TimeUnit.SECONDS);
+                blockedNanos = System.nanoTime() - startNanos;
+
+                if (timeoutValue == false) {
+                    mMetrics.recordPutTimeout(blockedNanos);
+                    throw new TimeoutException();
+                }
+            }
+
+            mMetrics.recordPut(1, blockedNanos);
+            mProducerCounter.increment();
         }
 
         /**
@@ -122,6 +208,9 @@ public abstract class SynchronizedQueue {
          *             , InterruptedException
          */
         public E take() throws InterruptedException, TimeoutException {
+            if (mMetrics != null)
+                return takeAndRecord();
+
             // Keep track of how many times we're called.
             E rValue = mQueue.poll(TIMEOUT_SECONDS,
                                    TimeUnit.SECONDS);
@@ -129,10 +218,414 @@ public abstract class SynchronizedQueue {
             if (rValue == null)
                 throw new TimeoutException();
 
-            mConsumerCounter++;
+            mConsumerCounter.increment();
             
             return rValue;            
         }
+
+        /**
+         * Remove msg from the head of the queue and record it in
+         * mMetrics, timing the removal only if it has to block.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        private E takeAndRecord() throws InterruptedException, TimeoutException {
+            long blockedNanos = 0;
+            E rValue = mQueue.poll();
+
+            if (rValue == null) {
+                long startNanos = System.nanoTime();
+                rValue = mQueue.poll(TIMEOUT_SECONDS,
+                                     TimeUnit.SECONDS);
+                blockedNanos = System.nanoTime() - startNanos;
+
+                if (rValue == null) {
+                    mMetrics.recordTakeTimeout(blockedNanos);
+                    throw new TimeoutException();
+                }
+            }
+
+            mMetrics.recordTake(1, blockedNanos);
+            mConsumerCounter.increment();
+
+            return rValue;
+        }
+
+        /**
+         * Insert all the msgs at the tail of the queue, using the
+         * queue's bulk insert operation if it has one.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        public void putAll(Collection<? extends E> msgs)
+            throws InterruptedException, TimeoutException {
+            int inserted = 0;
+            // A bulk insert may block part way through, so the whole
+            // call is timed when recording metrics.
+            long startNanos = mMetrics != null ? System.nanoTime() : 0;
+
+            try {
+                if (mQueue instanceof BulkBlockingQueue) 
+                    inserted = ((BulkBlockingQueue<E>) mQueue).offerAll(msgs,
+                                                                        TIMEOUT_SECONDS,
+                                                                        TimeUnit.SECONDS);
+                else
+                    for (E msg : msgs) {
+                        if (!mQueue.offer(msg,
+                                          TIMEOUT_SECONDS,
+                                          TimeUnit.SECONDS))
+                            break;
+                        inserted++;
+                    }
+            } finally {
+                // Keep track of how many msgs we inserted with a
+                // single update per batch, even if we were
+                // interrupted part way through it.
+                mProducerCounter.add(inserted);
+                if (mMetrics != null && inserted > 0)
+                    mMetrics.recordPut(inserted, System.nanoTime() - startNanos);
+            }
+
+            if (inserted < msgs.size()) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if (mMetrics != null)
+                    mMetrics.recordPutTimeout(System.nanoTime() - startNanos);
+                throw new TimeoutException();
+            }
+        }
+
+        /**
+         * Remove up to maxMsgs msgs from the head of the queue,
+         * blocking only if the queue is empty.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        public List<E> takeBatch(int maxMsgs)
+            throws InterruptedException, TimeoutException {
+            List<E> batch = new ArrayList<E>(maxMsgs);
+            long blockedNanos = 0;
+
+            // Take whatever is available without blocking.
+            if (mQueue.drainTo(batch, maxMsgs) == 0) {
+                // Otherwise wait for one msg and then take whatever
+                // else arrived along with it.
+                long startNanos = mMetrics != null ? System.nanoTime() : 0;
+                E rValue = mQueue.poll(TIMEOUT_SECONDS,
+                                       TimeUnit.SECONDS);
+                if (mMetrics != null)
+                    blockedNanos = System.nanoTime() - startNanos;
+
+                if (rValue == null) {
+                    if (mMetrics != null)
+                        mMetrics.recordTakeTimeout(blockedNanos);
+                    throw new TimeoutException();
+                }
+
+                batch.add(rValue);
+                mQueue.drainTo(batch, maxMsgs - 1);
+            }
+
+            // Keep track of how many msgs we took with a single
+            // update per batch.
+            mConsumerCounter.add(batch.size());
+            if (mMetrics != null)
+                mMetrics.recordTake(batch.size(), blockedNanos);
+
+            return batch;
+        }
+    }
+
+    /**
+     * @class IntQueueAdapter
+     * 
+     * @brief Adapts an IntBlockingQueue so the test can drive it.
+     *        The producer and consumer call putInt() and takeInt(),
+     *        which pass the iteration numbers as ints, so (unlike
+     *        with a QueueAdapter<Integer>) nothing is allocated per
+     *        msg.  The inherited Integer methods box and unbox.
+     */
+    public static class IntQueueAdapter extends QueueAdapter<Integer> {
+        /**
+         * Stores the queue that we're adapting.
+         */
+        private final IntBlockingQueue mIntQueue;
+
+        /**
+         * Store the queue that we're adapting.
+         */
+        public IntQueueAdapter(IntBlockingQueue queue) {
+            mIntQueue = queue;
+        }
+
+        /**
+         * Returns the number of elements in this queue.
+         */
+        int size() {
+            return mIntQueue.size();
+        }
+
+        /**
+         * Insert msg at the tail of the queue without boxing it.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        public void putInt(int msg) throws InterruptedException, TimeoutException {
+            if (!mIntQueue.offerInt(msg,
+                                    TIMEOUT_SECONDS,
+                                    TimeUnit.SECONDS))
+                throw new TimeoutException();
+
+            mProducerCounter.increment();
+        }
+
+        /**
+         * Remove msg from the head of the queue without boxing it.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        public int takeInt() throws InterruptedException, TimeoutException {
+            int rValue = mIntQueue.takeInt(TIMEOUT_SECONDS,
+                                           TimeUnit.SECONDS);
+            mConsumerCounter.increment();
+            return rValue;
+        }
+
+        public void put(Integer msg) throws InterruptedException, TimeoutException {
+            putInt(msg);
+        }
+
+        public Integer take() throws InterruptedException, TimeoutException {
+            return takeInt();
+        }
+
+        public void putAll(Collection<? extends Integer> msgs)
+            throws InterruptedException, TimeoutException {
+            int inserted = 0;
+
+            try {
+                for (Integer msg : msgs) {
+                    if (!mIntQueue.offerInt(msg,
+                                            TIMEOUT_SECONDS,
+                                            TimeUnit.SECONDS))
+                        break;
+                    inserted++;
+                }
+            } finally {
+                mProducerCounter.add(inserted);
+            }
+
+            if (inserted < msgs.size())
+                throw new TimeoutException();
+        }
+
+        public List<Integer> takeBatch(int maxMsgs)
+            throws InterruptedException, TimeoutException {
+            int[] msgs = new int[maxMsgs];
+            List<Integer> batch = new ArrayList<Integer>(maxMsgs);
+
+            // Take whatever is available without blocking, otherwise
+            // wait for one msg and then take whatever else arrived
+            // along with it.
+            int n = mIntQueue.drainTo(msgs, maxMsgs);
+            if (n == 0) {
+                batch.add(mIntQueue.takeInt(TIMEOUT_SECONDS,
+                                            TimeUnit.SECONDS));
+                n = mIntQueue.drainTo(msgs, maxMsgs - 1);
+            }
+
+            for (int i = 0; i < n; i++)
+                batch.add(msgs[i]);
+
+            mConsumerCounter.add(batch.size());
+            return batch;
+        }
+    }
+
+    /**
+     * @class MappedQueueAdapter
+     * 
+     * @brief Adapts a MappedFileQueue so the test can drive it, with
+     *        each msg stored as a 4-byte record.  The queue only
+     *        supports a single producer and consumer.
+     */
+    public static class MappedQueueAdapter extends QueueAdapter<Integer> {
+        /**
+         * Stores the queue that we're adapting.
+         */
+        private final MappedFileQueue mMappedQueue;
+
+        /**
+         * Store the queue that we're adapting.
+         */
+        public MappedQueueAdapter(MappedFileQueue queue) {
+            mMappedQueue = queue;
+        }
+
+        /**
+         * Returns the number of elements in this queue.
+         */
+        int size() {
+            return mMappedQueue.size();
+        }
+
+        /**
+         * Insert msg at the tail of the queue.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        public void put(Integer msg) throws InterruptedException, TimeoutException {
+            if (!mMappedQueue.offerInt(msg,
+                                       TIMEOUT_SECONDS,
+                                       TimeUnit.SECONDS))
+                throw new TimeoutException();
+
+            mProducerCounter.increment();
+        }
+
+        /**
+         * Remove msg from the head of the queue.
+         * 
+         * @throws TimeoutException and InterruptedException
+         */
+        public Integer take() throws InterruptedException, TimeoutException {
+            java.nio.ByteBuffer record = mMappedQueue.poll(TIMEOUT_SECONDS,
+                                                           TimeUnit.SECONDS);
+            if (record == null)
+                throw new TimeoutException();
+
+            // Read the msg in place and then give its space back to
+            // the producer.
+            int rValue = record.getInt(0);
+            mMappedQueue.release();
+            mConsumerCounter.increment();
+            return rValue;
+        }
+
+        public void putAll(Collection<? extends Integer> msgs)
+            throws InterruptedException, TimeoutException {
+            int inserted = 0;
+
+            try {
+                for (Integer msg : msgs) {
+                    if (!mMappedQueue.offerInt(msg,
+                                               TIMEOUT_SECONDS,
+                                               TimeUnit.SECONDS))
+                        break;
+                    inserted++;
+                }
+            } finally {
+                mProducerCounter.add(inserted);
+            }
+
+            if (inserted < msgs.size()) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                throw new TimeoutException();
+            }
+        }
+
+        public List<Integer> takeBatch(int maxMsgs)
+            throws InterruptedException, TimeoutException {
+            List<Integer> batch = new ArrayList<Integer>(maxMsgs);
+
+            // Wait for one msg and then take whatever else arrived
+            // along with it.
+            java.nio.ByteBuffer record = mMappedQueue.poll(TIMEOUT_SECONDS,
+                                                           TimeUnit.SECONDS);
+            while (record != null) {
+                batch.add(record.getInt(0));
+                if (batch.size() == maxMsgs)
+                    break;
+                record = mMappedQueue.poll();
+            }
+            if (batch.isEmpty())
+                throw new TimeoutException();
+
+            mMappedQueue.release();
+            mConsumerCounter.add(batch.size());
+            return batch;
+        }
+    }
+
+    /**
+     * @class ThreadResult
+     *
+     * @brief Records how many iterations one producer or consumer
+     *        Thread completed and how long it ran, so the throughput
+     *        of each Thread can be reported.
+     */
+    public static class ThreadResult {
+        /**
+         * Name of the Thread.
+         */
+        private final String mThreadName;
+
+        /**
+         * Number of iterations the Thread completed.
+         */
+        private final long mIterations;
+
+        /**
+         * How long the Thread ran.
+         */
+        private final long mElapsedNanos;
+
+        ThreadResult(String threadName, long iterations, long elapsedNanos) {
+            mThreadName = threadName;
+            mIterations = iterations;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        public long getIterations() {
+            return mIterations;
+        }
+
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * Returns the number of iterations per second.
+         */
+        public double getThroughput() {
+            return mElapsedNanos == 0
+                ? 0.0
+                : mIterations * (double) TimeUnit.SECONDS.toNanos(1) / mElapsedNanos;
+        }
+
+        public String toString() {
+            return String.format("%s: %d iterations, %.0f ops/s",
+                                 mThreadName, mIterations, getThroughput());
+        }
+    }
+
+    /**
+     * The ThreadResult of each producer and consumer in the current
+     * test.
+     */
+    private static final Queue<ThreadResult> mThreadResults =
+        new ConcurrentLinkedQueue<ThreadResult>();
+
+    /**
+     * Record the ThreadResult of the calling Thread.
+     */
+    static void recordThreadResult(int iterations, long startNanos) {
+        mThreadResults.add(new ThreadResult(Thread.currentThread().getName(),
+                                            iterations,
+                                            System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Returns the ThreadResult of each producer and consumer that has
+     * finished running in the most recent test.
+     */
+    public static List<ThreadResult> getThreadResults() {
+        return new ArrayList<ThreadResult>(mThreadResults);
     }
 
     /**
@@ -147,47 +640,59 @@ public abstract class SynchronizedQueue {
      */
     protected static Runnable mProducerRunnable = new Runnable() {
             public void run() {
-                for (int i = 0; i < mMaxIterations; i++)
+                long startNanos = System.nanoTime();
+                recordThreadResult(produce(), startNanos);
+            }
+
+            /**
+             * Returns the number of iterations that completed.
+             */
+            private int produce() {
+                final int batchSize = mBatchSize;
+                List<Integer> batch = new ArrayList<Integer>(batchSize);
+                // Avoid boxing the iteration number if the queue
+                // holds primitive ints.
+                final IntQueueAdapter intQueue = mQueue instanceof IntQueueAdapter
+                    ? (IntQueueAdapter) mQueue
+                    : null;
+
+                for (int i = 0; i < mMaxIterations; i += batchSize)
                     try {
-                        mQueue.put(i);
+                        if (batchSize == 1 && intQueue != null)
+                            intQueue.putInt(i);
+                        else if (batchSize == 1)
+                            mQueue.put(i);
+                        else {
+                            batch.clear();
+                            for (int j = i; j < i + batchSize && j < mMaxIterations; j++)
+                                batch.add(j);
+                            mQueue.putAll(batch);
+                        }
                         if (Thread.interrupted())
                             throw new InterruptedException();
                     } catch (InterruptedException e) {
                     	if (diagnosticsEnabled) 
-                            System.out.println("Thread " 
-                                               + Thread.currentThread().getId()
-                                               + " in test "
-                                               + mTestName 
-                                               + " properly interrupted by "
-                                               + e.toString() + " in producerRunnable");
+                            DiagnosticLog.log("in test {} properly interrupted by {} in producerRunnable",
+                                              mTestName, e);
                         // This isn't an error - it just means that
                         // we've been interrupted by the main Thread.
-                        return;
+                        return i;
                     } catch (TimeoutException e) {
                     	if (diagnosticsEnabled) 
-                            System.out.println("Thread "
-                                               + Thread.currentThread().getId()
-                                               + " in test "
-                                               + mTestName 
-                                               + " Exception " 
-                                               + e.toString()
-                                               + " occurred in producerRunnable");
+                            DiagnosticLog.log("in test {} Exception {} occurred in producerRunnable",
+                                              mTestName, e);
                         // Indicate a timeout.
-                        mProducerCounter = TIMEOUT_OCCURRED;
-                        return;
+                        mProducerStatus = TIMEOUT_OCCURRED;
+                        return i;
                     } catch (Exception e) {
                     	if (diagnosticsEnabled) 
-                            System.out.println("Thread "
-                                               + Thread.currentThread().getId()
-                                               + " in test "
-                                               + mTestName 
-                                               + " Exception " 
-                                               + e.toString()
-                                               + " occurred in producerRunnable");
+                            DiagnosticLog.log("in test {} Exception {} occurred in producerRunnable",
+                                              mTestName, e);
                         // Indicate a failure.
-                        mProducerCounter = FAILURE_OCCURRED;
-                        return;
+                        mProducerStatus = FAILURE_OCCURRED;
+                        return i;
                     }
+                return mMaxIterations;
             }
 	};
 
@@ -197,77 +702,121 @@ public abstract class SynchronizedQueue {
      */
     protected static Runnable mConsumerRunnable = new Runnable() {
             public void run() {
-                for (int i = 0; i < mMaxIterations; i++)
+                long startNanos = System.nanoTime();
+                recordThreadResult(consume(), startNanos);
+            }
+
+            /**
+             * Returns the number of iterations that completed.
+             */
+            private int consume() {
+                final int batchSize = mBatchSize;
+                final IntQueueAdapter intQueue = mQueue instanceof IntQueueAdapter
+                    ? (IntQueueAdapter) mQueue
+                    : null;
+
+                for (int i = 0; i < mMaxIterations; i += batchSize)
                     try {
                         if (Thread.interrupted()) {
                             throw new InterruptedException();
                         }
-                        Integer result = (Integer) mQueue.take();
+                        if (batchSize == 1 && intQueue != null) {
+                            int result = intQueue.takeInt();
 
-                        if (diagnosticsEnabled)
-                        	System.out.println("iteration = " + result);
+                            if (diagnosticsEnabled)
+                                DiagnosticLog.log("iteration = {}", result);
+                        } else if (batchSize == 1) {
+                            Integer result = (Integer) mQueue.take();
+
+                            if (diagnosticsEnabled)
+                                DiagnosticLog.log("iteration = {}", result);
+                        } else {
+                            List<Integer> results =
+                                mQueue.takeBatch(batchSize);
+
+                            if (diagnosticsEnabled)
+                                DiagnosticLog.log("iterations = {}", results);
+                        }
                     } catch (InterruptedException e) {
                     	if (diagnosticsEnabled) 
-                    		System.out.println("Thread " 
-                                           + Thread.currentThread().getId()
-                                           + " in test "
-                                           + mTestName 
-                                           + " properly interrupted by "
-                                           + e.toString() + " in consumerRunnable");
+                    		DiagnosticLog.log("in test {} properly interrupted by {} in consumerRunnable",
+                                              mTestName, e);
                         // This isn't an error - it just means that
                         // we've been interrupted by the main Thread.
-                        return;
+                        return i;
                     } catch (TimeoutException e) {
                     	if (diagnosticsEnabled) 
-                    		System.out.println("Thread "
-                                           + Thread.currentThread().getId()
-                                           + " in test "
-                                           + mTestName 
-                                           + " Exception " 
-                                           + e.toString()
-                                           + " occurred in consumerRunnable");
+                    		DiagnosticLog.log("in test {} Exception {} occurred in consumerRunnable",
+                                              mTestName, e);
                         // Indicate a timeout.
-                        mConsumerCounter = TIMEOUT_OCCURRED;
-                        return;
+                        mConsumerStatus = TIMEOUT_OCCURRED;
+                        return i;
                     } catch (Exception e) {
                     	if (diagnosticsEnabled)  
-                    		System.out.println("Thread "
-                                           + Thread.currentThread().getId()
-                                           + " in test "
-                                           + mTestName 
-                                           + " Exception " 
-                                           + e.toString()
-                                           + " occurred in consumerRunnable");
+                    		DiagnosticLog.log("in test {} Exception {} occurred in consumerRunnable",
+                                              mTestName, e);
                         // Indicate a failure.
-                        mConsumerCounter = FAILURE_OCCURRED;
-                        return;
+                        mConsumerStatus = FAILURE_OCCURRED;
+                        return i;
                     }
+                return mMaxIterations;
             }
 	};
 
+    /**
+     * Returns the number of times the producers iterated, or the
+     * error value if a producer failed.
+     */
+    static long producerCount() {
+        int status = mProducerStatus;
+        return status != 0 ? status : mProducerCounter.sum();
+    }
+
+    /**
+     * Returns the number of times the consumers iterated, or the
+     * error value if a consumer failed.
+     */
+    static long consumerCount() {
+        int status = mConsumerStatus;
+        return status != 0 ? status : mConsumerCounter.sum();
+    }
+
     protected SynchronizedQueueResult checkResults() {
-        int numberOfRemainingItemsInQueue = 
-            mProducerCounter - mConsumerCounter;
+        long producerCounter = producerCount();
+        long consumerCounter = consumerCount();
 
         // Do some sanity checking to see if the Threads work as
         // expected.
-        if (mConsumer == null 
-            || mProducer == null)
+        if (!threadsCreated())
             return SynchronizedQueueResult.THREADS_NEVER_CREATED;
-        else if (mConsumer.isAlive() 
-                 || mProducer.isAlive())
+        else if (threadsAlive())
             return SynchronizedQueueResult.JOIN_NEVER_CALLED;
-        else if (mConsumerCounter == 0 
-                 || mProducerCounter == 0)
+        else if (consumerCounter == 0 
+                 || producerCounter == 0)
             return SynchronizedQueueResult.THREADS_NEVER_RAN;
-        else if (mConsumerCounter == mMaxIterations
-                 || mProducerCounter == mMaxIterations) 
+        else if (consumerCounter == mMaxIterations
+                 || producerCounter == mMaxIterations) 
             return SynchronizedQueueResult.THREADS_NEVER_INTERUPTED;
-        else if (mConsumerCounter == FAILURE_OCCURRED
-                 || mProducerCounter == FAILURE_OCCURRED) 
+        else
+            return checkCounts();
+    }
+
+    /**
+     * Check that the producers and consumers didn't fail and that
+     * the number of msgs left in the queue is the number put minus
+     * the number taken.
+     */
+    static SynchronizedQueueResult checkCounts() {
+        long producerCounter = producerCount();
+        long consumerCounter = consumerCount();
+        long numberOfRemainingItemsInQueue = 
+            producerCounter - consumerCounter;
+
+        if (consumerCounter == FAILURE_OCCURRED
+                 || producerCounter == FAILURE_OCCURRED) 
             return SynchronizedQueueResult.THREADS_THREW_EXCEPTION;
-        else if (mConsumerCounter == TIMEOUT_OCCURRED
-                 || mProducerCounter == TIMEOUT_OCCURRED) 
+        else if (consumerCounter == TIMEOUT_OCCURRED
+                 || producerCounter == TIMEOUT_OCCURRED) 
             return SynchronizedQueueResult.THREADS_TIMEDOUT;
         else if (mQueue.size() != numberOfRemainingItemsInQueue)
             return SynchronizedQueueResult.INCORRECT_COUNT;
@@ -282,6 +831,14 @@ public abstract class SynchronizedQueue {
      */
     public static int mMaxIterations = 1000000;
 
+    /**
+     * Number of msgs the producer and consumer move per call.  If
+     * this is 1 they call put() and take(), otherwise they run in
+     * "batch mode" and call putAll() and takeBatch(), which
+     * amortizes the synchronization costs over each batch.
+     */
+    public static int mBatchSize = 1;
+
     /**
      * The Java Threads that are used to produce and consume messages
      * on the queue.
@@ -311,6 +868,41 @@ public abstract class SynchronizedQueue {
     protected abstract void interruptThreads();    
     protected abstract void joinThreads() throws InterruptedException;    
 
+    /**
+     * Hook method that returns true if createThreads() created the
+     * producer and consumer Threads.  Subclasses that run more than
+     * one producer or consumer override this method.
+     */
+    protected boolean threadsCreated() {
+        return mConsumer != null 
+            && mProducer != null;
+    }
+
+    /**
+     * Hook method that returns true if any producer or consumer
+     * Thread is still running.  Subclasses that run more than one
+     * producer or consumer override this method.
+     */
+    protected boolean threadsAlive() {
+        return mConsumer.isAlive() 
+            || mProducer.isAlive();
+    }
+
+    /**
+     * Make @a queue the queue used by the producer and consumer
+     * runnables and reset the results of the previous test.
+     */
+    static void prepareTest(QueueAdapter<Integer> queue,
+                            String testName) {
+        mQueue = queue;
+        mTestName = testName;
+        mProducerCounter.reset();
+        mConsumerCounter.reset();
+        mProducerStatus = 0;
+        mConsumerStatus = 0;
+        mThreadResults.clear();
+    }
+
     /**
      * This template method runs the test on the queue parameter.  It
      * decouples the test code from the user-defined code using the
@@ -319,10 +911,7 @@ public abstract class SynchronizedQueue {
     public SynchronizedQueueResult testQueue(QueueAdapter<Integer> queue,
                                              String testName) {
         try {
-            mQueue = queue;
-            mTestName = testName;
-            mProducerCounter = 0;
-            mConsumerCounter = 0;
+            prepareTest(queue, testName);
             
             // Invoke the various hook methods, which are "primitive
             // operations" in the Template Method pattern.
@@ -330,12 +919,10 @@ public abstract class SynchronizedQueue {
             startThreads();
 
             // Give the Threads a chance to run before interrupting
-            // them. (disabling console output makes them run really
-            // fast).
-            if (diagnosticsEnabled)
-            	Thread.sleep(1000);
-            else
-            	Thread.sleep(100);
+            // them.  Diagnostics are printed asynchronously by the
+            // DiagnosticLog, so enabling them doesn't slow the
+            // Threads down enough to need more time.
+            Thread.sleep(100);
             
             interruptThreads();
             joinThreads();
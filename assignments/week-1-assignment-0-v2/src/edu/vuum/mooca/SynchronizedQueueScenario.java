@@ -0,0 +1,83 @@
+package edu.vuum.mooca;
+
+import edu.vuum.mooca.SynchronizedQueue.QueueAdapter;
+import edu.vuum.mooca.SynchronizedQueue.SynchronizedQueueResult;
+
+/**
+ * @class SynchronizedQueueScenario
+ *
+ * @brief An InterleavingExplorer Scenario that runs the
+ *        SynchronizedQueue producer and consumer runnables on a fresh
+ *        queue for a few iterations, without interrupting them, and
+ *        then checks their counts the way SynchronizedQueue does.  The
+ *        queue must not block outside of InterleavingExplorer schedule
+ *        points, e.g., a BuggyBlockingQueue of an InstrumentedArrayList.
+ */
+public class SynchronizedQueueScenario implements InterleavingExplorer.Scenario {
+    /**
+     * @class QueueFactory
+     *
+     * @brief Makes the queue for each execution, so every execution
+     *        starts with an empty queue.
+     */
+    public interface QueueFactory {
+        QueueAdapter<Integer> makeQueue();
+    }
+
+    /**
+     * Makes the queue for each execution.
+     */
+    private final QueueFactory mFactory;
+
+    /**
+     * Number of msgs the producer puts and the consumer takes.
+     */
+    private final int mIterations;
+
+    /**
+     * The queue of the current execution.
+     */
+    private QueueAdapter<Integer> mQueue;
+
+    /**
+     * SynchronizedQueue.mMaxIterations before the current execution.
+     */
+    private int mSavedMaxIterations;
+
+    /**
+     * Constructor runs the producer and consumer for @a iterations
+     * iterations on queues made by @a factory.
+     */
+    public SynchronizedQueueScenario(QueueFactory factory, int iterations) {
+        mFactory = factory;
+        mIterations = iterations;
+    }
+
+    public Runnable[] setUp() {
+        mQueue = mFactory.makeQueue();
+        SynchronizedQueue.prepareTest(mQueue, "InterleavingExplorer");
+        mSavedMaxIterations = SynchronizedQueue.mMaxIterations;
+        SynchronizedQueue.mMaxIterations = mIterations;
+
+        return new Runnable[] {
+            SynchronizedQueue.mProducerRunnable,
+            SynchronizedQueue.mConsumerRunnable
+        };
+    }
+
+    public String[] threadNames() {
+        return new String[] { "producer", "consumer" };
+    }
+
+    public String check() {
+        SynchronizedQueue.mMaxIterations = mSavedMaxIterations;
+
+        SynchronizedQueueResult result = SynchronizedQueue.checkCounts();
+        return result == SynchronizedQueueResult.RAN_PROPERLY
+            ? null
+            : result.getString() + " (producer count "
+              + SynchronizedQueue.producerCount() + ", consumer count "
+              + SynchronizedQueue.consumerCount() + ", queue size "
+              + mQueue.size() + ")";
+    }
+}
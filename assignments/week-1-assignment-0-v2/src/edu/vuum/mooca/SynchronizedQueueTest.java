@@ -1,12 +1,16 @@
 package edu.vuum.mooca;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.File;
 import java.util.concurrent.ArrayBlockingQueue;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import edu.vuum.mooca.SynchronizedQueue.*;
+import edu.vuum.mooca.MultiThreadedSynchronizedQueue.ExecutionMode;
 
 /**
  * @class SynchronizedQueueTest
@@ -28,30 +32,43 @@ public class SynchronizedQueueTest {
      */
     static SynchronizedQueueResult runQueueTest(String qName,
                                                 QueueAdapter<Integer> queue) {
-    	if (SynchronizedQueue.diagnosticsEnabled) {	    
-            System.out.println("Starting " 
-                               + qName 
-                               + " test...");
-            if (qName == "BuggyBlockingQueue") 
-                System.out.println("An exception may be thrown since "
-                                   + qName
-                                   + " is intentially BUGGY.");
-    	}		
-
     	/**
          * We have to instantiate this object because Java doesn't
     	 * like things being abstract AND static, which makes
     	 * implementing the Template Pattern statically more painful
     	 * than it should be.
          */
+        return runQueueTest(qName, queue, new SynchronizedQueueImpl());
+    }
+
+    /**
+     * Run the test for the queue parameter using the given harness,
+     * which determines how the producer and consumer Threads are
+     * run.
+     *
+     * @return result. If SynchronizedQueue test ran properly, returns
+     * null. If not, returns error message.
+     */
+    static SynchronizedQueueResult runQueueTest(String qName,
+                                                QueueAdapter<Integer> queue,
+                                                SynchronizedQueue harness) {
+    	if (SynchronizedQueue.diagnosticsEnabled) {	    
+            DiagnosticLog.log("Starting {} test...", qName);
+            if (qName == "BuggyBlockingQueue") 
+                DiagnosticLog.log("An exception may be thrown since {} is intentially BUGGY.",
+                                  qName);
+    	}		
+
         SynchronizedQueueResult result =
-            new SynchronizedQueueImpl().testQueue(queue, qName);
+            harness.testQueue(queue, qName);
 
         if (SynchronizedQueue.diagnosticsEnabled) {
-            System.out.println("End " + qName + " test.\n");
-            System.out.println("See JUnit view for results -- \n" 
-                               + "Green check-marks denote program correctness. \n" 
-                               + "Blue x-marks indicate a problem with your implementation. \n");
+            DiagnosticLog.log("End {} test.\n", qName);
+            DiagnosticLog.log("See JUnit view for results -- \n" 
+                              + "Green check-marks denote program correctness. \n" 
+                              + "Blue x-marks indicate a problem with your implementation. \n");
+            // Wait for the log to catch up with the test.
+            DiagnosticLog.flushDefault();
         }
         
         if (result != SynchronizedQueueResult.RAN_PROPERLY)
@@ -72,6 +89,15 @@ public class SynchronizedQueueTest {
         mQueueSize = SynchronizedQueue.mMaxIterations / 10;
     }
 
+    /**
+     * Runs after each test.  Resets the batch size so the remaining
+     * tests run in single-msg mode.
+     */
+    @After
+    public void tearDown() throws Exception {
+        SynchronizedQueue.mBatchSize = 1;
+    }
+
     /**
      * Tests the ArrayBlockingQueue, which should pass without error.
      */
@@ -96,6 +122,302 @@ public class SynchronizedQueueTest {
                    errors);
     }
 	
+    /**
+     * Tests the SimpleBlockingQueue, the synchronized version of the
+     * BuggyBlockingQueue, which should pass without error.
+     */
+    @Test
+    public void simpleBlockingQueueTest() {
+        // Make the appropriate QueueAdapter for the
+        // SimpleBlockingQueue.
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new SimpleBlockingQueue<Integer>(mQueueSize));
+
+        // Run a test on the SimpleBlockingQueue.
+        SynchronizedQueueResult errors =
+            runQueueTest("SimpleBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+	
+    /**
+     * Tests the lock-free RingBufferBlockingQueue, which should pass
+     * without error.
+     */
+    @Test
+    public void ringBufferBlockingQueueTest() {
+        // Make the appropriate QueueAdapter for the
+        // RingBufferBlockingQueue.
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new RingBufferBlockingQueue<Integer>(mQueueSize));
+
+        // Run a test on the RingBufferBlockingQueue.
+        SynchronizedQueueResult errors =
+            runQueueTest("RingBufferBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+	
+    /**
+     * Tests the primitive IntBlockingQueue, which should pass without
+     * error.
+     */
+    @Test
+    public void intBlockingQueueTest() {
+        // Make the IntQueueAdapter for the IntBlockingQueue, which
+        // the producer and consumer drive without boxing.
+        QueueAdapter<Integer> queueAdapter =
+            new IntQueueAdapter(new IntBlockingQueue(mQueueSize));
+
+        // Run a test on the IntBlockingQueue.
+        SynchronizedQueueResult errors =
+            runQueueTest("IntBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+	
+    /**
+     * Tests the memory-mapped MappedFileQueue, which should pass
+     * without error.
+     */
+    @Test
+    public void mappedFileQueueTest() throws Exception {
+        File file = File.createTempFile("SynchronizedQueueTest", ".queue");
+        try {
+            // Make the appropriate QueueAdapter for the
+            // MappedFileQueue, where each int msg takes up 8 bytes.
+            QueueAdapter<Integer> queueAdapter =
+                new MappedQueueAdapter(new MappedFileQueue(file, 8 * mQueueSize));
+
+            // Run a test on the MappedFileQueue.
+            SynchronizedQueueResult errors =
+                runQueueTest("MappedFileQueue", queueAdapter);
+
+            String errorMessage = "";
+        
+            if (errors != null) 
+                errorMessage = errors.getString();
+
+            assertNull("Error occurred: " + 
+                       errorMessage,
+                       errors);
+        } finally {
+            file.delete();
+        }
+    }
+	
+    /**
+     * Tests the ArrayBlockingQueue with QueueMetrics enabled, which
+     * should pass without error and record the same number of puts
+     * and takes as the test counted.
+     */
+    @Test
+    public void arrayBlockingQueueMetricsTest() {
+        QueueMetrics metrics = new QueueMetrics();
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new ArrayBlockingQueue<Integer>(mQueueSize),
+                                      metrics);
+
+        SynchronizedQueueResult errors =
+            runQueueTest("ArrayBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+
+        QueueMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(SynchronizedQueue.producerCount(), snapshot.getPuts());
+        assertEquals(SynchronizedQueue.consumerCount(), snapshot.getTakes());
+        assertEquals(queueAdapter.size(), snapshot.getDepth());
+        // The consumer may record a take just after the producer
+        // records its next put.
+        assertTrue(snapshot.getHighWaterMark() <= mQueueSize + 1);
+        assertEquals(snapshot.getPuts(), snapshot.getPutWaits().getTotalCount());
+        assertEquals(0, snapshot.getPutTimeouts() + snapshot.getTakeTimeouts());
+    }
+	
+    /**
+     * Tests the ArrayBlockingQueue in batch mode, which should pass
+     * without error.
+     */
+    @Test
+    public void arrayBlockingQueueBatchTest() {
+        SynchronizedQueue.mBatchSize = 64;
+
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new ArrayBlockingQueue<Integer>(mQueueSize));
+
+        SynchronizedQueueResult errors =
+            runQueueTest("ArrayBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+
+    /**
+     * Tests the RingBufferBlockingQueue in batch mode, which should
+     * pass without error.
+     */
+    @Test
+    public void ringBufferBlockingQueueBatchTest() {
+        SynchronizedQueue.mBatchSize = 64;
+
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new RingBufferBlockingQueue<Integer>(mQueueSize));
+
+        SynchronizedQueueResult errors =
+            runQueueTest("RingBufferBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+	
+    /**
+     * Tests the IntBlockingQueue in batch mode, which should pass
+     * without error.
+     */
+    @Test
+    public void intBlockingQueueBatchTest() {
+        SynchronizedQueue.mBatchSize = 64;
+
+        QueueAdapter<Integer> queueAdapter =
+            new IntQueueAdapter(new IntBlockingQueue(mQueueSize));
+
+        SynchronizedQueueResult errors =
+            runQueueTest("IntBlockingQueue", queueAdapter);
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+	
+    /**
+     * Tests the ArrayBlockingQueue with multiple producer and
+     * consumer Threads, which should pass without error.
+     */
+    @Test
+    public void multiThreadedArrayBlockingQueueTest() {
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new ArrayBlockingQueue<Integer>(mQueueSize));
+
+        SynchronizedQueueResult errors =
+            runQueueTest("ArrayBlockingQueue",
+                         queueAdapter,
+                         new MultiThreadedSynchronizedQueue(4, 4,
+                                                            ExecutionMode.THREADS,
+                                                            true));
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+        assertEquals(8, SynchronizedQueue.getThreadResults().size());
+    }
+
+    /**
+     * Tests the RingBufferBlockingQueue with multiple producers and
+     * consumers run by an ExecutorService, which should pass without
+     * error.
+     */
+    @Test
+    public void executorRingBufferBlockingQueueTest() {
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new RingBufferBlockingQueue<Integer>(mQueueSize));
+
+        SynchronizedQueueResult errors =
+            runQueueTest("RingBufferBlockingQueue",
+                         queueAdapter,
+                         new MultiThreadedSynchronizedQueue(2, 3,
+                                                            ExecutionMode.EXECUTOR,
+                                                            false));
+
+        String errorMessage = "";
+        
+        if (errors != null) 
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " + 
+                   errorMessage,
+                   errors);
+    }
+
+    /**
+     * Tests the ArrayBlockingQueue with many producers running in
+     * virtual Threads, which should pass without error.  The test is
+     * skipped on JVMs that don't support virtual Threads.
+     */
+    @Test
+    public void virtualThreadArrayBlockingQueueTest() {
+        assumeTrue(VirtualThreads.isSupported());
+
+        QueueAdapter<Integer> queueAdapter =
+            new QueueAdapter<Integer>(new ArrayBlockingQueue<Integer>(mQueueSize));
+
+        SynchronizedQueueResult errors =
+            runQueueTest("ArrayBlockingQueue",
+                         queueAdapter,
+                         new MultiThreadedSynchronizedQueue(100, 4,
+                                                            ExecutionMode.VIRTUAL_THREADS,
+                                                            false));
+
+        String errorMessage = "";
+
+        if (errors != null)
+            errorMessage = errors.getString();
+
+        assertNull("Error occurred: " +
+                   errorMessage,
+                   errors);
+        assertEquals(104, SynchronizedQueue.getThreadResults().size());
+    }
+	
     /**
      * Tests the BuggyBlockingQueue, an intentionally flawed class.
      * The buggyBlockingQueueTest() will succeed if the testQueue
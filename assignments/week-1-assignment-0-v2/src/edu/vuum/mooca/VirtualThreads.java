@@ -0,0 +1,95 @@
+package edu.vuum.mooca;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @class VirtualThreads
+ *
+ * @brief Provides access to the virtual Threads added in Java 21
+ *        without requiring this project (which targets an older Java
+ *        platform) to be compiled against Java 21.  The relevant
+ *        methods are looked up reflectively once, so isSupported()
+ *        simply returns false on older JVMs.
+ */
+public final class VirtualThreads {
+    /**
+     * The Thread.ofVirtual() method, or null if it's not available.
+     */
+    private static final Method sOfVirtual;
+
+    /**
+     * The Thread.Builder.factory() method, or null if it's not
+     * available.
+     */
+    private static final Method sFactory;
+
+    /**
+     * The Thread.isVirtual() method, or null if it's not available.
+     */
+    private static final Method sIsVirtual;
+
+    static {
+        Method ofVirtual = null, factory = null, isVirtual = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (Exception e) {
+            // Virtual Threads aren't supported by this JVM.
+            ofVirtual = factory = isVirtual = null;
+        }
+        sOfVirtual = ofVirtual;
+        sFactory = factory;
+        sIsVirtual = isVirtual;
+    }
+
+    /**
+     * This class only has static methods.
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns true if the JVM supports virtual Threads.
+     */
+    public static boolean isSupported() {
+        return sOfVirtual != null;
+    }
+
+    /**
+     * Returns a ThreadFactory that makes (unstarted) virtual Threads.
+     *
+     * @throws UnsupportedOperationException if the JVM doesn't
+     *         support virtual Threads.
+     */
+    public static ThreadFactory newThreadFactory() {
+        if (!isSupported())
+            throw new UnsupportedOperationException
+                ("virtual Threads require Java 21 or later, not "
+                 + System.getProperty("java.version"));
+
+        try {
+            return (ThreadFactory) sFactory.invoke(sOfVirtual.invoke(null));
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException(e);
+        } catch (InvocationTargetException e) {
+            throw new UnsupportedOperationException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns true if @a thread is a virtual Thread.
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (!isSupported())
+            return false;
+
+        try {
+            return (Boolean) sIsVirtual.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package edu.vuum.mocca;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class CounterScalingBenchmark
+ *
+ * @brief Measures how the throughput of a counter shared by many
+ *        Threads scales with the number of Threads for each
+ *        SimpleAtomicLongFactory Implementation.  Each Thread
+ *        increments the counter -ops times and then decrements it
+ *        -ops times, without using the returned values (so the
+ *        StripedAtomicLong is driven via increment() and decrement(),
+ *        its methods for this case).  A read-mostly workload is run
+ *        by also calling get() -reads times after each update.  The
+ *        counter must be back at 0 afterwards.  The speedup column is
+ *        the throughput relative to one Thread of the same
+ *        Implementation, which is at most the number of cores.
+ *        Options are given as "-name value" pairs, where the value can
+ *        be a comma-separated list, e.g.:
+ *
+ *        java edu.vuum.mocca.CounterScalingBenchmark
+ *             -implementations READ_WRITE_LOCK,STRIPED
+ *             -threads 1,2,4,8,16,32,64 -ops 1000000
+ */
+public class CounterScalingBenchmark {
+    /**
+     * Parse "-name value" pairs from @a args.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-"))
+                throw new IllegalArgumentException("unexpected argument "
+                                                   + args[i]);
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Return the comma-separated values of option @a name, or @a
+     * defaultValue if it wasn't given.
+     */
+    static String[] option(Map<String, String> options,
+                           String name,
+                           String defaultValue) {
+        String value = options.get(name);
+        return (value == null ? defaultValue : value).split(",");
+    }
+
+    /**
+     * @class TimedBody
+     *
+     * @brief The work each Thread does in runTimed().
+     */
+    interface TimedBody {
+        /**
+         * Do the work of Thread @a index, which started with the
+         * others at @a startNanos.
+         */
+        void run(int index, long startNanos) throws Exception;
+    }
+
+    /**
+     * Runs @a body in @a threads Threads that start together and
+     * returns the elapsed nanoseconds from their start until the last
+     * one finished.
+     */
+    static long runTimed(int threads, final TimedBody body) throws InterruptedException {
+        // The time is taken by the Threads themselves, since on a
+        // busy machine the main Thread may not run again until
+        // they're done.
+        final AtomicLong startNanos = new AtomicLong();
+        final AtomicLong stopNanos = new AtomicLong();
+        final CyclicBarrier startBarrier = new CyclicBarrier(threads, new Runnable() {
+                public void run() {
+                    startNanos.set(System.nanoTime());
+                }
+            });
+        final CountDownLatch stopLatch = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; ++t) {
+            final int index = t;
+            new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            startBarrier.await();
+                            body.run(index, startNanos.get());
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        } finally {
+                            long now = System.nanoTime();
+                            for (long stop; now > (stop = stopNanos.get())
+                                     && !stopNanos.compareAndSet(stop, now); )
+                                continue;
+                            stopLatch.countDown();
+                        }
+                    }
+                }).start();
+        }
+
+        stopLatch.await();
+        return stopNanos.get() - startNanos.get();
+    }
+
+    /**
+     * Keeps the JIT compiler from discarding the results of get().
+     */
+    static volatile long sSink;
+
+    /**
+     * Returns the elapsed nanoseconds for @a threads Threads to each
+     * increment and then decrement @a counter @a ops times, calling
+     * get() @a reads times after each update.
+     */
+    static long runTrial(final LongCounter counter,
+                         int threads,
+                         final int ops,
+                         final int reads) throws Exception {
+        final StripedAtomicLong striped = counter instanceof StripedAtomicLong
+            ? (StripedAtomicLong) counter
+            : null;
+
+        long elapsed = runTimed(threads, new TimedBody() {
+                public void run(int index, long startNanos) {
+                    long sink = 0;
+                    for (int i = 0; i < 2 * ops; ++i) {
+                        if (striped != null && i < ops)
+                            striped.increment();
+                        else if (striped != null)
+                            striped.decrement();
+                        else if (i < ops)
+                            counter.incrementAndGet();
+                        else
+                            counter.decrementAndGet();
+                        for (int r = 0; r < reads; ++r)
+                            sink += counter.get();
+                    }
+                    sSink = sink;
+                }
+            });
+
+        if (counter.get() != 0)
+            throw new IllegalStateException("counter is " + counter.get()
+                                            + " rather than 0");
+        return elapsed;
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        String[] implementations = option(options, "implementations", "READ_WRITE_LOCK,CAS,STRIPED");
+        String[] threadCounts = option(options, "threads", "1,2,4,8,16,32,64");
+        int ops = Integer.parseInt(option(options, "ops", "1000000")[0]);
+        int reads = Integer.parseInt(option(options, "reads", "0")[0]);
+        int trials = Integer.parseInt(option(options, "trials", "3")[0]);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println(String.format("%-16s %7s %14s %8s",
+                                         "implementation", "threads",
+                                         "ops/s", "speedup"));
+
+        for (String name : implementations) {
+            SimpleAtomicLongFactory.Implementation implementation =
+                SimpleAtomicLongFactory.Implementation.valueOf(name);
+            double baseline = 0;
+
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount);
+                long best = Long.MAX_VALUE;
+
+                // The first trial warms up the JIT compiler, and the
+                // fastest of the rest is reported.
+                for (int trial = 0; trial <= trials; ++trial) {
+                    long nanos = runTrial(implementation.makeAtomicLong(0),
+                                          threads,
+                                          ops,
+                                          reads);
+                    if (trial > 0)
+                        best = Math.min(best, nanos);
+                }
+
+                double rate = 2.0 * ops * (1 + reads) * threads / (best / 1e9);
+                if (baseline == 0)
+                    baseline = rate / threads;
+                System.out.println(String.format("%-16s %7d %14.0f %8.2f",
+                                                 name, threads, rate,
+                                                 rate / baseline));
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package edu.vuum.mocca;
+
+import java.util.Map;
+
+/**
+ * @class FalseSharingBenchmark
+ *
+ * @brief Measures the cost of false sharing by having each Thread
+ *        increment its own counter, so the Threads never contend for
+ *        the same value, with the counters laid out in each of the
+ *        ways in Layout.  Counters that share a cache line (OBJECTS
+ *        and PACKED_ARRAY) make that line bounce between the cores,
+ *        so their throughput stops scaling (or drops) as Threads are
+ *        added, whereas the padded layouts (PADDED_OBJECTS and
+ *        STRIDED_ARRAY) should scale with the number of cores.  Only
+ *        a machine with several cores shows the difference.  Options
+ *        are given as "-name value" pairs (see
+ *        CounterScalingBenchmark), e.g.:
+ *
+ *        java edu.vuum.mocca.FalseSharingBenchmark
+ *             -layouts PACKED_ARRAY,STRIDED_ARRAY -threads 1,2,4,8
+ *             -ops 10000000
+ */
+public class FalseSharingBenchmark {
+    /**
+     * @class Counters
+     *
+     * @brief One counter per Thread, accessed by index.
+     */
+    interface Counters {
+        long incrementAndGet(int i);
+        long get(int i);
+    }
+
+    /**
+     * @class CounterObjects
+     *
+     * @brief Counters kept in an array of LongCounters, which
+     *        are allocated one after the other and so are usually
+     *        adjacent in memory.
+     */
+    static class CounterObjects implements Counters {
+        private final LongCounter[] mCounters;
+
+        CounterObjects(LongCounter[] counters) {
+            mCounters = counters;
+        }
+
+        public long incrementAndGet(int i) {
+            return mCounters[i].incrementAndGet();
+        }
+
+        public long get(int i) {
+            return mCounters[i].get();
+        }
+    }
+
+    /**
+     * @class CounterArray
+     *
+     * @brief Counters kept in a SimpleAtomicLongArray.
+     */
+    static class CounterArray implements Counters {
+        private final SimpleAtomicLongArray mArray;
+
+        CounterArray(SimpleAtomicLongArray array) {
+            mArray = array;
+        }
+
+        public long incrementAndGet(int i) {
+            return mArray.incrementAndGet(i);
+        }
+
+        public long get(int i) {
+            return mArray.get(i);
+        }
+    }
+
+    /**
+     * @class Layout
+     *
+     * @brief The ways of laying out the counters, each of which knows
+     *        how to make the counters for a given number of Threads.
+     */
+    enum Layout {
+        OBJECTS {
+            Counters makeCounters(int threads) {
+                LongCounter[] counters = new LongCounter[threads];
+                for (int i = 0; i < threads; ++i)
+                    counters[i] = new CasSimpleAtomicLong(0);
+                return new CounterObjects(counters);
+            }
+        },
+        PADDED_OBJECTS {
+            Counters makeCounters(int threads) {
+                LongCounter[] counters = new LongCounter[threads];
+                for (int i = 0; i < threads; ++i)
+                    counters[i] = new PaddedSimpleAtomicLong(0);
+                return new CounterObjects(counters);
+            }
+        },
+        PACKED_ARRAY {
+            Counters makeCounters(int threads) {
+                return new CounterArray(new SimpleAtomicLongArray(threads, 1));
+            }
+        },
+        STRIDED_ARRAY {
+            Counters makeCounters(int threads) {
+                return new CounterArray(new SimpleAtomicLongArray(threads));
+            }
+        };
+
+        /**
+         * Factory method that makes a counter for each of @a threads
+         * Threads.
+         */
+        abstract Counters makeCounters(int threads);
+    }
+
+    /**
+     * Returns the elapsed nanoseconds for @a threads Threads to each
+     * increment their own counter in @a counters @a ops times.
+     */
+    static long runTrial(final Counters counters,
+                         int threads,
+                         final int ops) throws Exception {
+        long elapsed = CounterScalingBenchmark.runTimed(threads, new CounterScalingBenchmark.TimedBody() {
+                public void run(int index, long startNanos) {
+                    for (int i = 0; i < ops; ++i)
+                        counters.incrementAndGet(index);
+                }
+            });
+
+        for (int t = 0; t < threads; ++t)
+            if (counters.get(t) != ops)
+                throw new IllegalStateException("counter " + t + " is "
+                                                + counters.get(t)
+                                                + " rather than " + ops);
+        return elapsed;
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CounterScalingBenchmark.parseOptions(args);
+
+        String[] layouts = CounterScalingBenchmark.option(options, "layouts",
+            "OBJECTS,PADDED_OBJECTS,PACKED_ARRAY,STRIDED_ARRAY");
+        String[] threadCounts = CounterScalingBenchmark.option(options, "threads", "1,2,4,8");
+        int ops = Integer.parseInt(CounterScalingBenchmark.option(options, "ops", "10000000")[0]);
+        int trials = Integer.parseInt(CounterScalingBenchmark.option(options, "trials", "3")[0]);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println(String.format("%-16s %7s %14s %8s",
+                                         "layout", "threads",
+                                         "ops/s", "speedup"));
+
+        for (String name : layouts) {
+            Layout layout = Layout.valueOf(name);
+            double baseline = 0;
+
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount);
+                long best = Long.MAX_VALUE;
+
+                // The first trial warms up the JIT compiler, and the
+                // fastest of the rest is reported.
+                for (int trial = 0; trial <= trials; ++trial) {
+                    long nanos = runTrial(layout.makeCounters(threads),
+                                          threads,
+                                          ops);
+                    if (trial > 0)
+                        best = Math.min(best, nanos);
+                }
+
+                double rate = (double) ops * threads / (best / 1e9);
+                if (baseline == 0)
+                    baseline = rate / threads;
+                System.out.println(String.format("%-16s %7d %14.0f %8.2f",
+                                                 name, threads, rate,
+                                                 rate / baseline));
+            }
+        }
+    }
+}
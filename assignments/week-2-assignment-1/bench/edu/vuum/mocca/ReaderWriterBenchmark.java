@@ -0,0 +1,291 @@
+package edu.vuum.mocca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class ReaderWriterBenchmark
+ *
+ * @brief Measures the throughput of reader and writer Threads that
+ *        share a counter, separately for each role, so read-mostly and
+ *        write-mostly mixes can be compared across the
+ *        SimpleAtomicLongFactory Implementations and two baselines:
+ *        SYNCHRONIZED (a LongCounter whose methods are
+ *        synchronized) and ATOMIC_LONG (java.util.concurrent's
+ *        AtomicLong).  Each group in -groups is a "readers:writers"
+ *        pair.  Readers call get(), and writers cycle through the
+ *        incrementAndGet(), getAndIncrement(), decrementAndGet() and
+ *        getAndDecrement() calls the tests make, so a shared counter
+ *        must be back at 0 afterwards.
+ *
+ *        Every trial runs for -millis milliseconds, after -warmups
+ *        untimed trials, and the best of -trials is reported.  With
+ *        "-sharing SHARED" all the Threads use one counter, whereas
+ *        with "-sharing PRIVATE" each Thread gets its own counter,
+ *        allocated with padding in between so no two counters share a
+ *        cache line; the difference between the two is the cost of
+ *        contention.  Each Thread's op count is also kept in its own
+ *        cache line, so the harness adds no false sharing of its own.
+ *        Options are given as "-name value" pairs (see
+ *        CounterScalingBenchmark), e.g.:
+ *
+ *        java edu.vuum.mocca.ReaderWriterBenchmark
+ *             -counters READ_WRITE_LOCK,CAS,ATOMIC_LONG
+ *             -groups 1:1,4:1,1:4 -sharing SHARED,PRIVATE -millis 500
+ */
+public class ReaderWriterBenchmark {
+    /**
+     * Number of longs between the op counts of two Threads, which
+     * keeps each count in its own (64 or 128 byte) cache line.
+     */
+    static final int PAD = 16;
+
+    /**
+     * Number of update cycles a writer makes between looking at the
+     * clock.  Writers only stop at the end of a cycle, which leaves
+     * the counter where it started.
+     */
+    static final int CYCLES_PER_CHECK = 256;
+
+    /**
+     * Keeps the JIT compiler from discarding the values read.
+     */
+    static volatile long sSink;
+
+    /**
+     * @class SynchronizedAtomicLong
+     *
+     * @brief Baseline LongCounter that guards its value with the
+     *        object's monitor.
+     */
+    static class SynchronizedAtomicLong implements LongCounter {
+        private long mValue;
+
+        SynchronizedAtomicLong(long initialValue) {
+            mValue = initialValue;
+        }
+
+        public synchronized long get() {
+            return mValue;
+        }
+
+        public synchronized long decrementAndGet() {
+            return --mValue;
+        }
+
+        public synchronized long getAndIncrement() {
+            return mValue++;
+        }
+
+        public synchronized long getAndDecrement() {
+            return mValue--;
+        }
+
+        public synchronized long incrementAndGet() {
+            return ++mValue;
+        }
+    }
+
+    /**
+     * @class AtomicLongAdapter
+     *
+     * @brief Baseline LongCounter that forwards to a
+     *        java.util.concurrent.atomic.AtomicLong.
+     */
+    static class AtomicLongAdapter implements LongCounter {
+        private final AtomicLong mAtomicLong;
+
+        AtomicLongAdapter(long initialValue) {
+            mAtomicLong = new AtomicLong(initialValue);
+        }
+
+        public long get() {
+            return mAtomicLong.get();
+        }
+
+        public long decrementAndGet() {
+            return mAtomicLong.decrementAndGet();
+        }
+
+        public long getAndIncrement() {
+            return mAtomicLong.getAndIncrement();
+        }
+
+        public long getAndDecrement() {
+            return mAtomicLong.getAndDecrement();
+        }
+
+        public long incrementAndGet() {
+            return mAtomicLong.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a counter named @a name, which is either a baseline or
+     * a SimpleAtomicLongFactory Implementation.
+     */
+    static LongCounter makeCounter(String name) {
+        if (name.equals("SYNCHRONIZED"))
+            return new SynchronizedAtomicLong(0);
+        else if (name.equals("ATOMIC_LONG"))
+            return new AtomicLongAdapter(0);
+        else
+            return SimpleAtomicLongFactory.Implementation.valueOf(name).makeAtomicLong(0);
+    }
+
+    /**
+     * Returns @a threads counters named @a name, one per Thread, with
+     * enough padding allocated between them that no two share a cache
+     * line.  The padding is kept in @a padding so it stays reachable.
+     */
+    static LongCounter[] makePrivateCounters(String name,
+                                             int threads,
+                                             List<Object> padding) {
+        LongCounter[] counters = new LongCounter[threads];
+        for (int t = 0; t < threads; ++t) {
+            counters[t] = makeCounter(name);
+            padding.add(new long[PAD]);
+        }
+        return counters;
+    }
+
+    /**
+     * @class Result
+     *
+     * @brief The read and write throughputs of one trial.
+     */
+    static class Result {
+        final double mReadsPerSecond;
+        final double mWritesPerSecond;
+
+        Result(double readsPerSecond, double writesPerSecond) {
+            mReadsPerSecond = readsPerSecond;
+            mWritesPerSecond = writesPerSecond;
+        }
+    }
+
+    /**
+     * Runs @a readers reader Threads and @a writers writer Threads on
+     * @a counters (one per Thread, readers first, which may all be the
+     * same counter) for @a millis milliseconds.
+     */
+    static Result runTrial(final LongCounter[] counters,
+                           final int readers,
+                           int writers,
+                           long millis) throws Exception {
+        final int threads = readers + writers;
+        final long[] ops = new long[(threads + 1) * PAD];
+        final long nanos = millis * 1000000L;
+
+        // The deadline is taken from the start time that runTimed()
+        // records, since on a busy machine the main Thread may not
+        // run again until the Threads are done.
+        long elapsed = CounterScalingBenchmark.runTimed(threads, new CounterScalingBenchmark.TimedBody() {
+                public void run(int index, long startNanos) {
+                    LongCounter counter = counters[index];
+                    long deadline = startNanos + nanos;
+                    long count = 0;
+                    try {
+                        if (index < readers) {
+                            long sink = 0;
+                            do {
+                                for (int i = 0; i < 4 * CYCLES_PER_CHECK; ++i)
+                                    sink += counter.get();
+                                count += 4 * CYCLES_PER_CHECK;
+                            } while (System.nanoTime() < deadline);
+                            sSink = sink;
+                        } else {
+                            do {
+                                for (int i = 0; i < CYCLES_PER_CHECK; ++i) {
+                                    counter.incrementAndGet();
+                                    counter.getAndIncrement();
+                                    counter.decrementAndGet();
+                                    counter.getAndDecrement();
+                                }
+                                count += 4 * CYCLES_PER_CHECK;
+                            } while (System.nanoTime() < deadline);
+                        }
+                    } finally {
+                        ops[(index + 1) * PAD] = count;
+                    }
+                }
+            });
+        double seconds = elapsed / 1e9;
+
+        long reads = 0;
+        long writes = 0;
+        for (int t = 0; t < threads; ++t)
+            if (t < readers)
+                reads += ops[(t + 1) * PAD];
+            else
+                writes += ops[(t + 1) * PAD];
+
+        for (LongCounter counter : counters)
+            if (counter.get() != 0)
+                throw new IllegalStateException("counter is " + counter.get()
+                                                + " rather than 0");
+
+        return new Result(reads / seconds, writes / seconds);
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CounterScalingBenchmark.parseOptions(args);
+
+        String[] counters = CounterScalingBenchmark.option(options, "counters",
+            "READ_WRITE_LOCK,SYNCHRONIZED,CAS,STRIPED,ATOMIC_LONG");
+        String[] groups = CounterScalingBenchmark.option(options, "groups", "1:0,0:1,1:1,3:1,1:3");
+        String[] sharings = CounterScalingBenchmark.option(options, "sharing", "SHARED");
+        long millis = Long.parseLong(CounterScalingBenchmark.option(options, "millis", "200")[0]);
+        int warmups = Integer.parseInt(CounterScalingBenchmark.option(options, "warmups", "1")[0]);
+        int trials = Integer.parseInt(CounterScalingBenchmark.option(options, "trials", "3")[0]);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println(String.format("%-16s %-8s %7s %7s %14s %14s",
+                                         "counter", "sharing", "readers",
+                                         "writers", "reads/s", "writes/s"));
+
+        for (String name : counters)
+            for (String sharing : sharings)
+                for (String group : groups) {
+                    String[] sizes = group.split(":");
+                    int readers = Integer.parseInt(sizes[0]);
+                    int writers = Integer.parseInt(sizes[1]);
+                    int threads = readers + writers;
+                    double bestReads = 0;
+                    double bestWrites = 0;
+
+                    for (int trial = 0; trial < warmups + trials; ++trial) {
+                        List<Object> padding = new ArrayList<Object>();
+                        LongCounter[] trialCounters;
+                        if (sharing.equals("PRIVATE"))
+                            trialCounters = makePrivateCounters(name, threads, padding);
+                        else if (sharing.equals("SHARED")) {
+                            trialCounters = new LongCounter[threads];
+                            Arrays.fill(trialCounters, makeCounter(name));
+                        } else
+                            throw new IllegalArgumentException("unknown sharing " + sharing);
+
+                        Result result = runTrial(trialCounters, readers, writers, millis);
+                        // The best trial is the one with the highest
+                        // total throughput.
+                        if (trial >= warmups
+                            && result.mReadsPerSecond + result.mWritesPerSecond
+                               > bestReads + bestWrites) {
+                            bestReads = result.mReadsPerSecond;
+                            bestWrites = result.mWritesPerSecond;
+                        }
+                    }
+
+                    System.out.println(String.format("%-16s %-8s %7d %7d %14.0f %14.0f",
+                                                     name, sharing, readers,
+                                                     writers, bestReads,
+                                                     bestWrites));
+                }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @class CasSimpleAtomicLongTest
+ *
+ * @brief Tests the methods CasSimpleAtomicLong adds to the
+ *        LongCounter ones, which SimpleAtomicLongSingleThreadedTest and
+ *        SimpleAtomicLongMultithreadedTest test for every
+ *        Implementation.
+ */
+public class CasSimpleAtomicLongTest {
+    /**
+     * test addAndGet()
+     */
+    @Test
+    public void addAndGetTest() {
+        for (long testValue : SimpleAtomicLongSingleThreadedTest.mTestValues) {
+            CasSimpleAtomicLong counter = new CasSimpleAtomicLong(testValue);
+            assertEquals(testValue + 10, counter.addAndGet(10));
+            assertEquals(testValue - 5, counter.addAndGet(-15));
+            assertEquals(testValue - 5, counter.get());
+        }
+    }
+
+    /**
+     * test compareAndSet()
+     */
+    @Test
+    public void compareAndSetTest() {
+        for (long testValue : SimpleAtomicLongSingleThreadedTest.mTestValues) {
+            CasSimpleAtomicLong counter = new CasSimpleAtomicLong(testValue);
+            assertFalse(counter.compareAndSet(testValue + 1, 42));
+            assertEquals(testValue, counter.get());
+            assertTrue(counter.compareAndSet(testValue, 42));
+            assertEquals(42, counter.get());
+        }
+    }
+
+    /**
+     * test updateAndGet()
+     */
+    @Test
+    public void updateAndGetTest() {
+        for (long testValue : SimpleAtomicLongSingleThreadedTest.mTestValues) {
+            CasSimpleAtomicLong counter = new CasSimpleAtomicLong(testValue);
+            long result = counter.updateAndGet(new LongUnaryOperator() {
+                    public long apply(long value) {
+                        return value * 3;
+                    }
+                });
+            assertEquals(testValue * 3, result);
+            assertEquals(testValue * 3, counter.get());
+        }
+    }
+
+    /**
+     * Tests for proper concurrency of {@code addAndGet()} and {@code
+     * updateAndGet()}, which must not lose any updates.
+     */
+    @Test
+    public void multiAddAndUpdateTest() throws InterruptedException {
+        final CasSimpleAtomicLong counter = new CasSimpleAtomicLong(0);
+        final int iterations = 100000;
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final boolean add = i % 2 == 0;
+            threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int j = 0; j < iterations; j++)
+                            if (add)
+                                counter.addAndGet(3);
+                            else
+                                counter.updateAndGet(new LongUnaryOperator() {
+                                        public long apply(long value) {
+                                            return value - 1;
+                                        }
+                                    });
+                    }
+                });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(2L * iterations * (3 - 1), counter.get());
+    }
+}
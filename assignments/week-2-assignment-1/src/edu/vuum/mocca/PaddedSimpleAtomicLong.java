@@ -0,0 +1,134 @@
+package edu.vuum.mocca;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * @class PaddedSimpleAtomicLongLeftPadding
+ *
+ * @brief Padding laid out before PaddedSimpleAtomicLong's value.
+ *        The JVM places a superclass's fields before its subclass's,
+ *        so padding has to be inherited to end up on the left.
+ */
+abstract class PaddedSimpleAtomicLongLeftPadding
+{
+    protected long mLeft1, mLeft2, mLeft3, mLeft4, mLeft5, mLeft6, mLeft7;
+}
+
+/**
+ * @class PaddedSimpleAtomicLongValue
+ *
+ * @brief Holds PaddedSimpleAtomicLong's value between the padding.
+ */
+abstract class PaddedSimpleAtomicLongValue extends PaddedSimpleAtomicLongLeftPadding
+{
+    /**
+     * The value that's manipulated atomically via the methods.
+     */
+    protected volatile long mValue;
+
+    PaddedSimpleAtomicLongValue(long initialValue) {
+        mValue = initialValue;
+    }
+}
+
+/**
+ * @class PaddedSimpleAtomicLong
+ *
+ * @brief This class implements the SimpleAtomicLong methods with
+ *        compare-and-swap like CasSimpleAtomicLong, but with seven
+ *        longs of padding on each side of its value, so the value has
+ *        a 64-byte cache line to itself.  Without the padding, the
+ *        values of counters allocated one after the other (e.g., one
+ *        per worker Thread in an array) can share a cache line, and
+ *        every update by one Thread then invalidates the line in the
+ *        caches of the Threads updating its neighbours ("false
+ *        sharing").  The padding costs about 120 bytes per counter, so
+ *        use it only for counters that different Threads update at
+ *        high rates; SimpleAtomicLongArray is more compact for a fixed
+ *        number of them.
+ */
+class PaddedSimpleAtomicLong extends PaddedSimpleAtomicLongValue
+    implements LongCounter
+{
+    /**
+     * Updates mValue atomically.
+     */
+    private static final AtomicLongFieldUpdater<PaddedSimpleAtomicLongValue> sUpdater =
+        AtomicLongFieldUpdater.newUpdater(PaddedSimpleAtomicLongValue.class, "mValue");
+
+    /**
+     * Padding laid out after the value.
+     */
+    protected long mRight1, mRight2, mRight3, mRight4, mRight5, mRight6, mRight7;
+
+    /**
+     * Creates a new PaddedSimpleAtomicLong with the given initial
+     * value.
+     */
+    public PaddedSimpleAtomicLong(long initialValue) {
+        super(initialValue);
+    }
+
+    /**
+     * Returns the sum of the padding, which keeps the JIT compiler
+     * and tools from treating the padding fields as unused.
+     */
+    long padding() {
+        return mLeft1 + mLeft2 + mLeft3 + mLeft4 + mLeft5 + mLeft6 + mLeft7
+            + mRight1 + mRight2 + mRight3 + mRight4 + mRight5 + mRight6 + mRight7;
+    }
+
+    /**
+     * @brief Gets the current value
+     *
+     * @returns The current value
+     */
+    public long get() {
+        return mValue;
+    }
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the updated value
+     */
+    public long decrementAndGet() {
+        return sUpdater.decrementAndGet(this);
+    }
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the previous value
+     */
+    public long getAndIncrement() {
+        return sUpdater.getAndIncrement(this);
+    }
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the previous value
+     */
+    public long getAndDecrement() {
+        return sUpdater.getAndDecrement(this);
+    }
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the updated value
+     */
+    public long incrementAndGet() {
+        return sUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * @brief Atomically adds @a delta to the current value
+     *
+     * @returns the updated value
+     */
+    public long addAndGet(long delta) {
+        return sUpdater.addAndGet(this, delta);
+    }
+}
@@ -0,0 +1,27 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @class PaddedSimpleAtomicLongTest
+ *
+ * @brief Tests the addAndGet() PaddedSimpleAtomicLong adds to the
+ *        LongCounter methods.
+ */
+public class PaddedSimpleAtomicLongTest {
+    /**
+     * test addAndGet(), and that the padding is left alone
+     */
+    @Test
+    public void addAndGetTest() {
+        for (long testValue : SimpleAtomicLongSingleThreadedTest.mTestValues) {
+            PaddedSimpleAtomicLong counter = new PaddedSimpleAtomicLong(testValue);
+            assertEquals(testValue + 10, counter.addAndGet(10));
+            assertEquals(testValue - 5, counter.addAndGet(-15));
+            assertEquals(testValue - 5, counter.get());
+            assertEquals(0, counter.padding());
+        }
+    }
+}
@@ -12,7 +12,7 @@ import java.util.concurrent.locks.Lock;
  *        java.util.concurrent.atomic.SimpleAtomicLong class using a
  *        ReentrantReadWriteLock to illustrate how they work.
  */
-class SimpleAtomicLong
+class SimpleAtomicLong implements LongCounter
 {
     /**
      * The value that's manipulated atomically via the methods.
@@ -0,0 +1,164 @@
+package edu.vuum.mocca;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @class SimpleAtomicLongArray
+ *
+ * @brief A fixed number of counters (e.g., one per worker Thread)
+ *        that are updated atomically by index.  Rather than an array
+ *        of SimpleAtomicLong objects, whose values can share cache
+ *        lines and so slow down Threads that update different
+ *        counters ("false sharing"), the counters are packed into a
+ *        single long array with a stride of 64 bytes, so no two of
+ *        them share a cache line.  The elements before the first
+ *        counter keep it off the line holding the array's header.
+ */
+class SimpleAtomicLongArray
+{
+    /**
+     * Number of longs between adjacent counters, i.e., one 64-byte
+     * cache line.
+     */
+    static final int STRIDE = 8;
+
+    /**
+     * The counters, where counter i lives at index (i + 1) * mStride.
+     */
+    private final AtomicLongArray mValues;
+
+    /**
+     * Number of counters.
+     */
+    private final int mLength;
+
+    /**
+     * Number of longs between adjacent counters.
+     */
+    private final int mStride;
+
+    /**
+     * Creates a new SimpleAtomicLongArray with @a length counters,
+     * all initially zero.
+     */
+    public SimpleAtomicLongArray(int length) {
+        this(length, STRIDE);
+    }
+
+    /**
+     * Creates a new SimpleAtomicLongArray with @a length counters
+     * that are @a stride longs apart.  A stride of 1 packs them
+     * together, which the benchmarks use to show the cost of false
+     * sharing.
+     */
+    SimpleAtomicLongArray(int length, int stride) {
+        if (length < 0)
+            throw new IllegalArgumentException("length = " + length);
+        if (stride <= 0)
+            throw new IllegalArgumentException("stride = " + stride);
+        mLength = length;
+        mStride = stride;
+        mValues = new AtomicLongArray((length + 1) * stride);
+    }
+
+    /**
+     * Returns the index in mValues of counter @a i.
+     */
+    private int index(int i) {
+        if (i < 0 || i >= mLength)
+            throw new IndexOutOfBoundsException("index " + i);
+        return (i + 1) * mStride;
+    }
+
+    /**
+     * Returns the number of counters.
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * @brief Gets the current value of counter @a i
+     *
+     * @returns The current value
+     */
+    public long get(int i) {
+        return mValues.get(index(i));
+    }
+
+    /**
+     * @brief Sets counter @a i to @a value
+     */
+    public void set(int i, long value) {
+        mValues.set(index(i), value);
+    }
+
+    /**
+     * @brief Atomically decrements by one counter @a i
+     *
+     * @returns the updated value
+     */
+    public long decrementAndGet(int i) {
+        return mValues.decrementAndGet(index(i));
+    }
+
+    /**
+     * @brief Atomically increments by one counter @a i
+     *
+     * @returns the previous value
+     */
+    public long getAndIncrement(int i) {
+        return mValues.getAndIncrement(index(i));
+    }
+
+    /**
+     * @brief Atomically decrements by one counter @a i
+     *
+     * @returns the previous value
+     */
+    public long getAndDecrement(int i) {
+        return mValues.getAndDecrement(index(i));
+    }
+
+    /**
+     * @brief Atomically increments by one counter @a i
+     *
+     * @returns the updated value
+     */
+    public long incrementAndGet(int i) {
+        return mValues.incrementAndGet(index(i));
+    }
+
+    /**
+     * @brief Atomically adds @a delta to counter @a i
+     *
+     * @returns the updated value
+     */
+    public long addAndGet(int i, long delta) {
+        return mValues.addAndGet(index(i), delta);
+    }
+
+    /**
+     * Returns the sum of the counters, which is exact only if no
+     * Thread updates them during the call.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < mLength; ++i)
+            sum += mValues.get((i + 1) * mStride);
+        return sum;
+    }
+
+    /**
+     * Returns the current values of the counters, e.g., "[1, 2, 3]".
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < mLength; ++i) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(mValues.get((i + 1) * mStride));
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,92 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @class SimpleAtomicLongArrayTest
+ *
+ * @brief Tests that the counters of a SimpleAtomicLongArray are
+ *        independent of each other, that its index-based methods
+ *        return the right values, and that no updates are lost when
+ *        each of several Threads updates its own counter and one
+ *        shared counter concurrently.
+ */
+public class SimpleAtomicLongArrayTest {
+    /**
+     * Tests each method on every counter, with both the default
+     * stride and a packed one.
+     */
+    @Test
+    public void singleThreadedTest() {
+        for (SimpleAtomicLongArray array : new SimpleAtomicLongArray[] {
+                new SimpleAtomicLongArray(4),
+                new SimpleAtomicLongArray(4, 1) }) {
+            assertEquals(4, array.length());
+
+            for (int i = 0; i < array.length(); ++i) {
+                assertEquals(0, array.get(i));
+                assertEquals(1, array.incrementAndGet(i));
+                assertEquals(1, array.getAndIncrement(i));
+                assertEquals(2, array.getAndDecrement(i));
+                assertEquals(0, array.decrementAndGet(i));
+                assertEquals(10 * i, array.addAndGet(i, 10 * i));
+            }
+            assertEquals("[0, 10, 20, 30]", array.toString());
+            assertEquals(60, array.sum());
+
+            array.set(3, -1);
+            assertEquals(-1, array.get(3));
+            assertEquals(20, array.get(2));
+        }
+    }
+
+    /**
+     * Tests that indices outside the array are rejected rather than
+     * updating the padding.
+     */
+    @Test
+    public void indexTest() {
+        SimpleAtomicLongArray array = new SimpleAtomicLongArray(2);
+        for (int i : new int[] { -1, 2 })
+            try {
+                array.incrementAndGet(i);
+                fail("index " + i + " wasn't rejected");
+            } catch (IndexOutOfBoundsException e) {
+                // Expected.
+            }
+    }
+
+    /**
+     * Tests that no updates are lost when each Thread increments its
+     * own counter and also increments and decrements counter 0.
+     */
+    @Test
+    public void multiThreadedTest() throws InterruptedException {
+        final int threads = 4;
+        final int iterations = 100000;
+        final SimpleAtomicLongArray array = new SimpleAtomicLongArray(threads + 1);
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int index = t + 1;
+            workers[t] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < iterations; ++i) {
+                            array.incrementAndGet(index);
+                            array.incrementAndGet(0);
+                            array.decrementAndGet(0);
+                        }
+                    }
+                });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+
+        assertEquals(0, array.get(0));
+        for (int t = 1; t <= threads; ++t)
+            assertEquals(iterations, array.get(t));
+    }
+}
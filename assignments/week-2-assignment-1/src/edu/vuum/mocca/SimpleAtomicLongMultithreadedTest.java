@@ -2,20 +2,27 @@ package edu.vuum.mocca;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 /**
  * @class SimpleAtomicLongMultithreadedTest
  *
  * @brief Test the logic and multithreaded implementation of the
  *        SimpleAtomicLong class by having concurrent threads call the
- *        SimpleAtomicLong instance for various methods.
+ *        SimpleAtomicLong instance for various methods, once for each
+ *        SimpleAtomicLongFactory Implementation.
  */
+@RunWith(Parameterized.class)
 public class SimpleAtomicLongMultithreadedTest {
 
     /**
@@ -45,7 +52,7 @@ public class SimpleAtomicLongMultithreadedTest {
      * defined as "volatile" to ensure proper visibility of its fields
      * after construction.
      */
-    static volatile SimpleAtomicLong mCounter;
+    static volatile LongCounter mCounter;
     
     /**
      * Runnable commands that use the mCounter methods
@@ -71,6 +78,27 @@ public class SimpleAtomicLongMultithreadedTest {
      * individual command.
      */
     final int numThreads = 5;
+
+    /**
+     * The Implementation being tested.
+     */
+    private final SimpleAtomicLongFactory.Implementation mImplementation;
+
+    /**
+     * Returns each SimpleAtomicLongFactory Implementation as a set of
+     * parameters.
+     */
+    @Parameters
+    public static Collection<Object[]> implementations() {
+        return SimpleAtomicLongSingleThreadedTest.implementations();
+    }
+
+    /**
+     * Test the counters of @a implementation.
+     */
+    public SimpleAtomicLongMultithreadedTest(SimpleAtomicLongFactory.Implementation implementation) {
+        mImplementation = implementation;
+    }
 	
     /**
      * @class RunTest
@@ -133,16 +161,11 @@ public class SimpleAtomicLongMultithreadedTest {
     }	
     
     /**
-     * Runs prior to all tests. Creates a static instance of
-     * SimpleAtomicLong and all runnable commands.
+     * Runs prior to all tests. Creates all runnable commands, which
+     * use whichever mCounter setUp() made.
      */
     @BeforeClass
     public static void setUpBeforeClass() throws Exception {
-        /**
-         * Instance of SimpleAtomicLong class
-         */
-        mCounter = new SimpleAtomicLong(INITIAL_VALUE);
-		
         /**
          * Runnable commands that execute get(), incrementAndGet(),
          * getAndIncrement(), decrementAndGet(), getAndDecrement(),
@@ -156,10 +179,13 @@ public class SimpleAtomicLongMultithreadedTest {
     }
 	
     /**
-     * Runs prior to each test. Stores the pre-test value of the mCounter.
+     * Runs prior to each test. Makes a counter of the Implementation
+     * being tested and stores the pre-test value of the mCounter.
      */
     @Before
     public void setUp() throws Exception {
+        mCounter = SimpleAtomicLongFactory.makeAtomicLong(mImplementation,
+                                                          INITIAL_VALUE);
         preTestValue = mCounter.get();
     }
 	
@@ -2,15 +2,23 @@ package edu.vuum.mocca;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 /**
  * @brief SimpleAtomicLongSingleThreadedTest
  *
  * @class Evalutes the logic of the SimpleAtomicLong class by testing
- *        every method with each of the values in mTestValues.
+ *        every method with each of the values in mTestValues, once for
+ *        each SimpleAtomicLongFactory Implementation.
  */
+@RunWith(Parameterized.class)
 public class SimpleAtomicLongSingleThreadedTest {
     /*
      * Test possible edge cases at 0, and a large negative and
@@ -18,14 +26,47 @@ public class SimpleAtomicLongSingleThreadedTest {
      */
     final static long[] mTestValues = { -100, -1, 0, 1, 100 };
 
+    /**
+     * The Implementation being tested.
+     */
+    private final SimpleAtomicLongFactory.Implementation mImplementation;
+
+    /**
+     * Returns each SimpleAtomicLongFactory Implementation as a set of
+     * parameters.
+     */
+    @Parameters
+    public static Collection<Object[]> implementations() {
+        Collection<Object[]> implementations = new ArrayList<Object[]>();
+        for (SimpleAtomicLongFactory.Implementation implementation
+                 : SimpleAtomicLongFactory.Implementation.values())
+            implementations.add(new Object[] { implementation });
+        return implementations;
+    }
+
+    /**
+     * Test the counters of @a implementation.
+     */
+    public SimpleAtomicLongSingleThreadedTest(SimpleAtomicLongFactory.Implementation implementation) {
+        mImplementation = implementation;
+    }
+
+    /**
+     * Factory method that makes the counter to test.
+     */
+    private LongCounter makeAtomicLong(long initialValue) {
+        return SimpleAtomicLongFactory.makeAtomicLong(mImplementation,
+                                                      initialValue);
+    }
+
     /**
      * Test Constructor.
      */
     @Test
     public void constructorTest() {
         for (long testValue : mTestValues) {
-            SimpleAtomicLong counter =
-                new SimpleAtomicLong(testValue);
+            LongCounter counter =
+                makeAtomicLong(testValue);
             Assert.assertNotNull(counter);
             assertEquals(testValue, counter.get());
         }
@@ -37,7 +78,7 @@ public class SimpleAtomicLongSingleThreadedTest {
     @Test
     public void getTest() {
         for (long testValue : mTestValues) {
-            SimpleAtomicLong counter = new SimpleAtomicLong(testValue);
+            LongCounter counter = makeAtomicLong(testValue);
             assertEquals(testValue,
                          counter.get());
         }
@@ -49,8 +90,8 @@ public class SimpleAtomicLongSingleThreadedTest {
     @Test
     public void decrementAndGetTest() {
         for (long testValue : mTestValues) {
-            final SimpleAtomicLong counter =
-                new SimpleAtomicLong(testValue);
+            final LongCounter counter =
+                makeAtomicLong(testValue);
             decrementAndGetTestLogic(counter,
                                      testValue,
                                      testValue - 1,
@@ -64,8 +105,8 @@ public class SimpleAtomicLongSingleThreadedTest {
     @Test
     public void getAndDecrementTest() {
         for (long testValue : mTestValues) {
-            final SimpleAtomicLong counter =
-                new SimpleAtomicLong(testValue);
+            final LongCounter counter =
+                makeAtomicLong(testValue);
             getAndDecrementTestLogic(counter,
                                      testValue,
                                      testValue,
@@ -79,8 +120,8 @@ public class SimpleAtomicLongSingleThreadedTest {
     @Test
 	public void incrementAndGetTestTest() {
         for (long testValue : mTestValues) {
-            final SimpleAtomicLong counter =
-                new SimpleAtomicLong(testValue);
+            final LongCounter counter =
+                makeAtomicLong(testValue);
             incrementAndGetTestLogic(counter,
                                      testValue,
                                      testValue + 1,
@@ -94,8 +135,8 @@ public class SimpleAtomicLongSingleThreadedTest {
     @Test
     public void getAndIncrementTest() {
         for (long testValue : mTestValues) {
-            final SimpleAtomicLong counter =
-                new SimpleAtomicLong(testValue);
+            final LongCounter counter =
+                makeAtomicLong(testValue);
             getAndIncrementTestLogic(counter,
                                      testValue,
                                      testValue,
@@ -138,7 +179,7 @@ public class SimpleAtomicLongSingleThreadedTest {
      * @param postValue
      *           The expected 'post' value
      */
-    public void decrementAndGetTestLogic(SimpleAtomicLong simpleAtomicLong,
+    public void decrementAndGetTestLogic(LongCounter simpleAtomicLong,
                                          long preValue, long resultValue, long postValue) {
         long pre = simpleAtomicLong.get();
         long result = simpleAtomicLong.decrementAndGet();
@@ -165,7 +206,7 @@ public class SimpleAtomicLongSingleThreadedTest {
      * @param postValue
      *           The expected 'post' value
      */
-    public void getAndDecrementTestLogic(SimpleAtomicLong simpleAtomicLong,
+    public void getAndDecrementTestLogic(LongCounter simpleAtomicLong,
                                          long preValue, long resultValue, long postValue) {
         long pre = simpleAtomicLong.get();
         long result = simpleAtomicLong.getAndDecrement();
@@ -192,7 +233,7 @@ public class SimpleAtomicLongSingleThreadedTest {
      * @param postValue
      *           The expected 'post' value
      */
-    public void incrementAndGetTestLogic(SimpleAtomicLong simpleAtomicLong,
+    public void incrementAndGetTestLogic(LongCounter simpleAtomicLong,
                                          long preValue, long resultValue, long postValue) {
         long pre = simpleAtomicLong.get();
         long result = simpleAtomicLong.incrementAndGet();
@@ -219,7 +260,7 @@ public class SimpleAtomicLongSingleThreadedTest {
      * @param postValue
      *           The expected 'post' value
      */
-    public void getAndIncrementTestLogic(SimpleAtomicLong simpleAtomicLong,
+    public void getAndIncrementTestLogic(LongCounter simpleAtomicLong,
                                          long preValue, long resultValue, long postValue) {
         long pre = simpleAtomicLong.get();
         long result = simpleAtomicLong.getAndIncrement();
@@ -7,7 +7,11 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ SimpleAtomicLongMultithreadedTest.class,
-		SimpleAtomicLongSingleThreadedTest.class })
+		SimpleAtomicLongSingleThreadedTest.class,
+		CasSimpleAtomicLongTest.class,
+		StripedAtomicLongTest.class,
+		PaddedSimpleAtomicLongTest.class,
+		SimpleAtomicLongArrayTest.class })
 /**
  * @class SimpleAtomicLongTest
  *
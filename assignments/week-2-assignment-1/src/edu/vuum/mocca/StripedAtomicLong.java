@@ -0,0 +1,203 @@
+package edu.vuum.mocca;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @class StripedAtomicLong
+ *
+ * @brief This class implements the SimpleAtomicLong methods for a
+ *        counter that many Threads update at once.  Rather than
+ *        making every Thread update the same long (whose cache line
+ *        then bounces between the cores), each update is added to one
+ *        of several "cells", chosen by a per-Thread probe value, and
+ *        the value of the counter is the sum of the cells.  The cells
+ *        are padded so that no two of them share a cache line.  A
+ *        Thread whose compare-and-swap on its cell fails because
+ *        another Thread updated the cell at the same time rehashes its
+ *        probe, so Threads that collide spread out over the cells.
+ *
+ *        Consistency model: no update is ever lost, and the value is
+ *        exact whenever no Threads are updating the counter, e.g.,
+ *        after they've been joined.  While there are concurrent
+ *        updates, however, get() reads the cells one at a time, so it
+ *        returns a value that includes every update that finished
+ *        before the call and any subset of the concurrent ones.  That
+ *        value may be one the counter never actually held (e.g., it
+ *        can include a concurrent decrement but not the increment
+ *        that preceded it), so it's not linearizable.  Likewise, the
+ *        value returned by incrementAndGet() and the other update
+ *        methods is computed from a get() made just after the update,
+ *        so it includes the update but isn't unique to the calling
+ *        Thread, and reading every cell makes those methods much
+ *        slower than increment(), decrement() and add(), which don't
+ *        return anything.  Use CasSimpleAtomicLong if the returned
+ *        values matter, e.g., to generate unique ids.
+ */
+class StripedAtomicLong implements LongCounter
+{
+    /**
+     * Number of longs between adjacent cells, which is enough to
+     * keep them on different (pairs of) cache lines.
+     */
+    private static final int CELL_PAD = 16;
+
+    /**
+     * Source of the initial per-Thread probes.
+     */
+    private static final AtomicInteger sProbeSeed = new AtomicInteger();
+
+    /**
+     * The calling Thread's probe, which selects its cell.  It's held
+     * in a one-element array so it can be rehashed without another
+     * ThreadLocal lookup.
+     */
+    private static final ThreadLocal<int[]> sProbe =
+        new ThreadLocal<int[]>() {
+            protected int[] initialValue() {
+                // Spread consecutive seeds over the cells.
+                int probe = sProbeSeed.getAndIncrement() * 0x9e3779b9;
+                return new int[] { probe == 0 ? 1 : probe };
+            }
+        };
+
+    /**
+     * The cells, where cell i lives at index (i + 1) * CELL_PAD.
+     */
+    private final AtomicLongArray mCells;
+
+    /**
+     * Used to map a probe to a cell.
+     */
+    private final int mMask;
+
+    /**
+     * Creates a new StripedAtomicLong with the given initial value
+     * and a cell for each of twice the number of available
+     * processors.
+     */
+    public StripedAtomicLong(long initialValue) {
+        this(initialValue, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new StripedAtomicLong with the given initial value
+     * and @a cells cells, rounded up to the next power of two.
+     */
+    public StripedAtomicLong(long initialValue, int cells) {
+        int size = 1;
+        while (size < cells)
+            size <<= 1;
+
+        mMask = size - 1;
+        mCells = new AtomicLongArray((size + 2) * CELL_PAD);
+        mCells.set(CELL_PAD, initialValue);
+    }
+
+    /**
+     * Add @a delta to the calling Thread's cell, moving the Thread to
+     * another cell if it collides with another Thread.  Unlike
+     * addAndGet(), it doesn't read the other cells, so it's the
+     * method to use when many Threads update the counter at once.
+     */
+    public void add(long delta) {
+        int[] probe = sProbe.get();
+        for (;;) {
+            int index = ((probe[0] & mMask) + 1) * CELL_PAD;
+            long value = mCells.get(index);
+            if (mCells.compareAndSet(index, value, value + delta))
+                return;
+
+            // Rehash the probe with a xorshift step.
+            int p = probe[0];
+            p ^= p << 13;
+            p ^= p >>> 17;
+            p ^= p << 5;
+            probe[0] = p;
+        }
+    }
+
+    /**
+     * Add one to the counter without reading it (see add()).
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Subtract one from the counter without reading it (see add()).
+     */
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * Returns the sum of the cells (see the class comment for its
+     * consistency under concurrent updates).
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mMask; ++i)
+            sum += mCells.get((i + 1) * CELL_PAD);
+        return sum;
+    }
+
+    /**
+     * @brief Gets the current value, i.e., sum()
+     * 
+     * @returns The current value
+     */
+    public long get() {
+        return sum();
+    }
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the updated value, as of just after the decrement
+     */
+    public long decrementAndGet() {
+        add(-1);
+        return sum();
+    }
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the previous value, as of just after the increment
+     */
+    public long getAndIncrement() {
+        add(1);
+        return sum() - 1;
+    }
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the previous value, as of just after the decrement
+     */
+    public long getAndDecrement() {
+        add(-1);
+        return sum() + 1;
+    }
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the updated value, as of just after the increment
+     */
+    public long incrementAndGet() {
+        add(1);
+        return sum();
+    }
+
+    /**
+     * @brief Atomically adds @a delta to the current value
+     *
+     * @returns the updated value, as of just after the addition
+     */
+    public long addAndGet(long delta) {
+        add(delta);
+        return sum();
+    }
+}
@@ -0,0 +1,60 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @class StripedAtomicLongTest
+ *
+ * @brief Tests the methods StripedAtomicLong adds to the LongCounter
+ *        ones, and has more Threads than cells update one concurrently
+ *        so they collide and rehash.
+ */
+public class StripedAtomicLongTest {
+    /**
+     * test increment(), decrement(), add() and addAndGet()
+     */
+    @Test
+    public void addTest() {
+        for (long testValue : SimpleAtomicLongSingleThreadedTest.mTestValues) {
+            StripedAtomicLong counter = new StripedAtomicLong(testValue, 4);
+            counter.increment();
+            counter.increment();
+            counter.decrement();
+            counter.add(10);
+            assertEquals(testValue + 11, counter.sum());
+            assertEquals(testValue + 6, counter.addAndGet(-5));
+            assertEquals(testValue + 6, counter.get());
+        }
+    }
+
+    /**
+     * Tests that no increments or decrements are lost when 8 Threads
+     * share 2 cells.
+     */
+    @Test
+    public void multiCollidingTest() throws InterruptedException {
+        final StripedAtomicLong counter = new StripedAtomicLong(0, 2);
+        final int iterations = 100000;
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final boolean up = i % 4 != 0;
+            threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int j = 0; j < iterations; j++)
+                            if (up)
+                                counter.increment();
+                            else
+                                counter.decrement();
+                    }
+                });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals((6 - 2) * iterations, counter.sum());
+    }
+}
@@ -0,0 +1,128 @@
+package edu.vuum.mocca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @class PalantirSchedulingBenchmark
+ *
+ * @brief Measures the latency of gazing sessions (the time to
+ *        acquire a Palantir plus the time spent gazing into it) for
+ *        each PalantirManager Scheduling, when the Palantiri take
+ *        different times to gaze into, like those of
+ *        PalantirManagerUnitTest.  Each of -users Threads runs
+ *        -sessions sessions, and the median, 99th percentile and
+ *        maximum latencies are reported.  FASTEST_AVAILABLE helps
+ *        most when there are fewer users than Palantiri, so that
+ *        there's a choice to make.  Options are given as "-name
+ *        value" pairs (see SemaphoreBenchmark), e.g.:
+ *
+ *        java edu.vuum.mocca.PalantirSchedulingBenchmark
+ *             -gazeMillis 1,15,10 -users 1,2,3 -sessions 200
+ */
+public class PalantirSchedulingBenchmark {
+    /**
+     * Makes a Palantir that takes @a millis milliseconds to gaze
+     * into.
+     */
+    static Palantir makePalantir(final int millis) {
+        return new Palantir() {
+            public void gaze() {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                }
+            }
+
+            public String name() {
+                return millis + "ms";
+            }
+        };
+    }
+
+    /**
+     * Runs @a users Threads that each run @a sessions sessions on
+     * @a manager, and returns the latency of every session in
+     * nanoseconds, sorted.
+     */
+    static long[] runTrial(final PalantirManager manager,
+                           int users,
+                           final int sessions) throws InterruptedException {
+        final long[][] latencies = new long[users][sessions];
+
+        Thread[] threads = new Thread[users];
+        for (int u = 0; u < users; ++u) {
+            final long[] userLatencies = latencies[u];
+            threads[u] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < sessions; ++i) {
+                            long start = System.nanoTime();
+                            Palantir palantir = manager.acquirePalantir();
+                            palantir.gaze();
+                            manager.releasePalantir(palantir);
+                            userLatencies[i] = System.nanoTime() - start;
+                        }
+                    }
+                });
+            threads[u].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        long[] all = new long[users * sessions];
+        for (int u = 0; u < users; ++u)
+            System.arraycopy(latencies[u], 0, all, u * sessions, sessions);
+        Arrays.sort(all);
+        return all;
+    }
+
+    /**
+     * Returns the @a percentile percentile of the sorted @a values in
+     * milliseconds.
+     */
+    static double percentileMillis(long[] values, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * values.length) - 1;
+        return values[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SemaphoreBenchmark.parseOptions(args);
+
+        String[] schedulings = SemaphoreBenchmark.option(options, "schedulings",
+                                                         "FIRST_AVAILABLE,FASTEST_AVAILABLE");
+        String[] gazeMillis = SemaphoreBenchmark.option(options, "gazeMillis", "1,15,10");
+        String[] userCounts = SemaphoreBenchmark.option(options, "users", "1,2,3,6");
+        int sessions = Integer.parseInt(SemaphoreBenchmark.option(options, "sessions", "100")[0]);
+
+        System.out.println(String.format("%-18s %5s %10s %10s %10s",
+                                         "scheduling", "users",
+                                         "p50 ms", "p99 ms", "max ms"));
+
+        for (String name : schedulings) {
+            PalantirManager.Scheduling scheduling =
+                PalantirManager.Scheduling.valueOf(name);
+
+            for (String userCount : userCounts) {
+                int users = Integer.parseInt(userCount);
+                List<Palantir> palantiri = new ArrayList<Palantir>();
+                for (String millis : gazeMillis)
+                    palantiri.add(makePalantir(Integer.parseInt(millis)));
+                PalantirManager manager = new PalantirManager(palantiri, scheduling);
+
+                long[] latencies = runTrial(manager, users, sessions);
+                System.out.println(String.format("%-18s %5d %10.1f %10.1f %10.1f",
+                                                 name, users,
+                                                 percentileMillis(latencies, 50),
+                                                 percentileMillis(latencies, 99),
+                                                 percentileMillis(latencies, 100)));
+                for (PalantirManager.PalantirMetrics metrics : manager.getMetrics())
+                    System.out.println("    " + metrics);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package edu.vuum.mocca;
+
+import java.util.Map;
+
+/**
+ * @class PingPongBenchmark
+ *
+ * @brief Measures the rate at which two Threads can hand control back
+ *        and forth with a pair of SimpleSemaphores, as in
+ *        PingPongRight, for each SimpleSemaphoreFactory Implementation
+ *        and fairness policy.  Each hand-off is a release() that the
+ *        other Thread is waiting in acquire() for, so it measures how
+ *        fast a waiting Thread gets going again, which is where the
+ *        SPIN_THEN_PARK Implementation avoids parking.  For the
+ *        FastPathSimpleSemaphore Implementations it also reports the
+ *        percentage of acquisitions that parked, which a
+ *        SemaphoreProfiler records in an extra, untimed trial, so
+ *        that every Implementation is timed without a profiler
+ *        attached.  Spinning only pays off on a machine with several
+ *        cores.  Options are given as "-name value" pairs (see
+ *        SemaphoreBenchmark), e.g.:
+ *
+ *        java edu.vuum.mocca.PingPongBenchmark
+ *             -implementations FAST_PATH,SPIN_THEN_PARK
+ *             -fair true,false -rounds 100000
+ */
+public class PingPongBenchmark {
+    /**
+     * Returns the elapsed nanoseconds for two Threads to play @a
+     * rounds rounds of ping-pong with @a ping, which must start with
+     * one permit, and @a pong, which must start with none.
+     */
+    static long runTrial(final CountingSemaphore ping,
+                         final CountingSemaphore pong,
+                         final int rounds) throws Exception {
+        final CountingSemaphore[][] players = { { ping, pong }, { pong, ping } };
+        return SemaphoreBenchmark.runTimed(2, new SemaphoreBenchmark.TimedBody() {
+                public void run(int index, long startNanos) throws Exception {
+                    CountingSemaphore[] player = players[index];
+                    for (int i = 0; i < rounds; ++i) {
+                        player[0].acquire();
+                        player[1].release();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SemaphoreBenchmark.parseOptions(args);
+
+        String[] implementations = SemaphoreBenchmark.option(options, "implementations",
+                                                             "LOCK_CONDITION,FAST_PATH,SPIN_THEN_PARK");
+        String[] fairs = SemaphoreBenchmark.option(options, "fair", "true,false");
+        int rounds = Integer.parseInt(SemaphoreBenchmark.option(options, "rounds", "100000")[0]);
+        int trials = Integer.parseInt(SemaphoreBenchmark.option(options, "trials", "3")[0]);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println(String.format("%-16s %-6s %14s %12s %8s",
+                                         "implementation", "fair",
+                                         "hand-offs/s", "ns/hand-off", "parked"));
+
+        for (String name : implementations) {
+            SimpleSemaphoreFactory.Implementation implementation =
+                SimpleSemaphoreFactory.Implementation.valueOf(name);
+
+            for (String fairOption : fairs) {
+                boolean fair = Boolean.parseBoolean(fairOption);
+                long best = Long.MAX_VALUE;
+
+                // The first trial warms up the JIT compiler, and the
+                // fastest of the rest is reported.
+                for (int trial = 0; trial <= trials; ++trial) {
+                    long nanos = runTrial(implementation.makeSemaphore(1, fair),
+                                          implementation.makeSemaphore(0, fair),
+                                          rounds);
+                    if (trial > 0 && nanos < best)
+                        best = nanos;
+                }
+
+                // Profile a separate trial, whose time isn't reported.
+                String parked = "-";
+                CountingSemaphore ping = implementation.makeSemaphore(1, fair);
+                CountingSemaphore pong = implementation.makeSemaphore(0, fair);
+                if (ping instanceof FastPathSimpleSemaphore) {
+                    SemaphoreProfiler profiler = new SemaphoreProfiler();
+                    ((FastPathSimpleSemaphore) ping).setProfiler(profiler);
+                    ((FastPathSimpleSemaphore) pong).setProfiler(profiler);
+                    runTrial(ping, pong, rounds);
+                    SemaphoreProfiler.Snapshot profile = profiler.snapshot();
+                    parked = String.format("%.0f%%", 100.0 * profile.getSlowAcquisitions()
+                                           / profile.getAcquisitions());
+                }
+
+                double handOffs = 2.0 * rounds;
+                System.out.println(String.format("%-16s %-6s %14.0f %12.1f %8s",
+                                                 name, fair,
+                                                 handOffs / (best / 1e9),
+                                                 best / handOffs,
+                                                 parked));
+            }
+        }
+    }
+}
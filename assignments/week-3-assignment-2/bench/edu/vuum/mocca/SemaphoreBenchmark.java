@@ -0,0 +1,175 @@
+package edu.vuum.mocca;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class SemaphoreBenchmark
+ *
+ * @brief Measures the throughput of acquire()/release() pairs on a
+ *        CountingSemaphore for each SimpleSemaphoreFactory
+ *        Implementation and fairness policy.  With as many -permits
+ *        as -threads (the default) no Thread ever has to wait, so it
+ *        measures the uncontended path, where the FAST_PATH
+ *        Implementation doesn't lock; with fewer permits Threads
+ *        contend for them.  Options are given as "-name value" pairs,
+ *        where the value can be a comma-separated list, e.g.:
+ *
+ *        java edu.vuum.mocca.SemaphoreBenchmark
+ *             -implementations LOCK_CONDITION,FAST_PATH
+ *             -fair true,false -threads 1,4 -ops 1000000
+ */
+public class SemaphoreBenchmark {
+    /**
+     * Parse "-name value" pairs from @a args.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-"))
+                throw new IllegalArgumentException("unexpected argument "
+                                                   + args[i]);
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Return the comma-separated values of option @a name, or @a
+     * defaultValue if it wasn't given.
+     */
+    static String[] option(Map<String, String> options,
+                           String name,
+                           String defaultValue) {
+        String value = options.get(name);
+        return (value == null ? defaultValue : value).split(",");
+    }
+
+    /**
+     * @class TimedBody
+     *
+     * @brief The work each Thread does in runTimed().
+     */
+    interface TimedBody {
+        /**
+         * Do the work of Thread @a index, which started with the
+         * others at @a startNanos.
+         */
+        void run(int index, long startNanos) throws Exception;
+    }
+
+    /**
+     * Runs @a body in @a threads Threads that start together and
+     * returns the elapsed nanoseconds from their start until the last
+     * one finished.
+     */
+    static long runTimed(int threads, final TimedBody body) throws InterruptedException {
+        // The time is taken by the Threads themselves, since on a
+        // busy machine the main Thread may not run again until
+        // they're done.
+        final AtomicLong startNanos = new AtomicLong();
+        final AtomicLong stopNanos = new AtomicLong();
+        final CyclicBarrier startBarrier = new CyclicBarrier(threads, new Runnable() {
+                public void run() {
+                    startNanos.set(System.nanoTime());
+                }
+            });
+        final CountDownLatch stopLatch = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; ++t) {
+            final int index = t;
+            new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            startBarrier.await();
+                            body.run(index, startNanos.get());
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        } finally {
+                            long now = System.nanoTime();
+                            for (long stop; now > (stop = stopNanos.get())
+                                     && !stopNanos.compareAndSet(stop, now); )
+                                continue;
+                            stopLatch.countDown();
+                        }
+                    }
+                }).start();
+        }
+
+        stopLatch.await();
+        return stopNanos.get() - startNanos.get();
+    }
+
+    /**
+     * Returns the elapsed nanoseconds for @a threads Threads to each
+     * acquire and release a permit of @a semaphore @a ops times.
+     */
+    static long runTrial(final CountingSemaphore semaphore,
+                         int threads,
+                         final int ops) throws Exception {
+        return runTimed(threads, new TimedBody() {
+                public void run(int index, long startNanos) throws Exception {
+                    for (int i = 0; i < ops; ++i) {
+                        semaphore.acquire();
+                        semaphore.release();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Main entry point that runs the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        String[] implementations = option(options, "implementations", "LOCK_CONDITION,FAST_PATH");
+        String[] fairs = option(options, "fair", "true,false");
+        String[] threadCounts = option(options, "threads", "1,2,4");
+        String permitsOption = option(options, "permits", "0")[0];
+        int ops = Integer.parseInt(option(options, "ops", "1000000")[0]);
+        int trials = Integer.parseInt(option(options, "trials", "3")[0]);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println(String.format("%-16s %-6s %7s %7s %14s %10s",
+                                         "implementation", "fair", "threads",
+                                         "permits", "pairs/s", "ns/pair"));
+
+        for (String name : implementations) {
+            SimpleSemaphoreFactory.Implementation implementation =
+                SimpleSemaphoreFactory.Implementation.valueOf(name);
+
+            for (String fairOption : fairs) {
+                boolean fair = Boolean.parseBoolean(fairOption);
+
+                for (String threadCount : threadCounts) {
+                    int threads = Integer.parseInt(threadCount);
+                    // A -permits of 0 means one per Thread.
+                    int permits = Integer.parseInt(permitsOption);
+                    if (permits == 0)
+                        permits = threads;
+                    long best = Long.MAX_VALUE;
+
+                    // The first trial warms up the JIT compiler, and
+                    // the fastest of the rest is reported.
+                    for (int trial = 0; trial <= trials; ++trial) {
+                        long nanos = runTrial(implementation.makeSemaphore(permits, fair),
+                                              threads,
+                                              ops);
+                        if (trial > 0)
+                            best = Math.min(best, nanos);
+                    }
+
+                    double pairs = (double) ops * threads;
+                    System.out.println(String.format("%-16s %-6s %7d %7d %14.0f %10.1f",
+                                                     name, fair, threads, permits,
+                                                     pairs / (best / 1e9),
+                                                     best / pairs));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package edu.vuum.mocca;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * @class CasSimpleAtomicLong
+ *
+ * @brief This class implements the SimpleAtomicLong methods without
+ *        any locks.  The value is kept in a volatile field, which
+ *        get() just reads, and the other methods update it with
+ *        atomic compare-and-swap (CAS) instructions via an
+ *        AtomicLongFieldUpdater, so a Thread is never blocked by
+ *        another Thread holding a lock.  It also provides
+ *        addAndGet(), compareAndSet() and updateAndGet().  Use
+ *        SimpleAtomicLongFactory to choose between it and the
+ *        ReentrantReadWriteLock version.
+ */
+class CasSimpleAtomicLong implements LongCounter
+{
+    /**
+     * Updates mValue atomically.  Using a field updater rather
+     * than an AtomicLong keeps the value in this object rather than
+     * in a separate one.
+     */
+    private static final AtomicLongFieldUpdater<CasSimpleAtomicLong> sUpdater =
+        AtomicLongFieldUpdater.newUpdater(CasSimpleAtomicLong.class, "mValue");
+
+    /**
+     * The value that's manipulated atomically via the methods.
+     */
+    private volatile long mValue;
+
+    /**
+     * Creates a new CasSimpleAtomicLong with the given initial value.
+     */
+    public CasSimpleAtomicLong(long initialValue) {
+        mValue = initialValue;
+    }
+
+    /**
+     * @brief Gets the current value
+     * 
+     * @returns The current value
+     */
+    public long get() {
+        return mValue;
+    }
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the updated value
+     */
+    public long decrementAndGet() {
+        return sUpdater.decrementAndGet(this);
+    }
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the previous value
+     */
+    public long getAndIncrement() {
+        return sUpdater.getAndIncrement(this);
+    }
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the previous value
+     */
+    public long getAndDecrement() {
+        return sUpdater.getAndDecrement(this);
+    }
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the updated value
+     */
+    public long incrementAndGet() {
+        return sUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * @brief Atomically adds @a delta to the current value
+     *
+     * @returns the updated value
+     */
+    public long addAndGet(long delta) {
+        return sUpdater.addAndGet(this, delta);
+    }
+
+    /**
+     * @brief Atomically sets the value to @a update if the current
+     *        value is @a expect
+     *
+     * @returns true if the value was set
+     */
+    public boolean compareAndSet(long expect, long update) {
+        return sUpdater.compareAndSet(this, expect, update);
+    }
+
+    /**
+     * @brief Atomically replaces the current value with the result
+     *        of applying @a function to it, retrying if another
+     *        Thread changes the value first
+     *
+     * @returns the updated value
+     */
+    public long updateAndGet(LongUnaryOperator function) {
+        long current, next;
+        do {
+            current = mValue;
+            next = function.apply(current);
+        } while (!sUpdater.compareAndSet(this, current, next));
+        return next;
+    }
+}
@@ -0,0 +1,33 @@
+package edu.vuum.mocca;
+
+/**
+ * @class CountingSemaphore
+ *
+ * @brief The methods of a counting semaphore, which the ReentrantLock
+ *        SimpleSemaphore and the FastPathSimpleSemaphore both
+ *        implement, so SimpleSemaphoreFactory can make either of them
+ *        without one depending on the other's state.
+ */
+public interface CountingSemaphore {
+    /**
+     * Acquire one permit from the semaphore in a manner that can be
+     * interrupted.
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * Acquire one permit from the semaphore in a manner that cannot be
+     * interrupted.
+     */
+    void acquireUninterruptibly();
+
+    /**
+     * Return one permit to the semaphore.
+     */
+    void release();
+
+    /**
+     * Return the number of permits available.
+     */
+    int availablePermits();
+}
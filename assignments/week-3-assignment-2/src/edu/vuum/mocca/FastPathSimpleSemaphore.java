@@ -0,0 +1,595 @@
+package edu.vuum.mocca;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @class FastPathSimpleSemaphore
+ *
+ * @brief This class implements the CountingSemaphore methods so that
+ *        acquiring an available permit and releasing a permit nobody
+ *        is waiting for don't lock anything.  The permits are kept in
+ *        an AtomicInteger, which acquire() decrements with a
+ *        compare-and-swap (CAS) when it's positive, and release()
+ *        increments.  Only a Thread that finds no permits takes the
+ *        ReentrantLock, joins mWaitQueue and waits on a Condition of
+ *        its own, and release() only takes the lock to signal such a
+ *        Thread if mWaiters says there is one.  Since mWaiters is
+ *        incremented before a waiting Thread's last try for a permit,
+ *        and release() reads it after adding its permit, either the
+ *        Thread sees the permit or release() sees the Thread, so no
+ *        wakeup is lost.  Since each waiting Thread has its own
+ *        Condition, release() wakes just the Thread that can take the
+ *        permits rather than all of them.
+ *
+ *        With the "fair" policy, Threads can only take the fast path
+ *        while no Thread is waiting, and the waiting Threads get
+ *        permits in the order they started waiting, as with a fair
+ *        java.util.concurrent.Semaphore, so only the Thread at the
+ *        head of mWaitQueue is woken.  A Thread that asks for
+ *        several permits at once therefore holds up the Threads
+ *        behind it until enough permits are released, rather than
+ *        being starved by smaller requests.  With the "non-fair"
+ *        policy, an arriving Thread can take permits ahead of the
+ *        waiting ones, which gives more throughput.
+ *
+ *        With the SPIN_THEN_PARK WaitStrategy, a Thread that finds no
+ *        permits first spins, retrying the fast path, then yields a
+ *        few times, and only then waits on its Condition, which saves
+ *        a park/unpark context switch when permits are held only
+ *        briefly, e.g., when two Threads hand a permit back and forth.
+ *        The spin time adapts to how long the permits have recently
+ *        been held: a spin that succeeds moves it towards twice the
+ *        time that spin took, and a spin that fails shortens it, so it
+ *        stays short when the permits are held for long.  Only the
+ *        acquire methods without a timeout spin, and Threads never
+ *        spin on a machine with a single processor, where the Thread
+ *        holding the permits can't release them while another Thread
+ *        spins.  Spinning Threads aren't on the slow path, so with the
+ *        fair policy they may take permits in any order until one of
+ *        them has to wait.
+ *
+ *        Use SimpleSemaphoreFactory to choose between it and the
+ *        ReentrantLock version.  A SemaphoreProfiler can be set to
+ *        measure how contended the semaphore is.
+ */
+public class FastPathSimpleSemaphore implements CountingSemaphore {
+    /**
+     * @class WaitStrategy
+     *
+     * @brief How a Thread that finds no permits waits for them.
+     */
+    public enum WaitStrategy {
+        /**
+         * Wait on a Condition right away.
+         */
+        PARK,
+
+        /**
+         * Spin for an adaptive time, then yield a few times, and then
+         * wait on a Condition.
+         */
+        SPIN_THEN_PARK
+    }
+
+    /**
+     * Shortest and longest times that a Thread spins for, and the
+     * time it spins for at first.
+     */
+    static final long MIN_SPIN_NANOS = 500;
+    static final long MAX_SPIN_NANOS = 50000;
+    static final long INITIAL_SPIN_NANOS = 5000;
+
+    /**
+     * Number of times a Thread yields after spinning.
+     */
+    static final int YIELDS = 2;
+
+    /**
+     * True if spinning can pay off, i.e., another processor can
+     * release the permits while a Thread spins.
+     */
+    private static final boolean MULTIPROCESSOR =
+        Runtime.getRuntime().availableProcessors() > 1;
+
+    /**
+     * @class Waiter
+     *
+     * @brief A Thread on the slow path, which waits on a Condition of
+     *        its own so that it can be woken alone.
+     */
+    private static class Waiter {
+        /**
+         * Number of permits the Thread wants.
+         */
+        final int mPermits;
+
+        /**
+         * Condition the Thread waits on.
+         */
+        final Condition mCondition;
+
+        /**
+         * True if the Thread has been signalled and hasn't woken up
+         * yet.  Guarded by mLock.
+         */
+        boolean mSignalled;
+
+        /**
+         * When the Thread was last signalled, or 0 if the semaphore
+         * wasn't being profiled then.  Guarded by mLock.
+         */
+        long mSignalNanos;
+
+        Waiter(int permits, Condition condition) {
+            mPermits = permits;
+            mCondition = condition;
+        }
+    }
+
+    /**
+     * The number of available permits.
+     */
+    private final AtomicInteger mPermits;
+
+    /**
+     * True if waiting Threads get permits in FIFO order and arriving
+     * Threads can't take them first.
+     */
+    private final boolean mFair;
+
+    /**
+     * Lock that protects the slow path, i.e., mWaitQueue and the
+     * Waiters' Conditions.
+     */
+    private final ReentrantLock mLock;
+
+    /**
+     * Number of Threads on the slow path, which release() reads to
+     * decide whether it must signal one.
+     */
+    private volatile int mWaiters;
+
+    /**
+     * The Threads on the slow path in the order they arrived.
+     * Guarded by mLock.
+     */
+    private final Queue<Waiter> mWaitQueue = new ArrayDeque<Waiter>();
+
+    /**
+     * Records how contended the semaphore is, or null if it isn't
+     * being profiled.
+     */
+    private volatile SemaphoreProfiler mProfiler;
+
+    /**
+     * How Threads that find no permits wait for them.
+     */
+    private final WaitStrategy mWaitStrategy;
+
+    /**
+     * How long Threads spin for with the SPIN_THEN_PARK WaitStrategy.
+     * It's updated without synchronization, so concurrent updates
+     * may be lost, which only makes it adapt a little slower.
+     */
+    private volatile long mSpinNanos = INITIAL_SPIN_NANOS;
+
+    /**
+     * Creates a FastPathSimpleSemaphore with @a permits initial
+     * permits and the fair policy if @a fair is true, whose Threads
+     * park right away when they find no permits.
+     */
+    public FastPathSimpleSemaphore(int permits, boolean fair) {
+        this(permits, fair, WaitStrategy.PARK);
+    }
+
+    /**
+     * Creates a FastPathSimpleSemaphore with @a permits initial
+     * permits, the fair policy if @a fair is true, and Threads that
+     * wait for permits as @a waitStrategy says.
+     */
+    public FastPathSimpleSemaphore(int permits,
+                                   boolean fair,
+                                   WaitStrategy waitStrategy) {
+        mPermits = new AtomicInteger(permits);
+        mFair = fair;
+        mLock = new ReentrantLock(fair);
+        mWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Take @a permits permits if that many are available, without
+     * blocking.
+     */
+    private boolean tryAcquirePermits(int permits) {
+        for (;;) {
+            int available = mPermits.get();
+            if (available < permits)
+                return false;
+            if (mPermits.compareAndSet(available, available - permits))
+                return true;
+        }
+    }
+
+    /**
+     * Returns true if the calling Thread may take the fast path,
+     * i.e., the policy is non-fair or no Thread is waiting.
+     */
+    private boolean mayBarge() {
+        return !mFair || mWaiters == 0;
+    }
+
+    /**
+     * Returns true if @a waiter may take permits from the slow path.
+     * Must be called with mLock held.
+     */
+    private boolean isTurn(Waiter waiter) {
+        return !mFair || mWaitQueue.peek() == waiter;
+    }
+
+    /**
+     * Profile the semaphore with @a profiler from now on, or stop
+     * profiling it if @a profiler is null.
+     */
+    public void setProfiler(SemaphoreProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    /**
+     * Returns the SemaphoreProfiler set by setProfiler(), or null.
+     */
+    public SemaphoreProfiler getProfiler() {
+        return mProfiler;
+    }
+
+    /**
+     * Record an acquisition on the fast path if the semaphore is
+     * being profiled.
+     */
+    private void profileFastPath() {
+        SemaphoreProfiler profiler = mProfiler;
+        if (profiler != null)
+            profiler.fastAcquired(mWaiters);
+    }
+
+    /**
+     * Returns how long Threads spin for with the SPIN_THEN_PARK
+     * WaitStrategy.
+     */
+    public long getSpinNanos() {
+        return mSpinNanos;
+    }
+
+    /**
+     * Returns @a nanos limited to the range of spin times.
+     */
+    private static long clampSpinNanos(long nanos) {
+        return Math.max(MIN_SPIN_NANOS, Math.min(MAX_SPIN_NANOS, nanos));
+    }
+
+    /**
+     * With the SPIN_THEN_PARK WaitStrategy, spin and then yield,
+     * retrying the fast path for @a permits permits, and adapt the
+     * spin time to how long the spin took.
+     *
+     * @return true if the permits were acquired.
+     */
+    private boolean spinForPermits(int permits) {
+        if (mWaitStrategy != WaitStrategy.SPIN_THEN_PARK)
+            return false;
+
+        long startNanos = System.nanoTime();
+        if (MULTIPROCESSOR) {
+            long spinNanos = mSpinNanos;
+            long elapsed;
+            do {
+                if (!mayBarge())
+                    return false;
+                if (tryAcquirePermits(permits)) {
+                    elapsed = System.nanoTime() - startNanos;
+                    mSpinNanos = clampSpinNanos(spinNanos
+                                                + ((2 * elapsed - spinNanos) >> 2));
+                    profileSpin(elapsed);
+                    return true;
+                }
+                elapsed = System.nanoTime() - startNanos;
+            } while (elapsed < spinNanos);
+
+            // The permits were held for longer than the spin, so spin
+            // for less next time.
+            mSpinNanos = clampSpinNanos(spinNanos - (spinNanos >> 2));
+        }
+
+        for (int i = 0; i < YIELDS; ++i) {
+            Thread.yield();
+            if (mayBarge() && tryAcquirePermits(permits)) {
+                profileSpin(System.nanoTime() - startNanos);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record an acquisition after spinning for @a nanos if the
+     * semaphore is being profiled.
+     */
+    private void profileSpin(long nanos) {
+        SemaphoreProfiler profiler = mProfiler;
+        if (profiler != null)
+            profiler.spinAcquired(nanos, mWaiters);
+    }
+
+    /**
+     * Throws IllegalArgumentException if @a permits is negative.
+     */
+    private static void checkPermits(int permits) {
+        if (permits < 0)
+            throw new IllegalArgumentException("permits = " + permits);
+    }
+
+    /**
+     * Acquire one permit from the semaphore in a manner that can be
+     * interrupted.
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * Acquire @a permits permits from the semaphore at once in a
+     * manner that can be interrupted.  No permits are taken until all
+     * of them are available.
+     */
+    public void acquire(int permits) throws InterruptedException {
+        checkPermits(permits);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (mayBarge() && tryAcquirePermits(permits)) {
+            profileFastPath();
+            return;
+        }
+        if (spinForPermits(permits))
+            return;
+        acquireSlowly(permits, true, false, 0);
+    }
+
+    /**
+     * Acquire one permit from the semaphore in a manner that cannot be
+     * interrupted.
+     */
+    public void acquireUninterruptibly() {
+        if (mayBarge() && tryAcquirePermits(1)) {
+            profileFastPath();
+            return;
+        }
+        if (spinForPermits(1))
+            return;
+        try {
+            acquireSlowly(1, false, false, 0);
+        } catch (InterruptedException e) {
+            // Not reached, since acquireSlowly() isn't interruptible
+            // when its interruptible parameter is false.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Acquire one permit if one is available without waiting.  With
+     * the fair policy it fails while other Threads are waiting, even
+     * if a permit is available, unlike
+     * java.util.concurrent.Semaphore.tryAcquire().
+     *
+     * @return true if the permit was acquired.
+     */
+    public boolean tryAcquire() {
+        if (mayBarge() && tryAcquirePermits(1)) {
+            profileFastPath();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquire one permit, waiting up to @a timeout for it in a
+     * manner that can be interrupted.
+     *
+     * @return true if the permit was acquired, false if the timeout
+     *         elapsed first.
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    /**
+     * Acquire @a permits permits at once, waiting up to @a timeout
+     * for them in a manner that can be interrupted.  No permits are
+     * taken unless all of them are.
+     *
+     * @return true if the permits were acquired, false if the
+     *         timeout elapsed first.
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        checkPermits(permits);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (mayBarge() && tryAcquirePermits(permits)) {
+            profileFastPath();
+            return true;
+        }
+        return acquireSlowly(permits, true, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Wait in mWaitQueue until @a permits permits can be taken
+     * at once, which can be interrupted if @a interruptible is true
+     * and gives up after @a nanos if @a timed is true.
+     *
+     * @return true if the permits were acquired, false if the timeout
+     *         elapsed first.
+     */
+    private boolean acquireSlowly(int permits,
+                                  boolean interruptible,
+                                  boolean timed,
+                                  long nanos) throws InterruptedException {
+        SemaphoreProfiler profiler = mProfiler;
+        long startNanos = profiler == null ? 0 : System.nanoTime();
+        boolean acquired = false;
+
+        mLock.lock();
+        try {
+            Waiter waiter = new Waiter(permits, mLock.newCondition());
+            ++mWaiters;
+            mWaitQueue.add(waiter);
+            if (profiler != null)
+                profiler.startedWaiting(mWaiters);
+
+            try {
+                for (boolean woken = false; ; woken = true) {
+                    if (isTurn(waiter) && tryAcquirePermits(permits))
+                        break;
+                    if (timed && nanos <= 0)
+                        return false;
+                    if (woken && profiler != null)
+                        profiler.futileWakeup();
+
+                    if (timed)
+                        nanos = waiter.mCondition.awaitNanos(nanos);
+                    else if (interruptible)
+                        waiter.mCondition.await();
+                    else
+                        waiter.mCondition.awaitUninterruptibly();
+
+                    // Only time the wakeups this Thread was signalled
+                    // for, not timeouts or spurious ones.
+                    if (waiter.mSignalled) {
+                        waiter.mSignalled = false;
+                        if (profiler != null && waiter.mSignalNanos != 0)
+                            profiler.wokeUp(waiter.mSignalNanos);
+                        waiter.mSignalNanos = 0;
+                    }
+                }
+                acquired = true;
+                return true;
+            } finally {
+                --mWaiters;
+                mWaitQueue.remove(waiter);
+                // Pass the turn (or the signal this Thread received,
+                // or the rest of a bulk release) on to the next
+                // waiting Thread if there are permits left.
+                if (mWaiters > 0 && mPermits.get() > 0)
+                    signalWaiters();
+                if (profiler != null)
+                    profiler.slowAcquired(System.nanoTime() - startNanos,
+                                          acquired,
+                                          mWaiters);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Wake up @a waiter unless it has already been signalled.  Must
+     * be called with mLock held.
+     */
+    private void signal(Waiter waiter) {
+        if (waiter.mSignalled)
+            return;
+        SemaphoreProfiler profiler = mProfiler;
+        if (profiler != null) {
+            waiter.mSignalNanos = System.nanoTime();
+            profiler.signalled();
+        }
+
+        waiter.mSignalled = true;
+        waiter.mCondition.signal();
+    }
+
+    /**
+     * Wake up the Thread(s) that may take the next permits.  Must be
+     * called with mLock held.
+     */
+    private void signalWaiters() {
+        if (mFair) {
+            // Only the Thread at the head of mWaitQueue may take
+            // permits, and only once there are enough of them.
+            Waiter head = mWaitQueue.peek();
+            if (head != null && head.mPermits <= mPermits.get())
+                signal(head);
+        } else {
+            // Wake the Threads, in the order they arrived, whose
+            // requests fit in the available permits, counting those
+            // already signalled as taking theirs, and skip those that
+            // want more than is left.
+            int available = mPermits.get();
+            for (Waiter waiter : mWaitQueue) {
+                if (available <= 0)
+                    break;
+                if (waiter.mSignalled)
+                    available -= waiter.mPermits;
+                else if (waiter.mPermits <= available) {
+                    signal(waiter);
+                    available -= waiter.mPermits;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return one permit to the semaphore.
+     */
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * Return @a permits permits to the semaphore.
+     */
+    public void release(int permits) {
+        checkPermits(permits);
+        mPermits.addAndGet(permits);
+        if (mWaiters > 0) {
+            mLock.lock();
+            try {
+                signalWaiters();
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Acquire all the permits that are available without waiting.
+     *
+     * @return The number of permits acquired.
+     */
+    public int drainPermits() {
+        for (;;) {
+            int available = mPermits.get();
+            if (available <= 0 || mPermits.compareAndSet(available, 0))
+                return Math.max(available, 0);
+        }
+    }
+
+    /**
+     * Returns the number of Threads waiting for a permit, which is
+     * only an estimate while Threads arrive or leave.
+     */
+    public int getQueueLength() {
+        return mWaiters;
+    }
+
+    /**
+     * Return the number of permits available.
+     */
+    public int availablePermits() {
+        return mPermits.get();
+    }
+}
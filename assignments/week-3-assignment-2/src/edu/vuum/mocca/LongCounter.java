@@ -0,0 +1,47 @@
+package edu.vuum.mocca;
+
+/**
+ * @class LongCounter
+ *
+ * @brief The methods of a long that's manipulated atomically, which
+ *        the ReentrantReadWriteLock SimpleAtomicLong and the lock-free
+ *        versions all implement, so SimpleAtomicLongFactory can make
+ *        any of them without one depending on another's state.
+ */
+interface LongCounter
+{
+    /**
+     * @brief Gets the current value
+     *
+     * @returns The current value
+     */
+    long get();
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the updated value
+     */
+    long decrementAndGet();
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the previous value
+     */
+    long getAndIncrement();
+
+    /**
+     * @brief Atomically decrements by one the current value
+     *
+     * @returns the previous value
+     */
+    long getAndDecrement();
+
+    /**
+     * @brief Atomically increments by one the current value
+     *
+     * @returns the updated value
+     */
+    long incrementAndGet();
+}
@@ -0,0 +1,17 @@
+package edu.vuum.mocca;
+
+/**
+ * @class LongUnaryOperator
+ *
+ * @brief A function from one long to another, which the
+ *        updateAndGet() method of a SimpleAtomicLong implementation
+ *        applies to its current value.  The function may be applied
+ *        more than once, if other Threads change the value while it's
+ *        being computed, so it shouldn't have side effects.
+ */
+interface LongUnaryOperator {
+    /**
+     * Returns the result of applying this function to @a value.
+     */
+    long apply(long value);
+}
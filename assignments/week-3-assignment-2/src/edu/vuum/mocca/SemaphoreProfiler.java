@@ -0,0 +1,423 @@
+package edu.vuum.mocca;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @class SemaphoreProfiler
+ *
+ * @brief Records how contended a FastPathSimpleSemaphore is: how many
+ *        acquisitions took the fast path, how many succeeded by
+ *        spinning (with the SPIN_THEN_PARK WaitStrategy), how many of
+ *        either barged ahead of waiting Threads, how long the Threads
+ *        on the slow path waited, how long a signalled Thread took to
+ *        wake up, and how many Threads waited at once.  A semaphore is
+ *        only profiled after FastPathSimpleSemaphore.setProfiler() is
+ *        called, and otherwise just checks that its profiler is null,
+ *        so profiling costs next to nothing while it's off.
+ *
+ *        The latencies are kept in histograms whose buckets are
+ *        powers of two: bucket 0 counts latencies of 0 (the fast path
+ *        isn't timed, so its acquisitions go there) and bucket i
+ *        counts latencies of at least 2^(i-1) and less than 2^i
+ *        nanoseconds.  The total time the Threads spent on the slow
+ *        path divided by the time profiled is the average number of
+ *        waiting Threads (by Little's law).  Call snapshot() to get
+ *        the numbers, which are only exact once the Threads using the
+ *        semaphore are done.
+ *
+ *        The number of waiting Threads over time is kept as a series
+ *        of samples, one taken whenever a Thread starts or stops
+ *        waiting, in a ring that holds the latest WAITER_SAMPLES of
+ *        them.  Each sample packs the nanoseconds since the profiler
+ *        was created above the number of waiters into one long, so a
+ *        sample is written with a single set().
+ */
+public class SemaphoreProfiler {
+    /**
+     * Number of buckets in each histogram, enough for any long.
+     */
+    static final int BUCKETS = 64;
+
+    /**
+     * Number of samples of the waiters count that are kept.
+     */
+    static final int WAITER_SAMPLES = 1024;
+
+    /**
+     * Number of low bits of a sample that hold the waiters count.
+     */
+    private static final int WAITER_BITS = 16;
+
+    /**
+     * Number of acquisitions that took the fast path.
+     */
+    private final AtomicLong mFastAcquisitions = new AtomicLong();
+
+    /**
+     * Number of fast-path and spinning acquisitions made while
+     * Threads were waiting on the slow path.
+     */
+    private final AtomicLong mBarges = new AtomicLong();
+
+    /**
+     * Number of acquisitions that succeeded while spinning.
+     */
+    private final AtomicLong mSpinAcquisitions = new AtomicLong();
+
+    /**
+     * Number of acquisitions that took the slow path.
+     */
+    private final AtomicLong mSlowAcquisitions = new AtomicLong();
+
+    /**
+     * Number of slow-path acquisitions that timed out or were
+     * interrupted.
+     */
+    private final AtomicLong mAbandoned = new AtomicLong();
+
+    /**
+     * Number of times a waiting Thread woke up and found it still
+     * couldn't take the permits it wanted.
+     */
+    private final AtomicLong mFutileWakeups = new AtomicLong();
+
+    /**
+     * Number of times the waiting Threads were signalled.
+     */
+    private final AtomicLong mSignals = new AtomicLong();
+
+    /**
+     * Total time the Threads spent on the slow path.
+     */
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+
+    /**
+     * Largest number of Threads that were waiting at once.
+     */
+    private final AtomicInteger mMaxWaiters = new AtomicInteger();
+
+    /**
+     * Histogram of the acquisition latencies.
+     */
+    private final AtomicLongArray mAcquireHistogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Histogram of the times from signalling the waiting Threads to
+     * one of them waking up.
+     */
+    private final AtomicLongArray mWakeupHistogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Ring of the latest samples of the waiters count.
+     */
+    private final AtomicLongArray mWaiterSamples = new AtomicLongArray(WAITER_SAMPLES);
+
+    /**
+     * Number of samples of the waiters count ever taken, the latest
+     * of which is at (mWaiterSampleCount - 1) % WAITER_SAMPLES.
+     */
+    private final AtomicLong mWaiterSampleCount = new AtomicLong();
+
+    /**
+     * When the profiler was created.
+     */
+    private final long mStartNanos = System.nanoTime();
+
+    /**
+     * Returns the histogram bucket of @a nanos.
+     */
+    static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * Record an acquisition on the fast path, which barged if @a
+     * waiters Threads were waiting.
+     */
+    void fastAcquired(int waiters) {
+        mFastAcquisitions.incrementAndGet();
+        if (waiters > 0)
+            mBarges.incrementAndGet();
+        mAcquireHistogram.incrementAndGet(0);
+    }
+
+    /**
+     * Record an acquisition after spinning for @a spinNanos, which
+     * barged if @a waiters Threads were waiting.
+     */
+    void spinAcquired(long spinNanos, int waiters) {
+        mSpinAcquisitions.incrementAndGet();
+        if (waiters > 0)
+            mBarges.incrementAndGet();
+        mAcquireHistogram.incrementAndGet(bucket(spinNanos));
+    }
+
+    /**
+     * Record that a Thread started waiting, making @a waiters
+     * waiting Threads.
+     */
+    void startedWaiting(int waiters) {
+        for (int max; waiters > (max = mMaxWaiters.get())
+                 && !mMaxWaiters.compareAndSet(max, waiters); )
+            continue;
+        sampleWaiters(waiters);
+    }
+
+    /**
+     * Record that @a waiters Threads are waiting now.
+     */
+    private void sampleWaiters(int waiters) {
+        long nanos = System.nanoTime() - mStartNanos;
+        long index = mWaiterSampleCount.getAndIncrement();
+        mWaiterSamples.set((int) (index % WAITER_SAMPLES),
+                           nanos << WAITER_BITS
+                           | Math.min(waiters, (1 << WAITER_BITS) - 1));
+    }
+
+    /**
+     * Record that a waiting Thread was signalled.
+     */
+    void signalled() {
+        mSignals.incrementAndGet();
+    }
+
+    /**
+     * Record that a Thread that was signalled at @a signalNanos woke
+     * up.
+     */
+    void wokeUp(long signalNanos) {
+        mWakeupHistogram.incrementAndGet(bucket(System.nanoTime() - signalNanos));
+    }
+
+    /**
+     * Record that a Thread woke up but still couldn't take its
+     * permits.
+     */
+    void futileWakeup() {
+        mFutileWakeups.incrementAndGet();
+    }
+
+    /**
+     * Record that a Thread left the slow path after @a waitNanos,
+     * with its permits if @a acquired is true, leaving @a waiters
+     * waiting Threads.
+     */
+    void slowAcquired(long waitNanos, boolean acquired, int waiters) {
+        sampleWaiters(waiters);
+        mTotalWaitNanos.addAndGet(waitNanos);
+        if (acquired) {
+            mSlowAcquisitions.incrementAndGet();
+            mAcquireHistogram.incrementAndGet(bucket(waitNanos));
+        } else
+            mAbandoned.incrementAndGet();
+    }
+
+    /**
+     * @class Snapshot
+     *
+     * @brief The numbers a SemaphoreProfiler has recorded at some
+     *        point.
+     */
+    public static class Snapshot {
+        private final long mElapsedNanos;
+        private final long mFastAcquisitions;
+        private final long mBarges;
+        private final long mSpinAcquisitions;
+        private final long mSlowAcquisitions;
+        private final long mAbandoned;
+        private final long mFutileWakeups;
+        private final long mSignals;
+        private final long mTotalWaitNanos;
+        private final int mMaxWaiters;
+        private final long[] mAcquireHistogram;
+        private final long[] mWakeupHistogram;
+        private final long[] mWaiterSampleNanos;
+        private final int[] mWaiterSamples;
+
+        Snapshot(SemaphoreProfiler profiler) {
+            mElapsedNanos = Math.max(1, System.nanoTime() - profiler.mStartNanos);
+            mFastAcquisitions = profiler.mFastAcquisitions.get();
+            mBarges = profiler.mBarges.get();
+            mSpinAcquisitions = profiler.mSpinAcquisitions.get();
+            mSlowAcquisitions = profiler.mSlowAcquisitions.get();
+            mAbandoned = profiler.mAbandoned.get();
+            mFutileWakeups = profiler.mFutileWakeups.get();
+            mSignals = profiler.mSignals.get();
+            mTotalWaitNanos = profiler.mTotalWaitNanos.get();
+            mMaxWaiters = profiler.mMaxWaiters.get();
+            mAcquireHistogram = toArray(profiler.mAcquireHistogram);
+            mWakeupHistogram = toArray(profiler.mWakeupHistogram);
+
+            // Copy the ring oldest sample first.
+            long count = profiler.mWaiterSampleCount.get();
+            int samples = (int) Math.min(count, WAITER_SAMPLES);
+            mWaiterSampleNanos = new long[samples];
+            mWaiterSamples = new int[samples];
+            for (int i = 0; i < samples; ++i) {
+                long sample = profiler.mWaiterSamples.get((int) ((count - samples + i)
+                                                                 % WAITER_SAMPLES));
+                mWaiterSampleNanos[i] = sample >>> WAITER_BITS;
+                mWaiterSamples[i] = (int) (sample & ((1 << WAITER_BITS) - 1));
+            }
+        }
+
+        private static long[] toArray(AtomicLongArray histogram) {
+            long[] counts = new long[histogram.length()];
+            for (int i = 0; i < counts.length; ++i)
+                counts[i] = histogram.get(i);
+            return counts;
+        }
+
+        /**
+         * Returns the number of acquisitions.
+         */
+        public long getAcquisitions() {
+            return mFastAcquisitions + mSpinAcquisitions + mSlowAcquisitions;
+        }
+
+        /**
+         * Returns the number of acquisitions that took the fast path.
+         */
+        public long getFastAcquisitions() {
+            return mFastAcquisitions;
+        }
+
+        /**
+         * Returns the number of acquisitions that took the fast path
+         * or spun while other Threads were waiting.
+         */
+        public long getBarges() {
+            return mBarges;
+        }
+
+        /**
+         * Returns the number of acquisitions that succeeded while
+         * spinning.
+         */
+        public long getSpinAcquisitions() {
+            return mSpinAcquisitions;
+        }
+
+        /**
+         * Returns the number of acquisitions that had to wait.
+         */
+        public long getSlowAcquisitions() {
+            return mSlowAcquisitions;
+        }
+
+        /**
+         * Returns the number of waits that timed out or were
+         * interrupted.
+         */
+        public long getAbandoned() {
+            return mAbandoned;
+        }
+
+        /**
+         * Returns the number of times a Thread woke up and had to go
+         * back to waiting.
+         */
+        public long getFutileWakeups() {
+            return mFutileWakeups;
+        }
+
+        /**
+         * Returns the number of times the waiting Threads were
+         * signalled.
+         */
+        public long getSignals() {
+            return mSignals;
+        }
+
+        /**
+         * Returns the largest number of Threads that waited at once.
+         */
+        public int getMaxWaiters() {
+            return mMaxWaiters;
+        }
+
+        /**
+         * Returns the average number of waiting Threads over the time
+         * profiled.
+         */
+        public double getAverageWaiters() {
+            return mTotalWaitNanos / (double) mElapsedNanos;
+        }
+
+        /**
+         * Returns a copy of the histogram of acquisition latencies.
+         */
+        public long[] getAcquireHistogram() {
+            return mAcquireHistogram.clone();
+        }
+
+        /**
+         * Returns a copy of the histogram of signal-to-wakeup
+         * latencies.
+         */
+        public long[] getWakeupHistogram() {
+            return mWakeupHistogram.clone();
+        }
+
+        /**
+         * Returns a copy of the times of the samples of the waiters
+         * count, in nanoseconds since the profiler was created, oldest
+         * first.
+         */
+        public long[] getWaiterSampleNanos() {
+            return mWaiterSampleNanos.clone();
+        }
+
+        /**
+         * Returns a copy of the samples of the waiters count, oldest
+         * first, which were taken at the times
+         * getWaiterSampleNanos() returns.
+         */
+        public int[] getWaiterSamples() {
+            return mWaiterSamples.clone();
+        }
+
+        /**
+         * Returns an upper bound on the @a percentile percentile of
+         * the latencies in @a histogram, in nanoseconds.
+         */
+        public static long percentileNanos(long[] histogram, double percentile) {
+            long total = 0;
+            for (long count : histogram)
+                total += count;
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; ++i) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0)
+                    return i == 0 ? 0 : (1L << i) - 1;
+            }
+            return 0;
+        }
+
+        public String toString() {
+            return String.format("%d acquisitions (%d fast, %d barged, %d spun), "
+                                 + "%d abandoned, %d signals, "
+                                 + "%d futile wakeups, %.2f average waiters, "
+                                 + "%d max waiters, acquire p50/p99 <= %d/%d ns, "
+                                 + "wakeup p50/p99 <= %d/%d ns",
+                                 getAcquisitions(), mFastAcquisitions,
+                                 mBarges, mSpinAcquisitions, mAbandoned, mSignals,
+                                 mFutileWakeups, getAverageWaiters(),
+                                 mMaxWaiters,
+                                 percentileNanos(mAcquireHistogram, 50),
+                                 percentileNanos(mAcquireHistogram, 99),
+                                 percentileNanos(mWakeupHistogram, 50),
+                                 percentileNanos(mWakeupHistogram, 99));
+        }
+    }
+
+    /**
+     * Returns the numbers recorded so far.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+}
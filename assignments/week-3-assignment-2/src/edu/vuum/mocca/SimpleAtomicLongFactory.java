@@ -0,0 +1,63 @@
+package edu.vuum.mocca;
+
+/**
+ * @class SimpleAtomicLongFactory
+ *
+ * @brief Makes LongCounters of the requested Implementation, so
+ *        callers (and the tests) can switch between the
+ *        ReentrantReadWriteLock SimpleAtomicLong and the lock-free
+ *        versions without changing their code.
+ */
+class SimpleAtomicLongFactory
+{
+    /**
+     * @class Implementation
+     *
+     * @brief The LongCounter implementations, each of which
+     *        knows how to make an instance with a given initial value.
+     */
+    enum Implementation {
+        READ_WRITE_LOCK {
+            LongCounter makeAtomicLong(long initialValue) {
+                return new SimpleAtomicLong(initialValue);
+            }
+        },
+        CAS {
+            LongCounter makeAtomicLong(long initialValue) {
+                return new CasSimpleAtomicLong(initialValue);
+            }
+        };
+
+        /**
+         * Factory method that makes a LongCounter with the given
+         * initial value.
+         */
+        abstract LongCounter makeAtomicLong(long initialValue);
+    }
+
+    /**
+     * The Implementation made by makeAtomicLong(long), which is
+     * READ_WRITE_LOCK unless the "edu.vuum.mocca.SimpleAtomicLong"
+     * system property names another one.
+     */
+    static final Implementation DEFAULT_IMPLEMENTATION =
+        Implementation.valueOf(System.getProperty("edu.vuum.mocca.SimpleAtomicLong",
+                                                  Implementation.READ_WRITE_LOCK.name()));
+
+    /**
+     * Returns a LongCounter of @a implementation with the given
+     * initial value.
+     */
+    static LongCounter makeAtomicLong(Implementation implementation,
+                                      long initialValue) {
+        return implementation.makeAtomicLong(initialValue);
+    }
+
+    /**
+     * Returns a LongCounter of the default Implementation with
+     * the given initial value.
+     */
+    static LongCounter makeAtomicLong(long initialValue) {
+        return DEFAULT_IMPLEMENTATION.makeAtomicLong(initialValue);
+    }
+}
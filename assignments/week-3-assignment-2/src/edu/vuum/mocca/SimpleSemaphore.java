@@ -13,7 +13,7 @@ import java.util.concurrent.locks.Condition;
  *        implement both "Fair" and "NonFair" semaphore semantics,
  *        just liked Java Semaphores.
  */
-public class SimpleSemaphore {
+public class SimpleSemaphore implements CountingSemaphore {
     /**
      * Define a Lock to protect the critical section.
      */
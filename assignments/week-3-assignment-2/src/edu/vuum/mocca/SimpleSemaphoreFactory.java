@@ -0,0 +1,71 @@
+package edu.vuum.mocca;
+
+/**
+ * @class SimpleSemaphoreFactory
+ *
+ * @brief Makes CountingSemaphores of the requested Implementation,
+ *        so callers (and the tests) can switch between the
+ *        ReentrantLock SimpleSemaphore and the fast-path version (which
+ *        parks or spins first) without changing their code.
+ */
+class SimpleSemaphoreFactory
+{
+    /**
+     * @class Implementation
+     *
+     * @brief The CountingSemaphore implementations, each of which knows
+     *        how to make an instance with a given number of permits and
+     *        fairness policy.
+     */
+    enum Implementation {
+        LOCK_CONDITION {
+            CountingSemaphore makeSemaphore(int permits, boolean fair) {
+                return new SimpleSemaphore(permits, fair);
+            }
+        },
+        FAST_PATH {
+            CountingSemaphore makeSemaphore(int permits, boolean fair) {
+                return new FastPathSimpleSemaphore(permits, fair);
+            }
+        },
+        SPIN_THEN_PARK {
+            CountingSemaphore makeSemaphore(int permits, boolean fair) {
+                return new FastPathSimpleSemaphore(permits, fair,
+                                                   FastPathSimpleSemaphore.WaitStrategy.SPIN_THEN_PARK);
+            }
+        };
+
+        /**
+         * Factory method that makes a CountingSemaphore with @a permits
+         * initial permits and the fair policy if @a fair is true.
+         */
+        abstract CountingSemaphore makeSemaphore(int permits, boolean fair);
+    }
+
+    /**
+     * The Implementation made by makeSemaphore(int, boolean), which
+     * is LOCK_CONDITION unless the "edu.vuum.mocca.SimpleSemaphore"
+     * system property names another one.
+     */
+    static final Implementation DEFAULT_IMPLEMENTATION =
+        Implementation.valueOf(System.getProperty("edu.vuum.mocca.SimpleSemaphore",
+                                                  Implementation.LOCK_CONDITION.name()));
+
+    /**
+     * Returns a CountingSemaphore of @a implementation with @a permits
+     * initial permits and the fair policy if @a fair is true.
+     */
+    static CountingSemaphore makeSemaphore(Implementation implementation,
+                                           int permits,
+                                           boolean fair) {
+        return implementation.makeSemaphore(permits, fair);
+    }
+
+    /**
+     * Returns a CountingSemaphore of the default Implementation with @a
+     * permits initial permits and the fair policy if @a fair is true.
+     */
+    static CountingSemaphore makeSemaphore(int permits, boolean fair) {
+        return DEFAULT_IMPLEMENTATION.makeSemaphore(permits, fair);
+    }
+}
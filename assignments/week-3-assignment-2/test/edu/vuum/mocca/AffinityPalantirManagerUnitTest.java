@@ -0,0 +1,78 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @class AffinityPalantirManagerUnitTest
+ *
+ * @brief Runs the PalantirManagerUnitTest on a PalantirManager with
+ *        affinity enabled, and tests that a Thread gets its last
+ *        Palantir back when it's unused and another one when it's
+ *        not.
+ */
+public class AffinityPalantirManagerUnitTest extends PalantirManagerUnitTest {
+    protected PalantirManager makePalantirManager(List<Palantir> palantiri,
+                                                  PalantirManager.Scheduling scheduling) {
+        return new PalantirManager(palantiri, scheduling, true);
+    }
+
+    /**
+     * Tests that acquiring and releasing in a loop reclaims the same
+     * Palantir via affinity, even when it isn't on top of the stack,
+     * and that other Threads skip its stale stack entry while it's in
+     * use.
+     */
+    @Test(timeout = 5000)
+    public void testAffinity() throws InterruptedException {
+        final List<Palantir> palantiri = makeManyPalantiri(3);
+        final PalantirManager manager = makePalantirManager(palantiri);
+
+        // Leave this Thread's last Palantir below the top of the
+        // stack.
+        Palantir first = manager.acquirePalantir();
+        Palantir second = manager.acquirePalantir();
+        manager.releasePalantir(second);
+        manager.releasePalantir(first);
+
+        for (int i = 0; i < 10; ++i) {
+            Palantir palantir = manager.acquirePalantir();
+            assertSame(second, palantir);
+            manager.releasePalantir(palantir);
+        }
+        assertEquals(10, manager.getAffinityHits());
+
+        // While this Thread holds its Palantir, another Thread gets
+        // the other two, skipping the held one's stack entry.
+        assertSame(second, manager.acquirePalantir());
+        final Palantir[] taken = new Palantir[2];
+        Thread other = new Thread(new Runnable() {
+                public void run() {
+                    taken[0] = manager.acquirePalantir();
+                    taken[1] = manager.acquirePalantir();
+                }
+            });
+        other.start();
+        other.join();
+        assertSame(palantiri.get(0), taken[0]);
+        assertSame(palantiri.get(2), taken[1]);
+        assertEquals(11, manager.getAffinityHits());
+
+        // Each Palantir is made available exactly once.
+        manager.releasePalantir(taken[0]);
+        manager.releasePalantir(taken[1]);
+        manager.releasePalantir(second);
+        Palantir a = manager.acquirePalantir();
+        Palantir b = manager.acquirePalantir();
+        Palantir c = manager.acquirePalantir();
+        assertSame(second, a);
+        assertNotSame(b, c);
+        assertNotSame(a, b);
+        assertNotSame(a, c);
+    }
+}
@@ -6,7 +6,12 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({PalantirManagerUnitTest.class,
+               AffinityPalantirManagerUnitTest.class,
                SimpleAtomicLongUnitTest.class,
-               SimpleSemaphoreUnitTest.class})
+               CasSimpleAtomicLongUnitTest.class,
+               SimpleSemaphoreUnitTest.class,
+               FastPathSimpleSemaphoreUnitTest.class,
+               SpinThenParkSimpleSemaphoreUnitTest.class,
+               FairnessAuditorUnitTest.class})
 public class AllTests {
 }
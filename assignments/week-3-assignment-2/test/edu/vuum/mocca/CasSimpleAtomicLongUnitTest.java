@@ -0,0 +1,44 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @class CasSimpleAtomicLongUnitTest
+ *
+ * @brief Tests the methods the lock-free CasSimpleAtomicLong adds to
+ *        the LongCounter ones, which SimpleAtomicLongUnitTest tests for
+ *        every Implementation.
+ */
+public class CasSimpleAtomicLongUnitTest {
+    @Test
+    public void testAddAndGet() {
+        CasSimpleAtomicLong testLong = new CasSimpleAtomicLong(100);
+        assertEquals(testLong.addAndGet(10), 110);
+        assertEquals(testLong.addAndGet(-120), -10);
+        assertEquals(testLong.get(), -10);
+    }
+
+    @Test
+    public void testCompareAndSet() {
+        CasSimpleAtomicLong testLong = new CasSimpleAtomicLong(100);
+        assertFalse(testLong.compareAndSet(99, 0));
+        assertEquals(testLong.get(), 100);
+        assertTrue(testLong.compareAndSet(100, 0));
+        assertEquals(testLong.get(), 0);
+    }
+
+    @Test
+    public void testUpdateAndGet() {
+        CasSimpleAtomicLong testLong = new CasSimpleAtomicLong(-100);
+        assertEquals(testLong.updateAndGet(new LongUnaryOperator() {
+                public long apply(long value) {
+                    return Math.abs(value);
+                }
+            }), 100);
+        assertEquals(testLong.get(), 100);
+    }
+}
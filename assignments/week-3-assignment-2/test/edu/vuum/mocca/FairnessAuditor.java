@@ -0,0 +1,220 @@
+package edu.vuum.mocca;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class FairnessAuditor
+ *
+ * @brief Measures how "fair" a SimpleSemaphore is, i.e., how often
+ *        Threads are granted permits in a different order than they
+ *        arrived.  Each Thread calls arrive() just before it acquires
+ *        the Semaphore and granted() just after, which take an arrival
+ *        and a grant sequence number from two AtomicLongs and append
+ *        them to a buffer owned by the calling Thread, so recording
+ *        never locks and Threads only contend for the counters.  Once
+ *        the Threads are done (e.g., joined), report() collects the
+ *        buffers and counts the inversions (pairs of acquisitions
+ *        granted in the opposite order they arrived) and the maximum
+ *        bypass distance (the most later arrivals that were granted
+ *        before any one acquisition), in O(n log n) time.
+ *
+ *        Like any check made outside the Semaphore, it can't tell
+ *        exactly when a Thread arrives at or leaves the Semaphore's
+ *        queue, since a Thread can be preempted between taking its
+ *        sequence number and calling the Semaphore, so a fair
+ *        Semaphore can show a few inversions with a small bypass
+ *        distance, whereas an unfair one shows many.
+ */
+public class FairnessAuditor {
+    /**
+     * @class Recorder
+     *
+     * @brief The buffer of a single Thread, which holds its arrival
+     *        and grant sequence numbers in pairs.  It's only written by
+     *        its Thread and only read after that Thread is done.
+     */
+    private static class Recorder {
+        long[] mEvents = new long[64];
+        int mCount = 0;
+        long mPendingArrival = -1;
+
+        void add(long arrival, long grant) {
+            if (mCount + 2 > mEvents.length)
+                mEvents = Arrays.copyOf(mEvents, 2 * mEvents.length);
+            mEvents[mCount++] = arrival;
+            mEvents[mCount++] = grant;
+        }
+    }
+
+    /**
+     * Source of the arrival sequence numbers.
+     */
+    private final AtomicLong mArrivals = new AtomicLong();
+
+    /**
+     * Source of the grant sequence numbers.
+     */
+    private final AtomicLong mGrants = new AtomicLong();
+
+    /**
+     * The buffers of all the Threads that have recorded anything.
+     */
+    private final Queue<Recorder> mRecorders = new ConcurrentLinkedQueue<Recorder>();
+
+    /**
+     * The calling Thread's buffer, which is registered in mRecorders
+     * the first time the Thread uses it.
+     */
+    private final ThreadLocal<Recorder> mRecorder = new ThreadLocal<Recorder>() {
+            protected Recorder initialValue() {
+                Recorder recorder = new Recorder();
+                mRecorders.add(recorder);
+                return recorder;
+            }
+        };
+
+    /**
+     * Record that the calling Thread is about to acquire the
+     * Semaphore.
+     */
+    public void arrive() {
+        mRecorder.get().mPendingArrival = mArrivals.getAndIncrement();
+    }
+
+    /**
+     * Record that the calling Thread has been granted the Semaphore
+     * it arrived at.
+     */
+    public void granted() {
+        Recorder recorder = mRecorder.get();
+        if (recorder.mPendingArrival < 0)
+            throw new IllegalStateException("granted() without arrive()");
+        recorder.add(recorder.mPendingArrival, mGrants.getAndIncrement());
+        recorder.mPendingArrival = -1;
+    }
+
+    /**
+     * @class Report
+     *
+     * @brief The fairness of the acquisitions recorded by a
+     *        FairnessAuditor.
+     */
+    public static class Report {
+        private final int mAcquisitions;
+        private final long mInversions;
+        private final int mMaxBypass;
+
+        Report(int acquisitions, long inversions, int maxBypass) {
+            mAcquisitions = acquisitions;
+            mInversions = inversions;
+            mMaxBypass = maxBypass;
+        }
+
+        /**
+         * Returns the number of acquisitions that were granted.
+         */
+        public int getAcquisitions() {
+            return mAcquisitions;
+        }
+
+        /**
+         * Returns the number of pairs of acquisitions that were
+         * granted in the opposite order they arrived.
+         */
+        public long getInversions() {
+            return mInversions;
+        }
+
+        /**
+         * Returns the largest number of acquisitions that arrived
+         * after one acquisition but were granted before it.
+         */
+        public int getMaxBypass() {
+            return mMaxBypass;
+        }
+
+        public String toString() {
+            return mAcquisitions + " acquisitions, " + mInversions
+                + " inversions, max bypass " + mMaxBypass;
+        }
+    }
+
+    /**
+     * Returns the fairness of the acquisitions recorded so far.  It
+     * must only be called once the recording Threads are done, e.g.,
+     * after they've been joined.
+     */
+    public Report report() {
+        int count = 0;
+        for (Recorder recorder : mRecorders)
+            count += recorder.mCount / 2;
+
+        long[] arrivals = new long[count];
+        long[] grants = new long[count];
+        int i = 0;
+        for (Recorder recorder : mRecorders)
+            for (int j = 0; j < recorder.mCount; j += 2, ++i) {
+                arrivals[i] = recorder.mEvents[j];
+                grants[i] = recorder.mEvents[j + 1];
+            }
+        return analyze(arrivals, grants);
+    }
+
+    /**
+     * Returns the fairness of the acquisitions whose arrival and
+     * grant sequence numbers are @a arrivals[i] and @a grants[i].
+     * The sequence numbers needn't be contiguous, but each array
+     * must not contain duplicates.
+     */
+    static Report analyze(long[] arrivals, long[] grants) {
+        int n = arrivals.length;
+
+        // Sort the acquisitions by arrival, and replace each grant
+        // sequence number by its rank among the grants.
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i)
+            order[i] = i;
+        sortByKey(order, arrivals);
+
+        long[] sortedGrants = grants.clone();
+        Arrays.sort(sortedGrants);
+        int[] grantRanks = new int[n];
+        for (int i = 0; i < n; ++i)
+            grantRanks[i] = Arrays.binarySearch(sortedGrants, grants[order[i]]);
+
+        // Visit the acquisitions from the last arrival to the first,
+        // counting in a Fenwick tree the grant ranks of the ones
+        // visited, i.e., those that arrived later.  The ones among
+        // them granted earlier bypassed the current one.
+        int[] tree = new int[n + 1];
+        long inversions = 0;
+        int maxBypass = 0;
+        for (int i = n - 1; i >= 0; --i) {
+            int bypass = 0;
+            for (int k = grantRanks[i]; k > 0; k -= k & -k)
+                bypass += tree[k];
+            for (int k = grantRanks[i] + 1; k <= n; k += k & -k)
+                ++tree[k];
+            inversions += bypass;
+            maxBypass = Math.max(maxBypass, bypass);
+        }
+        return new Report(n, inversions, maxBypass);
+    }
+
+    /**
+     * Sort @a order, which holds indices into @a keys, by the keys.
+     */
+    private static void sortByKey(Integer[] order, final long[] keys) {
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    long ka = keys[a];
+                    long kb = keys[b];
+                    return ka < kb ? -1 : ka == kb ? 0 : 1;
+                }
+            });
+    }
+}
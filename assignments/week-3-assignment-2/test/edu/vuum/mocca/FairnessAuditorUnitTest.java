@@ -0,0 +1,182 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * @class FairnessAuditorUnitTest
+ *
+ * @brief Tests that FairnessAuditor counts the inversions and the
+ *        maximum bypass distance of known orders, that it finds none
+ *        when a fair FastPathSimpleSemaphore grants a thousand queued
+ *        Threads, and that it tells the fair policy from the non-fair
+ *        one when a Thread can barge.
+ */
+public class FairnessAuditorUnitTest {
+    /**
+     * Tests analyze() on orders whose inversions are easy to count.
+     */
+    @Test
+    public void testAnalyze() {
+        FairnessAuditor.Report report =
+            FairnessAuditor.analyze(new long[] { 0, 1, 2, 3 },
+                                    new long[] { 0, 1, 2, 3 });
+        assertEquals(4, report.getAcquisitions());
+        assertEquals(0, report.getInversions());
+        assertEquals(0, report.getMaxBypass());
+
+        // Every later arrival is granted first.
+        report = FairnessAuditor.analyze(new long[] { 0, 1, 2, 3, 4 },
+                                         new long[] { 4, 3, 2, 1, 0 });
+        assertEquals(10, report.getInversions());
+        assertEquals(4, report.getMaxBypass());
+
+        // The last arrival bypasses the other two, given out of order
+        // and with gaps in the sequence numbers.
+        report = FairnessAuditor.analyze(new long[] { 7, 2, 5 },
+                                         new long[] { 1, 8, 9 });
+        assertEquals(2, report.getInversions());
+        assertEquals(1, report.getMaxBypass());
+
+        report = FairnessAuditor.analyze(new long[0], new long[0]);
+        assertEquals(0, report.getAcquisitions());
+        assertEquals(0, report.getInversions());
+    }
+
+    /**
+     * Tests that a Thread that arrives first but is granted last is
+     * reported as bypassed by the Threads that arrived after it.
+     */
+    @Test(timeout = 10000)
+    public void testRecordedBypass() throws InterruptedException {
+        final FairnessAuditor auditor = new FairnessAuditor();
+        final CountDownLatch arrived = new CountDownLatch(1);
+        final CountDownLatch others = new CountDownLatch(1);
+
+        Thread first = new Thread(new Runnable() {
+                public void run() {
+                    auditor.arrive();
+                    arrived.countDown();
+                    try {
+                        others.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    auditor.granted();
+                }
+            });
+        first.start();
+        arrived.await();
+
+        for (int i = 0; i < 3; ++i) {
+            auditor.arrive();
+            auditor.granted();
+        }
+        others.countDown();
+        first.join();
+
+        FairnessAuditor.Report report = auditor.report();
+        assertEquals(4, report.getAcquisitions());
+        assertEquals(3, report.getInversions());
+        assertEquals(3, report.getMaxBypass());
+    }
+
+    /**
+     * Tests that granted() must follow arrive().
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testGrantedWithoutArrive() {
+        FairnessAuditor auditor = new FairnessAuditor();
+        auditor.arrive();
+        auditor.granted();
+        auditor.granted();
+    }
+
+    /**
+     * Tests that a fair FastPathSimpleSemaphore grants a thousand
+     * queued Threads in the order they arrived.  Each Thread is only
+     * started once the one before it is waiting, so the arrival order
+     * is known, and a fair Semaphore must show no inversions at all.
+     */
+    @Test(timeout = 60000)
+    public void testManyThreads() throws InterruptedException {
+        final FairnessAuditor auditor = new FairnessAuditor();
+        final FastPathSimpleSemaphore semaphore = new FastPathSimpleSemaphore(1, true);
+        semaphore.acquireUninterruptibly();
+
+        Thread[] threads = new Thread[1000];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        auditor.arrive();
+                        semaphore.acquireUninterruptibly();
+                        auditor.granted();
+                        semaphore.release();
+                    }
+                });
+            threads[t].start();
+            FastPathSimpleSemaphoreUnitTest.awaitQueueLength(semaphore, t + 1);
+        }
+        semaphore.release();
+        for (Thread thread : threads)
+            thread.join();
+
+        FairnessAuditor.Report report = auditor.report();
+        assertEquals(threads.length, report.getAcquisitions());
+        assertEquals(report.toString(), 0, report.getInversions());
+        assertEquals(report.toString(), 0, report.getMaxBypass());
+    }
+
+    /**
+     * Tests that a Thread that arrives while another one is waiting
+     * for more permits than are available barges ahead of it with the
+     * non-fair policy, which shows up as one inversion, but not with
+     * the fair policy.
+     */
+    @Test(timeout = 10000)
+    public void testFairVersusNonFair() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            final FairnessAuditor auditor = new FairnessAuditor();
+            final FastPathSimpleSemaphore semaphore = new FastPathSimpleSemaphore(1, fair);
+
+            Thread bulk = new Thread(new Runnable() {
+                    public void run() {
+                        auditor.arrive();
+                        try {
+                            semaphore.acquire(2);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        auditor.granted();
+                        semaphore.release(2);
+                    }
+                });
+            bulk.start();
+            FastPathSimpleSemaphoreUnitTest.awaitQueueLength(semaphore, 1);
+
+            auditor.arrive();
+            boolean barged = semaphore.tryAcquire();
+            if (barged) {
+                auditor.granted();
+                semaphore.release();
+            }
+            // Let the bulk acquisition through.
+            semaphore.release();
+            bulk.join();
+            if (!barged) {
+                semaphore.acquireUninterruptibly();
+                auditor.granted();
+                semaphore.release();
+            }
+
+            FairnessAuditor.Report report = auditor.report();
+            assertEquals(!fair, barged);
+            assertEquals(2, report.getAcquisitions());
+            assertEquals(report.toString(), fair ? 0 : 1, report.getInversions());
+            assertEquals(report.toString(), fair ? 0 : 1, report.getMaxBypass());
+        }
+    }
+}
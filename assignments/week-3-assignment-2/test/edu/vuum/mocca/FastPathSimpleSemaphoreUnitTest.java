@@ -0,0 +1,540 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * @class FastPathSimpleSemaphoreUnitTest
+ *
+ * @brief Tests that Threads that find no permits on a
+ *        FastPathSimpleSemaphore block until one is released, are
+ *        granted permits in FIFO order with the fair policy, can be
+ *        interrupted, and are never more than the number of permits
+ *        at once, as well as the bulk, try and drain methods it adds,
+ *        once for each of its WaitStrategies.
+ */
+@RunWith(Parameterized.class)
+public class FastPathSimpleSemaphoreUnitTest {
+    /**
+     * The Implementation being tested.
+     */
+    private final SimpleSemaphoreFactory.Implementation mImplementation;
+
+    /**
+     * Returns the SimpleSemaphoreFactory Implementations that make a
+     * FastPathSimpleSemaphore as sets of parameters.
+     */
+    @Parameters
+    public static Collection<Object[]> implementations() {
+        return SimpleSemaphoreUnitTest.parameters(SimpleSemaphoreFactory.Implementation.FAST_PATH,
+                                                  SimpleSemaphoreFactory.Implementation.SPIN_THEN_PARK);
+    }
+
+    /**
+     * Test the semaphores of @a implementation.
+     */
+    public FastPathSimpleSemaphoreUnitTest(SimpleSemaphoreFactory.Implementation implementation) {
+        mImplementation = implementation;
+    }
+
+    /**
+     * Factory method that makes the semaphore to test.
+     */
+    private FastPathSimpleSemaphore makeSemaphore(int permits, boolean fair) {
+        return (FastPathSimpleSemaphore) SimpleSemaphoreFactory.makeSemaphore(mImplementation,
+                                                                              permits,
+                                                                              fair);
+    }
+
+    /**
+     * Waits until @a count Threads are waiting on @a semaphore.
+     */
+    static void awaitQueueLength(FastPathSimpleSemaphore semaphore,
+                                 int count) throws InterruptedException {
+        while (semaphore.getQueueLength() != count)
+            Thread.sleep(1);
+    }
+
+    /**
+     * Starts a Thread that acquires a permit from @a semaphore and
+     * then adds @a name to @a acquired.
+     */
+    static Thread startAcquirer(final CountingSemaphore semaphore,
+                                final String name,
+                                final List<String> acquired) {
+        Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    semaphore.acquireUninterruptibly();
+                    acquired.add(name);
+                }
+            }, name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Tests that a Thread blocks while there are no permits and is
+     * woken by release(), with both policies.
+     */
+    @Test(timeout = 5000)
+    public void testBlockingAcquire() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            FastPathSimpleSemaphore semaphore =
+                makeSemaphore(0, fair);
+            List<String> acquired =
+                Collections.synchronizedList(new ArrayList<String>());
+
+            Thread thread = startAcquirer(semaphore, "waiter", acquired);
+            awaitQueueLength(semaphore, 1);
+            assertTrue(acquired.isEmpty());
+
+            semaphore.release();
+            thread.join();
+            assertEquals(Arrays.asList("waiter"), acquired);
+            assertEquals(0, semaphore.availablePermits());
+            assertEquals(0, semaphore.getQueueLength());
+        }
+    }
+
+    /**
+     * Tests that the fair policy grants permits to waiting Threads in
+     * the order they started waiting.
+     */
+    @Test(timeout = 5000)
+    public void testFairOrder() throws InterruptedException {
+        FastPathSimpleSemaphore semaphore =
+            makeSemaphore(0, true);
+        List<String> acquired =
+            Collections.synchronizedList(new ArrayList<String>());
+        List<String> names = Arrays.asList("Pippen", "Aragorn", "Denathor", "Sauron");
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (String name : names) {
+            threads.add(startAcquirer(semaphore, name, acquired));
+            awaitQueueLength(semaphore, threads.size());
+        }
+
+        for (Thread thread : threads) {
+            semaphore.release();
+            thread.join();
+        }
+        assertEquals(names, acquired);
+    }
+
+    /**
+     * Tests that an interrupted acquire() throws InterruptedException
+     * without taking a permit, and that the fair policy then passes
+     * the turn to the next waiting Thread.
+     */
+    @Test(timeout = 5000)
+    public void testInterruptedAcquire() throws InterruptedException {
+        final FastPathSimpleSemaphore semaphore =
+            makeSemaphore(0, true);
+        final AtomicInteger interrupted = new AtomicInteger();
+
+        Thread first = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        semaphore.acquire();
+                    } catch (InterruptedException e) {
+                        interrupted.incrementAndGet();
+                    }
+                }
+            });
+        first.start();
+        awaitQueueLength(semaphore, 1);
+
+        List<String> acquired =
+            Collections.synchronizedList(new ArrayList<String>());
+        Thread second = startAcquirer(semaphore, "second", acquired);
+        awaitQueueLength(semaphore, 2);
+
+        first.interrupt();
+        first.join();
+        assertEquals(1, interrupted.get());
+        assertEquals(0, semaphore.availablePermits());
+
+        semaphore.release();
+        second.join();
+        assertEquals(Arrays.asList("second"), acquired);
+    }
+
+    /**
+     * Starts a Thread that acquires @a permits permits from @a
+     * semaphore at once and then adds @a name to @a acquired.
+     */
+    static Thread startBulkAcquirer(final FastPathSimpleSemaphore semaphore,
+                                    final int permits,
+                                    final String name,
+                                    final List<String> acquired) {
+        Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        semaphore.acquire(permits);
+                        acquired.add(name);
+                    } catch (InterruptedException e) {
+                        // Ends the Thread without adding its name.
+                    }
+                }
+            }, name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Tests acquire(int), release(int), tryAcquire() and
+     * drainPermits() without contention.
+     */
+    @Test
+    public void testBulkAndDrain() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            FastPathSimpleSemaphore semaphore =
+                makeSemaphore(5, fair);
+            semaphore.acquire(3);
+            assertEquals(2, semaphore.availablePermits());
+            semaphore.acquire(0);
+            assertTrue(semaphore.tryAcquire());
+            assertEquals(1, semaphore.drainPermits());
+            assertFalse(semaphore.tryAcquire());
+            assertEquals(0, semaphore.drainPermits());
+
+            semaphore.release(4);
+            assertEquals(4, semaphore.availablePermits());
+            assertTrue(semaphore.tryAcquire(4, 0, TimeUnit.SECONDS));
+            assertFalse(semaphore.tryAcquire(1, 0, TimeUnit.SECONDS));
+
+            try {
+                semaphore.acquire(-1);
+                fail("acquire(-1) didn't throw");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Tests that tryAcquire() with a timeout gives up when no permit
+     * is released in time, leaving the semaphore unchanged, and
+     * succeeds when one is.
+     */
+    @Test(timeout = 5000)
+    public void testTimedTryAcquire() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            final FastPathSimpleSemaphore semaphore =
+                makeSemaphore(1, fair);
+
+            long start = System.nanoTime();
+            assertFalse(semaphore.tryAcquire(2, 50, TimeUnit.MILLISECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertEquals(1, semaphore.availablePermits());
+            assertEquals(0, semaphore.getQueueLength());
+
+            Thread releaser = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            awaitQueueLength(semaphore, 1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        semaphore.release();
+                    }
+                });
+            releaser.start();
+            assertTrue(semaphore.tryAcquire(2, 10, TimeUnit.SECONDS));
+            releaser.join();
+            assertEquals(0, semaphore.availablePermits());
+        }
+    }
+
+    /**
+     * Tests that the fair policy doesn't let a later request for one
+     * permit overtake an earlier request for three, and that the
+     * timed tryAcquire() of an arriving Thread waits its turn too.
+     */
+    @Test(timeout = 5000)
+    public void testFairBulkAcquire() throws InterruptedException {
+        FastPathSimpleSemaphore semaphore =
+            makeSemaphore(0, true);
+        List<String> acquired =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        Thread large = startBulkAcquirer(semaphore, 3, "large", acquired);
+        awaitQueueLength(semaphore, 1);
+        Thread small = startBulkAcquirer(semaphore, 1, "small", acquired);
+        awaitQueueLength(semaphore, 2);
+
+        semaphore.release(2);
+        assertFalse(semaphore.tryAcquire());
+        assertFalse(semaphore.tryAcquire(20, TimeUnit.MILLISECONDS));
+        assertTrue(acquired.isEmpty());
+        assertEquals(2, semaphore.availablePermits());
+
+        semaphore.release(1);
+        large.join();
+        assertEquals(Arrays.asList("large"), acquired);
+        assertEquals(1, semaphore.getQueueLength());
+
+        semaphore.release(1);
+        small.join();
+        assertEquals(Arrays.asList("large", "small"), acquired);
+        assertEquals(0, semaphore.availablePermits());
+    }
+
+    /**
+     * Tests that the non-fair policy lets requests for one permit
+     * barge past a waiting request for three.
+     */
+    @Test(timeout = 5000)
+    public void testNonFairBulkAcquire() throws InterruptedException {
+        FastPathSimpleSemaphore semaphore =
+            makeSemaphore(0, false);
+        List<String> acquired =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        Thread large = startBulkAcquirer(semaphore, 3, "large", acquired);
+        awaitQueueLength(semaphore, 1);
+        Thread small = startBulkAcquirer(semaphore, 1, "small", acquired);
+        awaitQueueLength(semaphore, 2);
+
+        semaphore.release(2);
+        small.join();
+        assertTrue(semaphore.tryAcquire());
+        assertEquals(Arrays.asList("small"), acquired);
+
+        semaphore.release(3);
+        large.join();
+        assertEquals(Arrays.asList("small", "large"), acquired);
+        assertEquals(0, semaphore.availablePermits());
+    }
+
+    /**
+     * Tests that a SemaphoreProfiler records fast, barging, slow and
+     * abandoned acquisitions and the waiters count over time, and
+     * nothing once it's unset.
+     */
+    @Test(timeout = 5000)
+    public void testProfiler() throws InterruptedException {
+        final FastPathSimpleSemaphore semaphore =
+            makeSemaphore(1, false);
+        SemaphoreProfiler profiler = new SemaphoreProfiler();
+        semaphore.setProfiler(profiler);
+
+        semaphore.acquire();
+        assertFalse(semaphore.tryAcquire(1, 1, TimeUnit.MILLISECONDS));
+
+        // A Thread that wants two permits keeps waiting while one is
+        // released, so tryAcquire() barges ahead of it.
+        Thread waiter = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        semaphore.acquire(2);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            });
+        waiter.start();
+        awaitQueueLength(semaphore, 1);
+        semaphore.release();
+        assertTrue(semaphore.tryAcquire());
+        semaphore.release(2);
+        waiter.join();
+
+        SemaphoreProfiler.Snapshot snapshot = profiler.snapshot();
+        assertEquals(3, snapshot.getAcquisitions());
+        assertEquals(2, snapshot.getFastAcquisitions());
+        assertEquals(1, snapshot.getBarges());
+        assertEquals(1, snapshot.getSlowAcquisitions());
+        assertEquals(1, snapshot.getAbandoned());
+        assertEquals(1, snapshot.getMaxWaiters());
+        assertTrue(snapshot.getSignals() >= 1);
+        assertTrue(snapshot.getAverageWaiters() > 0);
+
+        long[] acquires = snapshot.getAcquireHistogram();
+        assertEquals(2, acquires[0]);
+        long total = 0;
+        for (long count : acquires)
+            total += count;
+        assertEquals(3, total);
+        long wakeups = 0;
+        for (long count : snapshot.getWakeupHistogram())
+            wakeups += count;
+        assertTrue(wakeups >= 1);
+
+        // The timed tryAcquire() and the waiter each waited alone.
+        assertArrayEquals(new int[] { 1, 0, 1, 0 }, snapshot.getWaiterSamples());
+        long[] sampleNanos = snapshot.getWaiterSampleNanos();
+        for (int i = 1; i < sampleNanos.length; ++i)
+            assertTrue(sampleNanos[i] >= sampleNanos[i - 1]);
+
+        semaphore.setProfiler(null);
+        semaphore.release();
+        semaphore.acquire();
+        assertEquals(3, profiler.snapshot().getAcquisitions());
+
+        assertEquals(0, SemaphoreProfiler.bucket(0));
+        assertEquals(1, SemaphoreProfiler.bucket(1));
+        assertEquals(3, SemaphoreProfiler.bucket(7));
+        assertEquals(63, SemaphoreProfiler.bucket(Long.MAX_VALUE));
+        long[] histogram = new long[SemaphoreProfiler.BUCKETS];
+        histogram[0] = 2;
+        histogram[3] = 1;
+        assertEquals(0, SemaphoreProfiler.Snapshot.percentileNanos(histogram, 50));
+        assertEquals(7, SemaphoreProfiler.Snapshot.percentileNanos(histogram, 99));
+
+        // Only the latest samples are kept once the ring wraps.
+        profiler = new SemaphoreProfiler();
+        for (int i = 0; i < SemaphoreProfiler.WAITER_SAMPLES + 3; ++i)
+            profiler.startedWaiting(i);
+        int[] samples = profiler.snapshot().getWaiterSamples();
+        assertEquals(SemaphoreProfiler.WAITER_SAMPLES, samples.length);
+        assertEquals(3, samples[0]);
+        assertEquals(SemaphoreProfiler.WAITER_SAMPLES + 2, samples[samples.length - 1]);
+    }
+
+    /**
+     * Tests that a SemaphoreProfiler times the wakeup of a signalled
+     * Thread but not the timeout of one that waited alongside it.
+     */
+    @Test(timeout = 5000)
+    public void testProfilerIgnoresTimeouts() throws InterruptedException {
+        final FastPathSimpleSemaphore semaphore =
+            makeSemaphore(0, false);
+        SemaphoreProfiler profiler = new SemaphoreProfiler();
+        semaphore.setProfiler(profiler);
+        List<String> acquired =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        Thread signalled = startAcquirer(semaphore, "signalled", acquired);
+        awaitQueueLength(semaphore, 1);
+        Thread timedOut = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        semaphore.tryAcquire(1, 100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            });
+        timedOut.start();
+        awaitQueueLength(semaphore, 2);
+
+        // The release only signals the first Thread, so the second
+        // one times out after that signal.
+        semaphore.release();
+        signalled.join();
+        timedOut.join();
+
+        SemaphoreProfiler.Snapshot snapshot = profiler.snapshot();
+        assertEquals(1, snapshot.getSlowAcquisitions());
+        assertEquals(1, snapshot.getAbandoned());
+        assertEquals(1, snapshot.getSignals());
+        long wakeups = 0;
+        for (long count : snapshot.getWakeupHistogram())
+            wakeups += count;
+        assertEquals(1, wakeups);
+    }
+
+    /**
+     * Tests that a release only wakes a Thread whose request fits in
+     * the available permits, i.e., no Thread wakes up just to wait
+     * again, with both policies.
+     */
+    @Test(timeout = 5000)
+    public void testTargetedWakeups() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            FastPathSimpleSemaphore semaphore =
+                makeSemaphore(0, fair);
+            SemaphoreProfiler profiler = new SemaphoreProfiler();
+            semaphore.setProfiler(profiler);
+            List<String> acquired =
+                Collections.synchronizedList(new ArrayList<String>());
+
+            Thread large = startBulkAcquirer(semaphore, 3, "large", acquired);
+            awaitQueueLength(semaphore, 1);
+            Thread[] small = new Thread[5];
+            for (int i = 0; i < small.length; ++i) {
+                small[i] = startBulkAcquirer(semaphore, 1, "small", acquired);
+                awaitQueueLength(semaphore, i + 2);
+            }
+
+            // The fair policy makes the small requests wait behind the
+            // large one, whereas the non-fair one lets them go first.
+            if (fair) {
+                semaphore.release(3);
+                large.join();
+                for (Thread thread : small) {
+                    semaphore.release();
+                    thread.join();
+                }
+            } else {
+                for (Thread thread : small) {
+                    semaphore.release();
+                    thread.join();
+                }
+                semaphore.release(2);
+                semaphore.release();
+                large.join();
+            }
+
+            SemaphoreProfiler.Snapshot snapshot = profiler.snapshot();
+            assertEquals(6, snapshot.getSlowAcquisitions());
+            assertEquals(0, snapshot.getFutileWakeups());
+            assertEquals(6, snapshot.getSignals());
+            long wakeups = 0;
+            for (long count : snapshot.getWakeupHistogram())
+                wakeups += count;
+            assertEquals(6, wakeups);
+        }
+    }
+
+    /**
+     * Tests that no more Threads than there are permits hold one at
+     * once and no permits are lost, with both policies.
+     */
+    @Test(timeout = 20000)
+    public void testContention() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            final int permits = 2;
+            final CountingSemaphore semaphore = makeSemaphore(permits, fair);
+            final AtomicInteger active = new AtomicInteger();
+            final AtomicInteger maxActive = new AtomicInteger();
+
+            Thread[] threads = new Thread[6];
+            for (int t = 0; t < threads.length; ++t) {
+                threads[t] = new Thread(new Runnable() {
+                        public void run() {
+                            for (int i = 0; i < 2000; ++i) {
+                                semaphore.acquireUninterruptibly();
+                                int now = active.incrementAndGet();
+                                for (int max; now > (max = maxActive.get())
+                                         && !maxActive.compareAndSet(max, now); )
+                                    continue;
+                                if (i % 100 == 0)
+                                    Thread.yield();
+                                active.decrementAndGet();
+                                semaphore.release();
+                            }
+                        }
+                    });
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+
+            assertTrue("max active = " + maxActive.get(),
+                       maxActive.get() <= permits);
+            assertEquals(permits, semaphore.availablePermits());
+        }
+    }
+}
@@ -1,15 +1,73 @@
 package edu.vuum.mocca;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * @class PalantirManager
  *
  * @brief Uses a "fair" Semaphore to control access to the
  *        available Palantiri.  Implements the "Pooling" pattern
- *        in POSA3.
+ *        in POSA3.  The indices of the unused Palantiri are kept in
+ *        a lock-free stack, so acquiring and releasing a Palantir
+ *        takes constant time and never blocks once the Semaphore has
+ *        admitted the caller, no matter how many Palantiri there are.
+ *        Alternatively, with the FASTEST_AVAILABLE Scheduling, each
+ *        caller gets the unused Palantir that has been held for the
+ *        shortest time on average, which cuts the tail latency when
+ *        the Palantiri aren't equally fast.  Either way,
+ *        getMetrics() reports how much each Palantir is used and how
+ *        long its users waited for it.
+ *
+ *        With affinity enabled, each Thread remembers the last
+ *        Palantir it acquired, and reclaims it with a single
+ *        compareAndSet() if it's unused, skipping the stack or scan.
+ *        That Palantir may still be on the stack, so each Palantir
+ *        also has a flag saying whether it's on the stack, which
+ *        keeps it from being pushed twice, and Palantiri popped off
+ *        the stack that are already in use are skipped.  Affinity
+ *        only affects which Palantir a Thread gets once the
+ *        Semaphore has admitted it, so it doesn't change the order in
+ *        which the "fair" Semaphore admits Threads.
  */
 public class PalantirManager {
+    /**
+     * @class Scheduling
+     *
+     * @brief The ways of choosing among the unused Palantiri.
+     */
+    public enum Scheduling {
+        /**
+         * Take the Palantir on top of the stack of unused ones, in
+         * constant time.
+         */
+        FIRST_AVAILABLE,
+
+        /**
+         * Take the unused Palantir with the smallest exponentially
+         * weighted moving average (EWMA) of its hold times, which
+         * scans all the Palantiri.  Palantiri that have never been
+         * held count as the fastest, so each one is tried.
+         */
+        FASTEST_AVAILABLE
+    }
+
+    /**
+     * Each new hold time is given a weight of 1 / 2^EWMA_SHIFT in a
+     * Palantir's average hold time.
+     */
+    static final int EWMA_SHIFT = 2;
+
+    /**
+     * How the unused Palantiri are chosen.
+     */
+    private final Scheduling mScheduling;
+
     /**
      * Max number of Palantiri available.
      */
@@ -19,7 +77,7 @@ public class PalantirManager {
      * Simple implementation of a Semaphore that can be configured
      * to use the "fair" policy.
      */
-    private SimpleSemaphore mAvailable = null;
+    private CountingSemaphore mAvailable = null;
 
     /**
      * List of the available Palantiri.
@@ -27,24 +85,201 @@ public class PalantirManager {
     protected List<Palantir> mPalantiri = null;
 
     /**
-     * Keeps track of the Palantiri that are available for use.
-     * The indices in this array mirror the list of mPanatiri.
+     * Maps each Palantir (by identity) to its index in mPalantiri,
+     * so releasing one doesn't have to search for it.  It's only
+     * read after the constructor.
      */
-    protected boolean[] used = null;
+    private final Map<Palantir, Integer> mIndices;
+
+    /**
+     * Keeps track of the Palantiri that are in use (1), being
+     * released (2) or available (0).  The indices in this array
+     * mirror the list of mPalantiri.
+     */
+    protected AtomicIntegerArray used = null;
+
+    /**
+     * Top of the stack of unused Palantiri.  The low 32 bits are
+     * the index of the top Palantir plus one (0 if the stack is
+     * empty), and the high 32 bits are a stamp that changes on every
+     * push and pop, so a Thread whose pop is delayed can't swap in a
+     * stale next index after the top has been popped and pushed back
+     * in between (the "ABA" problem).
+     */
+    private final AtomicLong mTop = new AtomicLong();
+
+    /**
+     * For each unused Palantir, the index plus one of the Palantir
+     * below it on the stack (0 at the bottom).
+     */
+    private final AtomicIntegerArray mNext;
+
+    /**
+     * Keeps track of the Palantiri that are on the stack (1) or not
+     * (0), which may include Palantiri reclaimed via affinity.
+     */
+    private final AtomicIntegerArray mOnStack;
+
+    /**
+     * The index of the last Palantir each Thread acquired (or -1),
+     * or null if affinity is disabled.
+     */
+    private final ThreadLocal<int[]> mLastIndex;
+
+    /**
+     * Number of acquisitions that reclaimed the Thread's last
+     * Palantir via affinity.
+     */
+    private final AtomicLong mAffinityHits = new AtomicLong();
+
+    /**
+     * The metrics of each Palantir, indexed like mPalantiri.  Each
+     * element is only written by the Thread holding that Palantir.
+     */
+    private final AtomicLongArray mAcquisitions;
+    private final AtomicLongArray mAcquiredNanos;
+    private final AtomicLongArray mTotalHoldNanos;
+    private final AtomicLongArray mAverageHoldNanos;
+    private final AtomicLongArray mTotalWaitNanos;
+
+    /**
+     * When this PalantirManager was created, which is when the
+     * utilization of the Palantiri is measured from.
+     */
+    private final long mCreatedNanos = System.nanoTime();
 
     /**
      * Create a resource manager for the palantiri passed as a
-     * parameter.
+     * parameter, which uses the FIRST_AVAILABLE Scheduling.
      */
     PalantirManager(final List<Palantir> palantiri) {
+        this(palantiri, Scheduling.FIRST_AVAILABLE);
+    }
+
+    /**
+     * Create a resource manager for the palantiri passed as a
+     * parameter, which chooses among them with @a scheduling.
+     */
+    PalantirManager(final List<Palantir> palantiri,
+                    final Scheduling scheduling) {
+        this(palantiri, scheduling, false);
+    }
+
+    /**
+     * Create a resource manager for the palantiri passed as a
+     * parameter, which chooses among them with @a scheduling, and
+     * first tries each Thread's last Palantir if @a affinity is true.
+     */
+    PalantirManager(final List<Palantir> palantiri,
+                    final Scheduling scheduling,
+                    final boolean affinity) {
+        mScheduling = scheduling;
+        mLastIndex = !affinity
+            ? null
+            : new ThreadLocal<int[]>() {
+                protected int[] initialValue() {
+                    return new int[] { -1 };
+                }
+            };
         mMaxPalantiri = palantiri.size();
         mPalantiri = palantiri;
-        used = new boolean[palantiri.size()];
+        used = new AtomicIntegerArray(mMaxPalantiri);
+        mNext = new AtomicIntegerArray(mMaxPalantiri);
+        mOnStack = new AtomicIntegerArray(mMaxPalantiri);
+        mIndices = new IdentityHashMap<Palantir, Integer>(mMaxPalantiri);
+        mAcquisitions = new AtomicLongArray(mMaxPalantiri);
+        mAcquiredNanos = new AtomicLongArray(mMaxPalantiri);
+        mTotalHoldNanos = new AtomicLongArray(mMaxPalantiri);
+        mAverageHoldNanos = new AtomicLongArray(mMaxPalantiri);
+        mTotalWaitNanos = new AtomicLongArray(mMaxPalantiri);
+
+        // Push the Palantiri in reverse, so the first one is on top.
+        for (int i = mMaxPalantiri - 1; i >= 0; --i) {
+            mIndices.put(palantiri.get(i), i);
+            mOnStack.set(i, 1);
+            push(i);
+        }
 
         /**
          * Use the "fair" policy.
          */
-        mAvailable = new SimpleSemaphore(mMaxPalantiri, true);
+        mAvailable = SimpleSemaphoreFactory.makeSemaphore(mMaxPalantiri, true);
+    }
+
+    /**
+     * Returns a new value of mTop with index @a index on top, whose
+     * stamp follows that of @a top.
+     */
+    private static long makeTop(long top, int index) {
+        return ((top >>> 32) + 1) << 32 | (index + 1);
+    }
+
+    /**
+     * Push the Palantir at @a index onto the stack of unused ones.
+     */
+    private void push(int index) {
+        for (;;) {
+            long top = mTop.get();
+            mNext.set(index, (int) top);
+            if (mTop.compareAndSet(top, makeTop(top, index)))
+                return;
+        }
+    }
+
+    /**
+     * Pop the index of an unused Palantir off the stack, or return
+     * -1 if it's empty.
+     */
+    private int pop() {
+        for (;;) {
+            long top = mTop.get();
+            int index = (int) top - 1;
+            if (index < 0)
+                return -1;
+            // mNext.get(index) may be stale if another Thread pops
+            // this Palantir first, but then the stamp has changed and
+            // the compareAndSet() fails.
+            if (mTop.compareAndSet(top, makeTop(top, mNext.get(index) - 1)))
+                return index;
+        }
+    }
+
+    /**
+     * Claim the unused Palantir on top of the stack, skipping any
+     * that were reclaimed via affinity, or return -1 if there's none.
+     */
+    private int claimFromStack() {
+        for (;;) {
+            int index = pop();
+            if (index < 0)
+                return -1;
+            // If the Palantir is in use, it's pushed again when it's
+            // made unused.
+            mOnStack.set(index, 0);
+            if (used.compareAndSet(index, 0, 1))
+                return index;
+        }
+    }
+
+    /**
+     * Claim the unused Palantir with the smallest average hold time,
+     * or return -1 if there's none.
+     */
+    private int claimFastest() {
+        for (;;) {
+            int fastest = -1;
+            long fastestNanos = Long.MAX_VALUE;
+            for (int i = 0; i < mMaxPalantiri; ++i)
+                if (used.get(i) == 0 && mAverageHoldNanos.get(i) < fastestNanos) {
+                    fastest = i;
+                    fastestNanos = mAverageHoldNanos.get(i);
+                }
+            if (fastest < 0)
+                return -1;
+            // Another Thread may have claimed it since the scan.
+            if (used.compareAndSet(fastest, 0, 1))
+                return fastest;
+        }
     }
 
     /**
@@ -52,8 +287,18 @@ public class PalantirManager {
      * blocking until one is available.
      */
     public Palantir acquirePalantir() {
+        long start = System.nanoTime();
         mAvailable.acquireUninterruptibly();
-        return getNextAvailablePalantir();
+        long waitNanos = System.nanoTime() - start;
+
+        Palantir palantir = getNextAvailablePalantir();
+        if (palantir != null) {
+            int index = mIndices.get(palantir);
+            mAcquisitions.incrementAndGet(index);
+            mTotalWaitNanos.addAndGet(index, waitNanos);
+            mAcquiredNanos.set(index, System.nanoTime());
+        }
+        return palantir;
     }
 
     /**
@@ -68,33 +313,174 @@ public class PalantirManager {
     /**
      * Get the next available Palantir from the resource pool.
      */
-    protected synchronized Palantir getNextAvailablePalantir() {
-        // Linear search is fine for this simple demo.
-        for (int i = 0; i < mMaxPalantiri; ++i) {
-            if (!used[i]) {
-                used[i] = true;
-                return mPalantiri.get(i);
-            }
-        }
-        // Not reached unless something really weird happens..
-        return null; 
+    protected Palantir getNextAvailablePalantir() {
+        int[] lastIndex = mLastIndex == null ? null : mLastIndex.get();
+        int index;
+        if (lastIndex != null
+            && lastIndex[0] >= 0
+            && used.compareAndSet(lastIndex[0], 0, 1)) {
+            index = lastIndex[0];
+            mAffinityHits.incrementAndGet();
+        } else if (mScheduling == Scheduling.FASTEST_AVAILABLE)
+            index = claimFastest();
+        else
+            index = claimFromStack();
+        // Not reached unless something really weird happens, since
+        // the Semaphore admits only as many callers as there are
+        // unused Palantiri.
+        if (index < 0)
+            return null;
+        if (lastIndex != null)
+            lastIndex[0] = index;
+        return mPalantiri.get(index);
+    }
+
+    /**
+     * Returns the number of acquisitions that reclaimed the
+     * acquiring Thread's last Palantir via affinity.
+     */
+    public long getAffinityHits() {
+        return mAffinityHits.get();
     }
 
     /**
      * Return the @code palantir back to the resource pool.
+     *
+     * @return false if it wasn't from this pool or wasn't in use.
      */
-    protected synchronized boolean markAsUnused(final Palantir palantir) {
-        // Linear search is fine for this simple demo.
-        for (int i = 0; i < mMaxPalantiri; ++i) {
-            if (palantir == mPalantiri.get(i)) {
-                if (used[i]) {
-                    used[i] = false;
-                    return true;
-                } else
-                    return false;
-            }
+    protected boolean markAsUnused(final Palantir palantir) {
+        Integer index = mIndices.get(palantir);
+        // Only one of several concurrent releases of the same
+        // Palantir moves it from in use (1) to being released (2).
+        if (index == null || !used.compareAndSet(index, 1, 2))
+            return false;
+
+        // Record the hold time before the Palantir can be claimed
+        // again.
+        long holdNanos = System.nanoTime() - mAcquiredNanos.get(index);
+        long average = mAverageHoldNanos.get(index);
+        mTotalHoldNanos.addAndGet(index, holdNanos);
+        mAverageHoldNanos.set(index, average == 0
+                              ? holdNanos
+                              : average + ((holdNanos - average) >> EWMA_SHIFT));
+        used.set(index, 0);
+
+        if (mScheduling == Scheduling.FIRST_AVAILABLE
+            && mOnStack.compareAndSet(index, 0, 1))
+            push(index);
+        return true;
+    }
+
+    /**
+     * Profile the Semaphore that admits the callers with @a profiler
+     * (or stop profiling it if @a profiler is null), if the Semaphore
+     * can be profiled.
+     *
+     * @return false if the Semaphore can't be profiled.
+     */
+    public boolean setSemaphoreProfiler(SemaphoreProfiler profiler) {
+        if (!(mAvailable instanceof FastPathSimpleSemaphore))
+            return false;
+        ((FastPathSimpleSemaphore) mAvailable).setProfiler(profiler);
+        return true;
+    }
+
+    /**
+     * @class PalantirMetrics
+     *
+     * @brief A snapshot of how much a Palantir has been used and how
+     *        long its users waited for it.
+     */
+    public static class PalantirMetrics {
+        private final String mName;
+        private final long mAcquisitions;
+        private final long mTotalHoldNanos;
+        private final long mAverageHoldNanos;
+        private final long mTotalWaitNanos;
+        private final double mUtilization;
+
+        PalantirMetrics(String name,
+                        long acquisitions,
+                        long totalHoldNanos,
+                        long averageHoldNanos,
+                        long totalWaitNanos,
+                        double utilization) {
+            mName = name;
+            mAcquisitions = acquisitions;
+            mTotalHoldNanos = totalHoldNanos;
+            mAverageHoldNanos = averageHoldNanos;
+            mTotalWaitNanos = totalWaitNanos;
+            mUtilization = utilization;
+        }
+
+        /**
+         * Returns the name of the Palantir.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Returns the number of times the Palantir was acquired.
+         */
+        public long getAcquisitions() {
+            return mAcquisitions;
+        }
+
+        /**
+         * Returns the total time the Palantir was held, not counting
+         * a current hold.
+         */
+        public long getTotalHoldNanos() {
+            return mTotalHoldNanos;
+        }
+
+        /**
+         * Returns the EWMA of the Palantir's hold times.
+         */
+        public long getAverageHoldNanos() {
+            return mAverageHoldNanos;
+        }
+
+        /**
+         * Returns the mean time the Threads that got this Palantir
+         * waited to be admitted by the Semaphore.
+         */
+        public long getMeanWaitNanos() {
+            return mAcquisitions == 0 ? 0 : mTotalWaitNanos / mAcquisitions;
+        }
+
+        /**
+         * Returns the fraction of the time since the PalantirManager
+         * was created that the Palantir was held.
+         */
+        public double getUtilization() {
+            return mUtilization;
+        }
+
+        public String toString() {
+            return String.format("%s: %d acquisitions, %.0f%% utilization, "
+                                 + "%.1f ms average hold, %.1f ms mean wait",
+                                 mName, mAcquisitions, 100 * mUtilization,
+                                 mAverageHoldNanos / 1e6,
+                                 getMeanWaitNanos() / 1e6);
         }
-        return false;
     }
-}
 
+    /**
+     * Returns the metrics of each Palantir, in the order of
+     * mPalantiri.
+     */
+    public List<PalantirMetrics> getMetrics() {
+        long elapsedNanos = Math.max(1, System.nanoTime() - mCreatedNanos);
+        List<PalantirMetrics> metrics = new ArrayList<PalantirMetrics>(mMaxPalantiri);
+        for (int i = 0; i < mMaxPalantiri; ++i)
+            metrics.add(new PalantirMetrics(mPalantiri.get(i).name(),
+                                            mAcquisitions.get(i),
+                                            mTotalHoldNanos.get(i),
+                                            mAverageHoldNanos.get(i),
+                                            mTotalWaitNanos.get(i),
+                                            mTotalHoldNanos.get(i) / (double) elapsedNanos));
+        return metrics;
+    }
+}
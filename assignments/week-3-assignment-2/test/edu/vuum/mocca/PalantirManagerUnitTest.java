@@ -1,11 +1,17 @@
 package edu.vuum.mocca;
 
 import static org.junit.Assert.fail;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -27,6 +33,15 @@ public class PalantirManagerUnitTest {
      */
     public static boolean diagnosticsEnabled = false;
 
+    /**
+     * If this is set to true (e.g., via the
+     * "edu.vuum.mocca.PalantirManagerUnitTest.profile" system
+     * property) then testPalantirManager() profiles the Semaphore, if
+     * it can be profiled, and prints a snapshot of the profile.
+     */
+    public static boolean profilingEnabled =
+        Boolean.getBoolean("edu.vuum.mocca.PalantirManagerUnitTest.profile");
+
     /**
      * Total number of times each Palantir user gets to gaze into a
      * Palantir.
@@ -44,9 +59,10 @@ public class PalantirManagerUnitTest {
     boolean mFailed = false;
 
     /**
-     * Count of the number of Active Threads.
+     * Count of the number of Active Threads, whose Implementation
+     * the "edu.vuum.mocca.SimpleAtomicLong" system property selects.
      */
-    static SimpleAtomicLong mActiveThreads = new SimpleAtomicLong(0);
+    static LongCounter mActiveThreads = SimpleAtomicLongFactory.makeAtomicLong(0);
 
     /**
      * Resource Manager that controls access to the available
@@ -55,10 +71,10 @@ public class PalantirManagerUnitTest {
     static PalantirManager mPalantirManager = null;
 
     /**
-     * Object that attempts to check whether the Semaphore
-     * implementation is "fair".
+     * Object that measures whether the Semaphore implementation is
+     * "fair".
      */
-    static FairnessChecker mFairnessChecker = null;
+    static FairnessAuditor mFairnessAuditor = null;
 
     /**
      * Runnable passed to each Thread that uses a Palantir. 
@@ -73,11 +89,10 @@ public class PalantirManagerUnitTest {
                 // gaze into a Palantir.
                 for (int i = 0; i < mMaxPalantirSessions; ++i) {
                     if (diagnosticsEnabled)
-                        System.out.println(Thread.currentThread().getName()
-                                           + " is acquiring the palantir");
+                        DiagnosticLog.log("is acquiring the palantir");
 
                     // Used to check for Semaphore fairness.
-                    mFairnessChecker.addNewThread(Thread.currentThread().getName());
+                    mFairnessAuditor.arrive();
 
                     // Get access to a Palantir, which will block if
                     // all the available Palantiri are in use.
@@ -85,21 +100,16 @@ public class PalantirManagerUnitTest {
 
                     // There's a race condition here since it's
                     // possible for one thread to call
-                    // mFairnessChecker.addNewThread() and then yield
-                    // to another thread which again calls
-                    // mFairnessChecker.addNewThread() and then goes
-                    // on without interruption to call
+                    // mFairnessAuditor.arrive() and then yield to
+                    // another thread which again calls
+                    // mFairnessAuditor.arrive() and then goes on
+                    // without interruption to call
                     // mPalantirManager.acquirePalantir(), which will
-                    // fool the fairness checker into wrongly thinking
-                    // the acquisition wasn't fair. we'll just give a
-                    // warning (rather than an error) if it looks like
-                    // the semaphore acquire() method isn't "fair".
-                    if (!mFairnessChecker.checkOrder(Thread.currentThread()
-                                                     .getName())) {
-                        if (diagnosticsEnabled)
-                            System.out.println(Thread.currentThread().getName()
-                                               + ": warning, semaphore acquire may not be fair");
-                    }
+                    // fool the fairness auditor into wrongly thinking
+                    // the acquisition wasn't fair.  We therefore just
+                    // report (rather than fail on) the inversions it
+                    // counts once all the threads are done.
+                    mFairnessAuditor.granted();
 
                     // Ensure that the Semaphore implementation is
                     // correctly limiting the number of Palantir
@@ -111,10 +121,8 @@ public class PalantirManagerUnitTest {
                         throw new RuntimeException();
                     }
                     if (diagnosticsEnabled)
-                        System.out.println(Thread.currentThread().getName()
-                                           + " is starting to gaze at the " 
-                                           + palantir.name()
-                                           + " palantir");
+                        DiagnosticLog.log("is starting to gaze at the {} palantir",
+                                          palantir.name());
 
                     // Gaze at the Palantir for the time alloted in
                     // the command.
@@ -125,25 +133,40 @@ public class PalantirManagerUnitTest {
                     mActiveThreads.decrementAndGet();
 
                     if (diagnosticsEnabled)
-                        System.out.println(Thread.currentThread().getName()
-                                           + " is finished gazing at the " 
-                                           + palantir.name()
-                                           + " palantir");
+                        DiagnosticLog.log("is finished gazing at the {} palantir",
+                                          palantir.name());
 
                     // Return the Palantir back to the shared pool so
                     // other Beings can gaze at it.
                     mPalantirManager.releasePalantir(palantir);
 
                     if (diagnosticsEnabled)
-                        System.out.println(Thread.currentThread().getName()
-                                           + " has released the "
-                                           + palantir.name() 
-                                           + " palantir");
+                        DiagnosticLog.log("has released the {} palantir",
+                                          palantir.name());
                 }
 
             }
 	};
 
+    /**
+     * Factory method that makes the PalantirManager to test, with
+     * the FIRST_AVAILABLE Scheduling.
+     */
+    protected PalantirManager makePalantirManager(List<Palantir> palantiri) {
+        return makePalantirManager(palantiri,
+                                   PalantirManager.Scheduling.FIRST_AVAILABLE);
+    }
+
+    /**
+     * Factory method that makes the PalantirManager to test, with
+     * @a scheduling.  Subclasses override it to test other
+     * configurations.
+     */
+    protected PalantirManager makePalantirManager(List<Palantir> palantiri,
+                                                  PalantirManager.Scheduling scheduling) {
+        return new PalantirManager(palantiri, scheduling);
+    }
+
     /**
      * This factory creates a list of Palantiri.
      */
@@ -197,7 +220,7 @@ public class PalantirManagerUnitTest {
     public void testPalantirManager() {
         try {
             if (diagnosticsEnabled)
-                System.out.println("Starting PalantirManagerTest");
+                DiagnosticLog.log("Starting PalantirManagerTest");
 
             // Get the list of available Palantiri.
             List<Palantir> palantiri =
@@ -209,7 +232,12 @@ public class PalantirManagerUnitTest {
 
             // Create a resource manager that control access to the
             // available Palantiri.
-            mPalantirManager = new PalantirManager(palantiri);
+            mPalantirManager = makePalantirManager(palantiri);
+
+            // Profile how contended the Semaphore is, if requested.
+            SemaphoreProfiler profiler = new SemaphoreProfiler();
+            boolean profiled = profilingEnabled
+                && mPalantirManager.setSemaphoreProfiler(profiler);
 
             // Create a list of Middle-Earth Beings who want to use
             // the Palantir.
@@ -220,9 +248,9 @@ public class PalantirManagerUnitTest {
             palantirUsers.add(new Thread(usePalantir, "Sauron"));
             palantirUsers.add(new Thread(usePalantir, "Saruman"));
 
-            // Create an object that attempts to check whether the
-            // Semaphore implementation is "fair".
-            mFairnessChecker = new FairnessChecker(palantirUsers.size());
+            // Create an object that measures whether the Semaphore
+            // implementation is "fair".
+            mFairnessAuditor = new FairnessAuditor();
 
             // Start all the Threads that Middle-Earth Beings use to
             // gaze into the Palantir.
@@ -255,17 +283,193 @@ public class PalantirManagerUnitTest {
             // Make sure we haven't failed.
             assertFalse(mFailed);
 
-            if (diagnosticsEnabled)            
-                System.out.println("Finishing PalantirManagerTest");
+            if (profiled)
+                System.out.println("semaphore profile: "
+                                   + profiler.snapshot());
+
+            if (diagnosticsEnabled) {
+                DiagnosticLog.log("semaphore fairness: {}",
+                                  mFairnessAuditor.report());
+                DiagnosticLog.log("Finishing PalantirManagerTest");
+                // Wait for the log to catch up with the test.
+                DiagnosticLog.flushDefault();
+            }
         } catch (Exception e) {
-            if (diagnosticsEnabled)
-        	System.out.println("A " 
-                                   + e.getMessage() 
-                                   + " Exception was thrown");
+            if (diagnosticsEnabled) {
+                DiagnosticLog.log("A {} Exception was thrown", e.getMessage());
+                DiagnosticLog.flushDefault();
+            }
             fail("A "
                  + e.getMessage()
                  + " Exception was thrown");
         }
     }
 
+    /**
+     * This factory creates a list of @a count Palantiri that don't
+     * make their gazers wait.
+     */
+    static List<Palantir> makeManyPalantiri(int count) {
+        List<Palantir> palantiri = new ArrayList<Palantir>(count);
+        for (int i = 0; i < count; ++i) {
+            final String name = "Palantir-" + i;
+            palantiri.add(new Palantir() {
+                    public void gaze() {
+                    }
+                    public String name() {
+                        return name;
+                    }
+                });
+        }
+        return palantiri;
+    }
+
+    /**
+     * Checks that @a manager never gives the same one of its @a
+     * palantiri to two Threads at once, has all of them available
+     * again afterwards, and ignores releases of Palantiri that aren't
+     * in use.
+     */
+    static void checkPool(final PalantirManager manager,
+                          final List<Palantir> palantiri) throws InterruptedException {
+        final int count = palantiri.size();
+        final Map<Palantir, AtomicInteger> gazers =
+            new IdentityHashMap<Palantir, AtomicInteger>();
+        for (Palantir palantir : palantiri)
+            gazers.put(palantir, new AtomicInteger());
+        final AtomicInteger errors = new AtomicInteger();
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        List<Palantir> held = new ArrayList<Palantir>();
+                        for (int i = 0; i < 20000; ++i) {
+                            // Hold a few Palantiri at a time, so they
+                            // come back in a different order.
+                            Palantir palantir = manager.acquirePalantir();
+                            if (palantir == null
+                                || gazers.get(palantir).incrementAndGet() != 1)
+                                errors.incrementAndGet();
+                            held.add(palantir);
+                            if (held.size() == 3 || i % 7 == 0) {
+                                for (Palantir p : held) {
+                                    gazers.get(p).decrementAndGet();
+                                    manager.releasePalantir(p);
+                                }
+                                held.clear();
+                            }
+                        }
+                        for (Palantir p : held) {
+                            gazers.get(p).decrementAndGet();
+                            manager.releasePalantir(p);
+                        }
+                    }
+                });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(0, errors.get());
+
+        Map<Palantir, Boolean> acquired = new IdentityHashMap<Palantir, Boolean>();
+        for (int i = 0; i < count; ++i)
+            acquired.put(manager.acquirePalantir(), true);
+        assertEquals(count, acquired.size());
+        assertFalse(acquired.containsKey(null));
+
+        // Releasing a Palantir twice, or one from another pool, is
+        // ignored, so only one Palantir is available afterwards.
+        Palantir palantir = palantiri.get(count / 2);
+        manager.releasePalantir(palantir);
+        manager.releasePalantir(palantir);
+        manager.releasePalantir(makeManyPalantiri(1).get(0));
+        assertEquals(palantir, manager.acquirePalantir());
+        assertFalse(manager.markAsUnused(makeManyPalantiri(1).get(0)));
+    }
+
+    /**
+     * Tests a pool of thousands of Palantiri with checkPool().
+     */
+    @Test(timeout = 20000)
+    public void testLargePool() throws InterruptedException {
+        List<Palantir> palantiri = makeManyPalantiri(2000);
+        checkPool(makePalantirManager(palantiri), palantiri);
+    }
+
+    /**
+     * Tests a pool with the FASTEST_AVAILABLE Scheduling, whose scans
+     * race with each other, with checkPool().
+     */
+    @Test(timeout = 20000)
+    public void testFastestAvailablePool() throws InterruptedException {
+        List<Palantir> palantiri = makeManyPalantiri(200);
+        checkPool(makePalantirManager(palantiri,
+                                      PalantirManager.Scheduling.FASTEST_AVAILABLE),
+                  palantiri);
+    }
+
+    /**
+     * Tests that the FASTEST_AVAILABLE Scheduling tries each
+     * Palantir once and then mostly chooses the fastest one, and that
+     * the metrics count what happened.  The hold times are far apart,
+     * so a slow sleep() on a busy machine can't make the fastest
+     * Palantir look slower than the others, but a single unlucky
+     * hold is tolerated.  Each Palantir is acquired by a new Thread,
+     * which has no last Palantir to reclaim if affinity is enabled.
+     */
+    @Test(timeout = 20000)
+    public void testFastestAvailableScheduling() throws InterruptedException {
+        List<Palantir> palantiri = new ArrayList<Palantir>();
+        for (final int millis : new int[] { 50, 1, 25 })
+            palantiri.add(new Palantir() {
+                    public void gaze() {
+                        try {
+                            Thread.sleep(millis);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    public String name() {
+                        return millis + "ms";
+                    }
+                });
+        final PalantirManager manager =
+            makePalantirManager(palantiri,
+                                PalantirManager.Scheduling.FASTEST_AVAILABLE);
+
+        final List<String> gazed = new ArrayList<String>();
+        for (int i = 0; i < 8; ++i) {
+            Thread gazer = new Thread(new Runnable() {
+                    public void run() {
+                        Palantir palantir = manager.acquirePalantir();
+                        palantir.gaze();
+                        gazed.add(palantir.name());
+                        manager.releasePalantir(palantir);
+                    }
+                });
+            gazer.start();
+            gazer.join();
+        }
+        // The untried Palantiri come first, in order.
+        assertEquals(Arrays.asList("50ms", "1ms", "25ms"),
+                     gazed.subList(0, 3));
+        int fastest = 0;
+        for (String name : gazed.subList(3, gazed.size()))
+            if (name.equals("1ms"))
+                ++fastest;
+        assertTrue(gazed.toString(), fastest >= 4);
+
+        List<PalantirManager.PalantirMetrics> metrics = manager.getMetrics();
+        assertEquals(3, metrics.size());
+        assertEquals("1ms", metrics.get(1).getName());
+        assertEquals(1 + fastest, metrics.get(1).getAcquisitions());
+        assertEquals(1, metrics.get(0).getAcquisitions());
+        assertTrue(metrics.get(0).getAverageHoldNanos()
+                   > metrics.get(1).getAverageHoldNanos());
+        assertTrue(metrics.get(0).getTotalHoldNanos() >= 50000000L);
+        for (PalantirManager.PalantirMetrics m : metrics) {
+            assertTrue(m.toString(), m.getUtilization() > 0 && m.getUtilization() <= 1);
+            assertTrue(m.toString(), m.getMeanWaitNanos() >= 0);
+        }
+    }
 }
@@ -3,89 +3,130 @@ package edu.vuum.mocca;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 /**
  * @class SimpleAtomicLongUnitTest
  *
  * @brief Simple unit test for the SimpleAtomicLong clas that ensures
- *        the version submitted for this assignment works correctly.
+ *        the version submitted for this assignment works correctly,
+ *        run once for each SimpleAtomicLongFactory Implementation.
  */
+@RunWith(Parameterized.class)
 public class SimpleAtomicLongUnitTest {
+    /**
+     * The Implementation being tested.
+     */
+    private final SimpleAtomicLongFactory.Implementation mImplementation;
+
+    /**
+     * Returns each SimpleAtomicLongFactory Implementation as a set of
+     * parameters.
+     */
+    @Parameters
+    public static Collection<Object[]> implementations() {
+        Collection<Object[]> implementations = new ArrayList<Object[]>();
+        for (SimpleAtomicLongFactory.Implementation implementation
+                 : SimpleAtomicLongFactory.Implementation.values())
+            implementations.add(new Object[] { implementation });
+        return implementations;
+    }
+
+    /**
+     * Test the counters of @a implementation.
+     */
+    public SimpleAtomicLongUnitTest(SimpleAtomicLongFactory.Implementation implementation) {
+        mImplementation = implementation;
+    }
+
+    /**
+     * Factory method that makes the counter to test.
+     */
+    private LongCounter makeAtomicLong(long initialValue) {
+        return SimpleAtomicLongFactory.makeAtomicLong(mImplementation,
+                                                      initialValue);
+    }
+
     @Test
     public void testSimpleAtomicLong() {
-        SimpleAtomicLong testLong = new SimpleAtomicLong(0);
+        LongCounter testLong = makeAtomicLong(0);
         assertNotNull(testLong);
     }
 
     @Test
     public void testGet() {
-        SimpleAtomicLong testLong = new SimpleAtomicLong(0);
+        LongCounter testLong = makeAtomicLong(0);
         assertEquals(testLong.get(), 0);
 		
-        SimpleAtomicLong testLong2 = new SimpleAtomicLong(100);
+        LongCounter testLong2 = makeAtomicLong(100);
         assertEquals(testLong2.get(), 100);
 		
-        SimpleAtomicLong testLong3 = new SimpleAtomicLong(-100);
+        LongCounter testLong3 = makeAtomicLong(-100);
         assertEquals(testLong3.get(), -100);
     }
 
     @Test
     public void testDecrementAndGet() {
-        SimpleAtomicLong testLong = new SimpleAtomicLong(0);
+        LongCounter testLong = makeAtomicLong(0);
         assertEquals(testLong.decrementAndGet(), -1);
         assertEquals(testLong.get(), -1);
 		
-        SimpleAtomicLong testLong2 = new SimpleAtomicLong(100);
+        LongCounter testLong2 = makeAtomicLong(100);
         assertEquals(testLong2.decrementAndGet(), 99);
         assertEquals(testLong2.get(), 99);
 		
-        SimpleAtomicLong testLong3 = new SimpleAtomicLong(-100);
+        LongCounter testLong3 = makeAtomicLong(-100);
         assertEquals(testLong3.decrementAndGet(), -101);
         assertEquals(testLong3.get(), -101);
     }
 
     @Test
     public void testIncrementAndGet() {
-        SimpleAtomicLong testLong = new SimpleAtomicLong(0);
+        LongCounter testLong = makeAtomicLong(0);
         assertEquals(testLong.incrementAndGet(), 1);
         assertEquals(testLong.get(), 1);
 		
-        SimpleAtomicLong testLong2 = new SimpleAtomicLong(100);
+        LongCounter testLong2 = makeAtomicLong(100);
         assertEquals(testLong2.incrementAndGet(), 101);
         assertEquals(testLong2.get(), 101);
 		
-        SimpleAtomicLong testLong3 = new SimpleAtomicLong(-100);
+        LongCounter testLong3 = makeAtomicLong(-100);
         assertEquals(testLong3.incrementAndGet(), -99);
         assertEquals(testLong3.get(), -99);
     }
 	
     @Test
     public void testGetAndIncrement() {
-        SimpleAtomicLong testLong = new SimpleAtomicLong(0);
+        LongCounter testLong = makeAtomicLong(0);
         assertEquals(testLong.getAndIncrement(), 0);
         assertEquals(testLong.get(), 1);
 		
-        SimpleAtomicLong testLong2 = new SimpleAtomicLong(100);
+        LongCounter testLong2 = makeAtomicLong(100);
         assertEquals(testLong2.getAndIncrement(), 100);
         assertEquals(testLong2.get(), 101);
 		
-        SimpleAtomicLong testLong3 = new SimpleAtomicLong(-100);
+        LongCounter testLong3 = makeAtomicLong(-100);
         assertEquals(testLong3.getAndIncrement(), -100);
         assertEquals(testLong3.get(), -99);
     }
 
     @Test
     public void testGetAndDecrement() {
-        SimpleAtomicLong testLong = new SimpleAtomicLong(0);
+        LongCounter testLong = makeAtomicLong(0);
         assertEquals(testLong.getAndDecrement(), 0);
         assertEquals(testLong.get(), -1);
 		
-        SimpleAtomicLong testLong2 = new SimpleAtomicLong(100);
+        LongCounter testLong2 = makeAtomicLong(100);
         assertEquals(testLong2.getAndDecrement(), 100);
         assertEquals(testLong2.get(), 99);
 		
-        SimpleAtomicLong testLong3 = new SimpleAtomicLong(-100);
+        LongCounter testLong3 = makeAtomicLong(-100);
         assertEquals(testLong3.getAndDecrement(), -100);
         assertEquals(testLong3.get(), -101);
     }
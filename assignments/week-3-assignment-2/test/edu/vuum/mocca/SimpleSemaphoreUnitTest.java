@@ -3,6 +3,8 @@ package edu.vuum.mocca;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.concurrent.Semaphore;
 
 import org.junit.After;
@@ -10,23 +12,66 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 /**
  * @class SimpleSemaphoreUnitTest
  *
  * @brief Simple unit test for the SimpleSemaphore that just tests
- *        single-threaded logic.
+ *        single-threaded logic, run once for each
+ *        SimpleSemaphoreFactory Implementation.
  */
+@RunWith(Parameterized.class)
 public class SimpleSemaphoreUnitTest {
+    /**
+     * The Implementation being tested.
+     */
+    private final SimpleSemaphoreFactory.Implementation mImplementation;
+
+    /**
+     * Returns each of @a implementations as a set of parameters.
+     */
+    static Collection<Object[]> parameters(SimpleSemaphoreFactory.Implementation... implementations) {
+        Collection<Object[]> parameters = new ArrayList<Object[]>();
+        for (SimpleSemaphoreFactory.Implementation implementation : implementations)
+            parameters.add(new Object[] { implementation });
+        return parameters;
+    }
+
+    /**
+     * Returns each SimpleSemaphoreFactory Implementation as a set of
+     * parameters.
+     */
+    @Parameters
+    public static Collection<Object[]> implementations() {
+        return parameters(SimpleSemaphoreFactory.Implementation.values());
+    }
+
+    /**
+     * Test the semaphores of @a implementation.
+     */
+    public SimpleSemaphoreUnitTest(SimpleSemaphoreFactory.Implementation implementation) {
+        mImplementation = implementation;
+    }
+
+    /**
+     * Factory method that makes the semaphore to test.
+     */
+    private CountingSemaphore makeSemaphore(int permits, boolean fair) {
+        return SimpleSemaphoreFactory.makeSemaphore(mImplementation, permits, fair);
+    }
+
     @Test
     public void testSimpleSemaphore() {
-        SimpleSemaphore simpleSemaphore = new SimpleSemaphore(2, true);
+        CountingSemaphore simpleSemaphore = makeSemaphore(2, true);
         assertNotNull(simpleSemaphore);
     }
 
     @Test
     public void testAcquire() throws InterruptedException {
-        SimpleSemaphore simpleSemaphore = new SimpleSemaphore(2, true);
+        CountingSemaphore simpleSemaphore = makeSemaphore(2, true);
         assertEquals(simpleSemaphore.availablePermits(), 2);
         simpleSemaphore.acquire();
         assertEquals(simpleSemaphore.availablePermits(), 1);
@@ -36,7 +81,7 @@ public class SimpleSemaphoreUnitTest {
 
     @Test
     public void testAcquireUninterruptibly() throws InterruptedException {
-        SimpleSemaphore simpleSemaphore = new SimpleSemaphore(2, true);
+        CountingSemaphore simpleSemaphore = makeSemaphore(2, true);
         assertEquals(simpleSemaphore.availablePermits(), 2);
         simpleSemaphore.acquireUninterruptibly();
         assertEquals(simpleSemaphore.availablePermits(), 1);
@@ -46,7 +91,7 @@ public class SimpleSemaphoreUnitTest {
 
     @Test
     public void testRelease() throws InterruptedException {
-        SimpleSemaphore simpleSemaphore = new SimpleSemaphore(2, true);
+        CountingSemaphore simpleSemaphore = makeSemaphore(2, true);
         assertEquals(simpleSemaphore.availablePermits(), 2);
         simpleSemaphore.acquire();
         assertEquals(simpleSemaphore.availablePermits(), 1);
@@ -60,7 +105,7 @@ public class SimpleSemaphoreUnitTest {
 	
     @Test
     public void testAvailablePermits() throws InterruptedException{
-        SimpleSemaphore simpleSemaphore = new SimpleSemaphore(2, true);
+        CountingSemaphore simpleSemaphore = makeSemaphore(2, true);
         assertEquals(simpleSemaphore.availablePermits(), 2);
         simpleSemaphore.acquire();
         assertEquals(simpleSemaphore.availablePermits(), 1);
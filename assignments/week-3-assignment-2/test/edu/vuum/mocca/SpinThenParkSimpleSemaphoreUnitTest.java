@@ -0,0 +1,79 @@
+package edu.vuum.mocca;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @class SpinThenParkSimpleSemaphoreUnitTest
+ *
+ * @brief Tests that two Threads can hand permits back and forth
+ *        with a FastPathSimpleSemaphore with the SPIN_THEN_PARK
+ *        WaitStrategy, which FastPathSimpleSemaphoreUnitTest otherwise
+ *        tests like the PARK one.
+ */
+public class SpinThenParkSimpleSemaphoreUnitTest {
+    /**
+     * Factory method that makes the semaphore to test.
+     */
+    private FastPathSimpleSemaphore makeSemaphore(int permits, boolean fair) {
+        return (FastPathSimpleSemaphore)
+            SimpleSemaphoreFactory.makeSemaphore(SimpleSemaphoreFactory.Implementation.SPIN_THEN_PARK,
+                                                 permits,
+                                                 fair);
+    }
+
+    /**
+     * Tests that two Threads alternate strictly when each acquires
+     * its own semaphore and releases the other's, as in ping-pong,
+     * that every acquisition is profiled, and that the spin time
+     * stays in range, with both policies.
+     */
+    @Test(timeout = 20000)
+    public void testPingPong() throws InterruptedException {
+        for (boolean fair : new boolean[] { true, false }) {
+            final FastPathSimpleSemaphore ping = makeSemaphore(1, fair);
+            final FastPathSimpleSemaphore pong = makeSemaphore(0, fair);
+            SemaphoreProfiler profiler = new SemaphoreProfiler();
+            ping.setProfiler(profiler);
+            pong.setProfiler(profiler);
+
+            final int rounds = 5000;
+            final StringBuffer turns = new StringBuffer();
+            Thread pinger = new Thread(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < rounds; ++i) {
+                            ping.acquireUninterruptibly();
+                            turns.append('i');
+                            pong.release();
+                        }
+                    }
+                });
+            Thread ponger = new Thread(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < rounds; ++i) {
+                            pong.acquireUninterruptibly();
+                            turns.append('o');
+                            ping.release();
+                        }
+                    }
+                });
+            pinger.start();
+            ponger.start();
+            pinger.join();
+            ponger.join();
+
+            assertEquals(2 * rounds, turns.length());
+            for (int i = 0; i < turns.length(); ++i)
+                assertEquals(i % 2 == 0 ? 'i' : 'o', turns.charAt(i));
+            assertEquals(2 * rounds, profiler.snapshot().getAcquisitions());
+
+            for (FastPathSimpleSemaphore semaphore : new FastPathSimpleSemaphore[] { ping, pong }) {
+                assertTrue(semaphore.getSpinNanos() >= FastPathSimpleSemaphore.MIN_SPIN_NANOS);
+                assertTrue(semaphore.getSpinNanos() <= FastPathSimpleSemaphore.MAX_SPIN_NANOS);
+            }
+            assertEquals(1, ping.availablePermits());
+            assertEquals(0, pong.availablePermits());
+        }
+    }
+}
@@ -1,6 +1,6 @@
 import java.util.concurrent.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public class Main
 { 
@@ -13,14 +13,16 @@ public class Main
     */
     static class BuggyQueue
     {
-        // Resizable-array implementation.
-        private List<String> mQ = new ArrayList<String>();
+        // Resizable circular-array implementation, so take() doesn't
+        // shift the remaining msgs (unlike ArrayList.remove(0)), but
+        // it's still not synchronized.
+        private Deque<String> mQ = new ArrayDeque<String>();
 
         // Insert msg at the tail of the queue.
-        public void put(String msg){ mQ.add(msg); }
+        public void put(String msg){ mQ.addLast(msg); }
 
         // Remove msg from the head of the queue.
-        public String take(){ return mQ.remove(0); }
+        public String take(){ return mQ.removeFirst(); }
     }
 
     static int mMaxIterations = 100;